@@ -4,7 +4,15 @@ import com.hexplosif.OptimodBackEnd.model.Courier;
 import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
 import com.hexplosif.OptimodBackEnd.model.Node;
 import com.hexplosif.OptimodBackEnd.model.Segment;
+import com.hexplosif.OptimodBackEnd.service.Coordinates;
+import com.hexplosif.OptimodBackEnd.service.DispatchObjective;
 import com.hexplosif.OptimodBackEnd.service.OptimodService;
+import com.hexplosif.OptimodBackEnd.service.RouteCache;
+import com.hexplosif.OptimodBackEnd.service.RouteFormat;
+import com.hexplosif.OptimodBackEnd.service.RouteJobService;
+import com.hexplosif.OptimodBackEnd.service.RoutingOptions;
+import com.hexplosif.OptimodBackEnd.service.SegmentTiles;
+import com.hexplosif.OptimodBackEnd.service.Viewport;
 import org.springframework.core.io.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
@@ -14,6 +22,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -23,9 +32,17 @@ import java.util.*;
 @RestController
 public class OptimodController {
 
+    /**
+     * Seconds after which a route computation refused because too many are waiting may be submitted again
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
     @Autowired
     private OptimodService optimodService;
 
+    @Autowired
+    private RouteJobService routeJobService;
+
     /**
      * Load a map from an XML file
      * @param file - The XML file containing the map
@@ -39,13 +56,11 @@ public class OptimodController {
         try {
             String XMLFileName = saveUploadedFile(file);
 
-            // Supprimer les données existantes
-            optimodService.deleteAllNodes();
-            optimodService.deleteAllSegments();
+            // Remplacer les données existantes en une seule lecture du fichier
+            optimodService.loadMap(XMLFileName);
 
-            // Charger les données
-            optimodService.loadNode(XMLFileName);
-            optimodService.loadSegment(XMLFileName);
+            // Construire le graphe de routage une seule fois par chargement de carte
+            optimodService.rebuildGraph();
 
             return ResponseEntity.ok("Carte chargée avec succès.");
         } catch (IllegalStateException e) {
@@ -125,6 +140,75 @@ public class OptimodController {
         return optimodService.findAllNodes();
     }
 
+    /**
+     * Read - Get a page of the nodes inside a viewport
+     *
+     * @param viewport - The bounds of the viewport and the page, from the query parameters (e.g. minLatitude=45.75&maxLatitude=45.76&minLongitude=4.85&maxLongitude=4.87&page=0&size=500)
+     * @return A ResponseEntity object containing the nodes of the page, ordered by id
+     *         200 OK if the viewport is valid
+     *         400 Bad Request if a bound is missing or the page is invalid
+     *         500 Internal Server Error if an error occurs
+     */
+    @GetMapping("/nodes/viewport")
+    public ResponseEntity<?> getNodesInViewport(Viewport viewport) {
+        try {
+            return ResponseEntity.ok(optimodService.findNodesInViewport(viewport));
+        } catch (IllegalStateException e) {
+            // Renvoyer une erreur 400 (Bad Request) avec le message d'erreur
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            // Renvoyer une erreur générique 500 (Internal Server Error)
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
+    /**
+     * Read - Get the nodes nearest to a point
+     *
+     * @param latitude  The latitude of the point
+     * @param longitude The longitude of the point
+     * @param k         The number of nodes, 1 by default
+     * @return A ResponseEntity object containing the id, coordinates and distance in meters of the nodes, nearest first
+     *         200 OK if the nodes are found
+     *         400 Bad Request if the point or k is invalid, or if no node has coordinates
+     *         500 Internal Server Error if an error occurs
+     */
+    @GetMapping("/nodes/nearest")
+    public ResponseEntity<?> getNearestNodes(@RequestParam Double latitude, @RequestParam Double longitude,
+                                             @RequestParam(required = false) Integer k) {
+        try {
+            return ResponseEntity.ok(optimodService.findNearestNodes(latitude, longitude, k));
+        } catch (IllegalStateException e) {
+            // Renvoyer une erreur 400 (Bad Request) avec le message d'erreur
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            // Renvoyer une erreur générique 500 (Internal Server Error)
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
+    /**
+     * Read - Get the node nearest to each point
+     *
+     * @param points The latitude and longitude of the points
+     * @return A ResponseEntity object containing the nearest node of each point, in the order of the points
+     *         200 OK if the nodes are found
+     *         400 Bad Request if a point is invalid, or if no node has coordinates
+     *         500 Internal Server Error if an error occurs
+     */
+    @PostMapping("/nodes/snap")
+    public ResponseEntity<?> snapToNodes(@RequestBody List<Coordinates> points) {
+        try {
+            return ResponseEntity.ok(optimodService.snapToNodes(points));
+        } catch (IllegalStateException e) {
+            // Renvoyer une erreur 400 (Bad Request) avec le message d'erreur
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            // Renvoyer une erreur générique 500 (Internal Server Error)
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
     /**
      * Delete - Delete all nodes
      * @return A ResponseEntity object containing the result of the deletion
@@ -227,6 +311,55 @@ public class OptimodController {
         return optimodService.findAllSegments();
     }
 
+    /**
+     * Read - Get a page of the segments with at least one end inside a viewport
+     *
+     * @param viewport - The bounds of the viewport and the page, from the query parameters (e.g. minLatitude=45.75&maxLatitude=45.76&minLongitude=4.85&maxLongitude=4.87&page=0&size=500)
+     * @return A ResponseEntity object containing the segments of the page, ordered by id
+     *         200 OK if the viewport is valid
+     *         400 Bad Request if a bound is missing or the page is invalid
+     *         500 Internal Server Error if an error occurs
+     */
+    @GetMapping("/segments/viewport")
+    public ResponseEntity<?> getSegmentsInViewport(Viewport viewport) {
+        try {
+            return ResponseEntity.ok(optimodService.findSegmentsInViewport(viewport));
+        } catch (IllegalStateException e) {
+            // Renvoyer une erreur 400 (Bad Request) avec le message d'erreur
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            // Renvoyer une erreur générique 500 (Internal Server Error)
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
+    /**
+     * Read - Get a tile of the segments of the map
+     *
+     * @param z - The zoom level
+     * @param x - The column of the tile, from the west
+     * @param y - The row of the tile, from the north
+     * @return A ResponseEntity object containing the JSON array of the encoded polylines of the tile, with its ETag
+     *         200 OK if the tile exists
+     *         304 Not Modified if the tile matches the If-None-Match header
+     *         400 Bad Request if the zoom level is not precomputed or the tile does not exist
+     *         500 Internal Server Error if an error occurs
+     */
+    @GetMapping("/tiles/{z}/{x}/{y}")
+    public ResponseEntity<byte[]> getTile(@PathVariable("z") int z, @PathVariable("x") int x, @PathVariable("y") int y) {
+        try {
+            SegmentTiles.Tile tile = optimodService.getTile(z, x, y);
+            // Spring répond 304 (Not Modified) si l'ETag correspond à l'en-tête If-None-Match
+            return ResponseEntity.ok().eTag(tile.getETag()).contentType(MediaType.APPLICATION_JSON).body(tile.getContent());
+        } catch (IllegalStateException e) {
+            // Renvoyer une erreur 400 (Bad Request) avec le message d'erreur
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            // Renvoyer une erreur générique 500 (Internal Server Error)
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * Delete - Delete all segments
      */
@@ -541,18 +674,46 @@ public class OptimodController {
         }
     }
 
+    /**
+     * Assign the delivery requests without a courier to the couriers
+     *
+     * @param objective - What the assignment minimizes, MAX_LENGTH (default) or TOTAL_LENGTH
+     * @return A ResponseEntity object containing the new assignments, the requests no courier can serve and the
+     *         estimated length of the routes
+     *         200 OK if the requests are assigned
+     *         400 Bad Request if there are no couriers or no requests to assign, or if a warehouse has too many stops
+     *         500 Internal Server Error if an error occurs
+     */
+    @PostMapping("/dispatchCouriers")
+    public ResponseEntity<?> dispatchCouriers(@RequestParam(required = false) DispatchObjective objective) {
+        try {
+            return ResponseEntity.ok(optimodService.dispatchCouriers(objective));
+        } catch (IllegalStateException e) {
+            // Renvoyer une erreur 400 (Bad Request) avec le message d'erreur
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            // Renvoyer une erreur générique 500 (Internal Server Error)
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
     /**
      * Calculate the optimal route
      *
+     * @param options - The options of the computation, from the query parameters (e.g. algorithm=ASTAR&solver=ALNS&deadlineMs=200&incremental=true&format=COMPACT)
      * @return A list of list of Long containing the optimal route
      *         The first list contains the ids of the couriers
      *         The following lists contain the ids of the delivery requests for each courier
+     *         With format=COMPACT, the stops, leg lengths, total length and encoded polyline of the route of each courier
      * @throws IllegalStateException If the optimal route cannot be calculated
      */
     @GetMapping("/calculateOptimalRoute")
-    public ResponseEntity<?> calculateOptimalRoute() {
+    public ResponseEntity<?> calculateOptimalRoute(RoutingOptions options) {
         try {
-            Map<Long, List<Long>> optimalRoute = optimodService.calculateOptimalRoute();
+            if (options.getFormat() == RouteFormat.COMPACT) {
+                return ResponseEntity.ok(optimodService.calculateCompactRoute(options));
+            }
+            Map<Long, List<Long>> optimalRoute = optimodService.calculateOptimalRoute(options);
             return ResponseEntity.ok(optimalRoute);
         } catch (IllegalStateException e) {
             // Renvoyer une erreur 400 (Bad Request) avec le message d'erreur
@@ -563,6 +724,133 @@ public class OptimodController {
         }
     }
 
+    /**
+     * Calculate the optimal route, streaming the route of each courier as Server-Sent Events as soon as it is found,
+     * then each better route found for it
+     *
+     * @param options - The options of the computation, as for /calculateOptimalRoute
+     * @return A ResponseEntity object containing the stream of events (see {@link RouteEventStream})
+     *         200 OK if the computation is started
+     *         503 Service Unavailable, with a Retry-After header, if too many computations are waiting
+     *         500 Internal Server Error if an error occurs
+     */
+    @GetMapping("/calculateOptimalRoute/stream")
+    public ResponseEntity<SseEmitter> streamOptimalRoute(RoutingOptions options) {
+        try {
+            RouteEventStream stream = new RouteEventStream();
+            String jobId = routeJobService.submit(options, stream).getId();
+            stream.setCancel(() -> {
+                try {
+                    routeJobService.cancel(jobId);
+                } catch (IllegalStateException e) {
+                    // Le job n'est plus conservé
+                }
+            });
+            return ResponseEntity.ok(stream.getEmitter());
+        } catch (IllegalStateException e) {
+            // Renvoyer une erreur 503 (Service Unavailable) si trop de calculs sont en attente
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS).build();
+        } catch (Exception e) {
+            // Renvoyer une erreur générique 500 (Internal Server Error)
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Start the calculation of the optimal route in the background
+     *
+     * @param options - The options of the computation, as for /calculateOptimalRoute
+     * @return A ResponseEntity object containing the status of the new job, with its id
+     *         202 Accepted if the job is started
+     *         503 Service Unavailable, with a Retry-After header, if too many jobs are waiting
+     *         500 Internal Server Error if an error occurs
+     */
+    @PostMapping("/routeJobs")
+    public ResponseEntity<?> submitRouteJob(RoutingOptions options) {
+        try {
+            return ResponseEntity.accepted().body(routeJobService.submit(options));
+        } catch (IllegalStateException e) {
+            // Renvoyer une erreur 503 (Service Unavailable) avec le message d'erreur si trop de calculs sont en attente
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS).body(e.getMessage());
+        } catch (Exception e) {
+            // Renvoyer une erreur générique 500 (Internal Server Error)
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
+    /**
+     * Get the progress of a route job
+     *
+     * @param id - The id of the job
+     * @return A ResponseEntity object containing the state of the job, the number of couriers done and the total
+     *         length of the routes found so far
+     *         200 OK if the job is found
+     *         400 Bad Request if the job is not found
+     *         500 Internal Server Error if an error occurs
+     */
+    @GetMapping("/routeJobs/{id}")
+    public ResponseEntity<?> getRouteJob(@PathVariable("id") final String id) {
+        try {
+            return ResponseEntity.ok(routeJobService.getStatus(id));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
+    /**
+     * Get the routes computed by a route job
+     *
+     * @param id - The id of the job
+     * @return A ResponseEntity object containing the routes, as returned by /calculateOptimalRoute
+     *         200 OK if the job is done
+     *         400 Bad Request if the job is not found or not done
+     *         500 Internal Server Error if an error occurs
+     */
+    @GetMapping("/routeJobs/{id}/result")
+    public ResponseEntity<?> getRouteJobResult(@PathVariable("id") final String id) {
+        try {
+            return ResponseEntity.ok(routeJobService.getResult(id));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
+    /**
+     * Cancel a route job
+     *
+     * @param id - The id of the job
+     * @return A ResponseEntity object containing the status of the job
+     *         200 OK if the job is found
+     *         400 Bad Request if the job is not found
+     *         500 Internal Server Error if an error occurs
+     */
+    @DeleteMapping("/routeJobs/{id}")
+    public ResponseEntity<?> cancelRouteJob(@PathVariable("id") final String id) {
+        try {
+            return ResponseEntity.ok(routeJobService.cancel(id));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur interne du serveur.");
+        }
+    }
+
+    /**
+     * Get the counters of the cache of the routes
+     *
+     * @return The hits, misses and evictions of the cache since the start, and its number of routes
+     */
+    @GetMapping("/routeCacheStatistics")
+    public RouteCache.Statistics getRouteCacheStatistics() {
+        return optimodService.getRouteCacheStatistics();
+    }
+
     /**
      * Save the session to an XML file and download it
      * @return A ResponseEntity object containing the result of the save
@@ -599,6 +887,7 @@ public class OptimodController {
             optimodService.deleteAllSegments();
             optimodService.deleteAllNodes();
             optimodService.restoreSession(XMLFileName);
+            optimodService.rebuildGraph();
             return ResponseEntity.ok("La session a été restaurée avec succès !");
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
@@ -0,0 +1,89 @@
+package com.hexplosif.OptimodBackEnd.controller;
+
+import com.hexplosif.OptimodBackEnd.service.RouteJob;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends the routes of a route job as Server-Sent Events:
+ * <ul>
+ *     <li>{@code started} with the ids of the couriers that get a route</li>
+ *     <li>{@code route} with the id of a courier, its route and its length, each time a better route is found</li>
+ *     <li>{@code courierDone} with the id of a courier whose route will no longer improve</li>
+ *     <li>{@code done} with the final status of the job, after which the stream is closed</li>
+ * </ul>
+ * The job is cancelled when the client goes away.
+ */
+class RouteEventStream implements RouteJob.Listener {
+
+    private final SseEmitter emitter = new SseEmitter(0L);
+
+    /**
+     * Set from the request thread, and run from the container threads completing the emitter
+     */
+    private volatile Runnable cancel = () -> {
+    };
+
+    /**
+     * Whether the emitter completed, possibly before the cancellation is set
+     */
+    private volatile boolean completed;
+
+    RouteEventStream() {
+        emitter.onCompletion(this::completed);
+        emitter.onTimeout(this::completed);
+        emitter.onError(error -> completed());
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * @param cancel Cancels the job of the stream, run at once if the client already went away
+     */
+    void setCancel(Runnable cancel) {
+        this.cancel = cancel;
+        if (completed) {
+            cancel.run();
+        }
+    }
+
+    @Override
+    public void started(List<Long> courierIds) {
+        send("started", courierIds);
+    }
+
+    @Override
+    public void routeFound(Long courierId, List<Long> route, double length) {
+        send("route", Map.of("courierId", courierId, "route", route, "length", length));
+    }
+
+    @Override
+    public void courierFinished(Long courierId) {
+        send("courierDone", courierId);
+    }
+
+    @Override
+    public void jobFinished(RouteJob.Status status) {
+        send("done", status);
+        emitter.complete();
+    }
+
+    private void send(String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away
+            completed();
+        }
+    }
+
+    private void completed() {
+        completed = true;
+        cancel.run();
+    }
+}
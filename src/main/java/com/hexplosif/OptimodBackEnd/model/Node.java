@@ -3,12 +3,13 @@ package com.hexplosif.OptimodBackEnd.model;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.Data;
 
 @Data
 @Entity
-@Table(name = "node")
+@Table(name = "node", indexes = @Index(name = "node_coordinates", columnList = "latitude, longitude"))
 public class Node {
     @Id
     private Long id;
@@ -5,17 +5,26 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 import lombok.Data;
 
 @Data
 @Entity
-@Table(name = "segment")
+@Table(name = "segment", indexes = {@Index(name = "segment_origin", columnList = "origin"),
+        @Index(name = "segment_destination", columnList = "destination")})
 public class Segment {
 
+    /**
+     * Number of ids taken at once from the sequence, so that inserts can be batched
+     */
+    public static final int ID_ALLOCATION_SIZE = 1000;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "segment_sequence")
+    @SequenceGenerator(name = "segment_sequence", sequenceName = "segment_sequence", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Column(name = "origin")
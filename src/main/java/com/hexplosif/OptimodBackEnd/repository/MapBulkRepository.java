@@ -0,0 +1,108 @@
+package com.hexplosif.OptimodBackEnd.repository;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Bulk writes of the nodes and segments of a map, as JDBC batches of {@code optimod.map.batch-size} rows.
+ * <p>
+ * Unlike {@link NodeRepository#saveAll(Iterable)}, which looks every node up before saving it because its id is
+ * assigned, and {@link CrudRepository#deleteAll()}, which loads every entity to delete it, nothing is read nor kept
+ * in the persistence context.
+ * The ids of the segments are taken from the same sequence as Hibernate, by blocks of
+ * {@link Segment#ID_ALLOCATION_SIZE}.
+ */
+@Repository
+public class MapBulkRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${optimod.map.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * The next segment id of the current block
+     */
+    private long nextSegmentId;
+
+    /**
+     * The number of ids left in the current block
+     */
+    private int segmentIdsLeft;
+
+    /**
+     * Insert new nodes
+     *
+     * @param nodes The nodes, whose ids must not exist yet
+     */
+    public void insertNodes(List<Node> nodes) {
+        jdbcTemplate.batchUpdate("insert into node (id, latitude, longitude) values (?, ?, ?)", nodes, batchSize,
+                (statement, node) -> {
+                    statement.setLong(1, node.getId());
+                    statement.setObject(2, node.getLatitude());
+                    statement.setObject(3, node.getLongitude());
+                });
+    }
+
+    /**
+     * Insert nodes, or update the coordinates of the nodes whose ids already exist
+     *
+     * @param nodes The nodes
+     */
+    public void mergeNodes(List<Node> nodes) {
+        jdbcTemplate.batchUpdate("merge into node (id, latitude, longitude) key (id) values (?, ?, ?)", nodes, batchSize,
+                (statement, node) -> {
+                    statement.setLong(1, node.getId());
+                    statement.setObject(2, node.getLatitude());
+                    statement.setObject(3, node.getLongitude());
+                });
+    }
+
+    /**
+     * Insert new segments, setting their ids
+     *
+     * @param segments The segments
+     */
+    public void insertSegments(List<Segment> segments) {
+        synchronized (this) {
+            for (Segment segment : segments) {
+                if (segmentIdsLeft == 0) {
+                    nextSegmentId = jdbcTemplate.queryForObject("select next value for segment_sequence", Long.class);
+                    segmentIdsLeft = Segment.ID_ALLOCATION_SIZE;
+                }
+                segment.setId(nextSegmentId++);
+                segmentIdsLeft--;
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into segment (id, origin, destination, length, name) values (?, ?, ?, ?, ?)",
+                segments, batchSize, (statement, segment) -> {
+                    statement.setLong(1, segment.getId());
+                    statement.setObject(2, segment.getIdOrigin());
+                    statement.setObject(3, segment.getIdDestination());
+                    statement.setObject(4, segment.getLength());
+                    statement.setString(5, segment.getName());
+                });
+    }
+
+    /**
+     * Delete all the nodes at once. The table is truncated, which commits and cannot be rolled back.
+     */
+    public void deleteNodes() {
+        jdbcTemplate.execute("truncate table node");
+    }
+
+    /**
+     * Delete all the segments at once. The table is truncated, which commits and cannot be rolled back.
+     */
+    public void deleteSegments() {
+        jdbcTemplate.execute("truncate table segment");
+    }
+}
@@ -1,9 +1,19 @@
 package com.hexplosif.OptimodBackEnd.repository;
 
 import com.hexplosif.OptimodBackEnd.model.Node;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
-public interface NodeRepository extends CrudRepository<Node, Long> {
-}
\ No newline at end of file
+public interface NodeRepository extends CrudRepository<Node, Long>, PagingAndSortingRepository<Node, Long> {
+
+    /**
+     * Find a page of the nodes inside a bounding box, through the index on the coordinates
+     */
+    List<Node> findByLatitudeBetweenAndLongitudeBetween(Double minLatitude, Double maxLatitude, Double minLongitude,
+                                                         Double maxLongitude, Pageable pageable);
+}
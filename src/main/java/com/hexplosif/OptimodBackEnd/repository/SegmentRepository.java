@@ -1,9 +1,24 @@
 package com.hexplosif.OptimodBackEnd.repository;
 
 import com.hexplosif.OptimodBackEnd.model.Segment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface SegmentRepository extends CrudRepository<Segment, Long> {
-}
\ No newline at end of file
+
+    /**
+     * Find a page of the segments with at least one end inside a bounding box, through the indexes on the
+     * coordinates of the nodes and on the ends of the segments
+     */
+    @Query("select s from Segment s where s.idOrigin in (select n.id from Node n where n.latitude between :minLatitude and :maxLatitude and n.longitude between :minLongitude and :maxLongitude)"
+            + " or s.idDestination in (select n.id from Node n where n.latitude between :minLatitude and :maxLatitude and n.longitude between :minLongitude and :maxLongitude)")
+    List<Segment> findWithEndInBox(@Param("minLatitude") Double minLatitude, @Param("maxLatitude") Double maxLatitude,
+                                   @Param("minLongitude") Double minLongitude, @Param("maxLongitude") Double maxLongitude,
+                                   Pageable pageable);
+}
@@ -0,0 +1,88 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+/**
+ * A* point-to-point search on a {@link RoadGraph}, using the straight-line distance to the target as lower bound.
+ * <p>
+ * The straight-line distance is scaled by {@link RoadGraph#minLengthRatio()}, so that it never exceeds the length of
+ * an edge and the bound stays consistent even where a segment is slightly shorter than the distance between its
+ * ends. The search is only used when this bound is meaningful, see {@link #isApplicable(RoadGraph)}; otherwise
+ * callers fall back to {@link Dijkstra}.
+ */
+public final class AStar implements PointToPointSearch {
+
+    /**
+     * Segment lengths are in meters, like straight-line distances. Below this ratio, some segments are much shorter
+     * than the distance between their ends (wrong coordinates or lengths), and the scaled bound would be too weak to
+     * save anything over Dijkstra
+     */
+    private static final double MIN_LENGTH_RATIO = 0.5;
+
+    private final RoadGraph graph;
+
+    private final double scale;
+
+    private final SearchSpace space;
+
+    private int target = -1;
+
+    private int settledCount;
+
+    /**
+     * @param graph The graph, for which {@link #isApplicable(RoadGraph)} holds
+     */
+    public AStar(RoadGraph graph) {
+        this.graph = graph;
+        this.scale = graph.minLengthRatio();
+        this.space = new SearchSpace(graph.nodeCount());
+    }
+
+    /**
+     * @param graph The graph
+     * @return true if the coordinates of every node are known and the segment lengths are consistent with them
+     */
+    public static boolean isApplicable(RoadGraph graph) {
+        double ratio = graph.minLengthRatio();
+        return Double.isFinite(ratio) && ratio >= MIN_LENGTH_RATIO;
+    }
+
+    @Override
+    public double search(int source, int target) {
+        this.target = target;
+        settledCount = 0;
+        space.reset();
+        IndexedHeap heap = space.heap;
+
+        space.update(source, 0.0, -1);
+        heap.push(source, scale * graph.straightLineDistance(source, target));
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            settledCount++;
+
+            if (current == target) break;
+
+            double currentDistance = space.distance(current);
+            for (int edge = graph.firstEdge(current); edge < graph.lastEdge(current); edge++) {
+                int neighbor = graph.edgeTarget(edge);
+                double newDist = currentDistance + graph.edgeWeight(edge);
+
+                if (newDist < space.distance(neighbor)) {
+                    space.update(neighbor, newDist, current);
+                    heap.push(neighbor, newDist + scale * graph.straightLineDistance(neighbor, target));
+                }
+            }
+        }
+
+        return space.distance(target);
+    }
+
+    @Override
+    public int[] path() {
+        return space.distance(target) == Double.MAX_VALUE ? new int[0] : space.pathTo(target);
+    }
+
+    @Override
+    public int settledCount() {
+        return settledCount;
+    }
+}
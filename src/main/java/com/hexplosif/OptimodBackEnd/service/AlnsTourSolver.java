@@ -0,0 +1,498 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Adaptive large neighbourhood search (ALNS) for the tours of large couriers.
+ * <p>
+ * Each iteration removes a few requests from the current tour (at random, the most expensive ones, or requests close
+ * to each other) and inserts them back (in random order, or cheapest first), choosing the operators at random with
+ * weights adapted to their past successes. The new tour replaces the current one by simulated annealing, the
+ * temperature falling from accepting a tour 5% worse half of the time to nearly nothing at the last iteration.
+ * <p>
+ * Several independent searches, each with its own seed, run in parallel on the fork/join pool of the caller. They
+ * stop after every round of {@value #ROUND_ITERATIONS} iterations to share the best tour: the searches lagging more
+ * than 1% behind it start the next round from it. Since the rounds and their iterations do not depend on timing, the
+ * result only depends on the seed and the number of searches, unless the deadline or a cancellation stops the search
+ * first.
+ */
+public final class AlnsTourSolver implements TourSolver {
+
+    /**
+     * Iterations of each search between two exchanges of the best tour
+     */
+    static final int ROUND_ITERATIONS = 200;
+
+    /**
+     * Iterations between two updates of the operator weights
+     */
+    private static final int SEGMENT_ITERATIONS = 100;
+
+    /**
+     * Share of the last weight of an operator kept at each update
+     */
+    private static final double REACTION = 0.1;
+
+    /**
+     * Scores of an operator giving a new best tour, a better tour, or an accepted worse tour
+     */
+    private static final double BEST_SCORE = 33;
+
+    private static final double BETTER_SCORE = 9;
+
+    private static final double ACCEPTED_SCORE = 13;
+
+    /**
+     * Determinism of the randomized choices of the worst and related removals, higher is more greedy
+     */
+    private static final int REMOVAL_DETERMINISM = 4;
+
+    private static final int DESTROY_OPERATORS = 3;
+
+    private static final int REPAIR_OPERATORS = 2;
+
+    private final int searchCount;
+
+    private final int iterations;
+
+    private final long seed;
+
+    /**
+     * @param searchCount The number of searches run in parallel
+     * @param iterations  The number of iterations of each search
+     * @param seed        The seed of the random choices
+     */
+    public AlnsTourSolver(int searchCount, int iterations, long seed) {
+        this.searchCount = searchCount;
+        this.iterations = iterations;
+        this.seed = seed;
+    }
+
+    @Override
+    public int[] solve(PickupDeliveryProblem problem, long deadline, BooleanSupplier cancelled) {
+        return improve(problem, new GreedyTourSolver().solve(problem, deadline, cancelled), deadline, cancelled,
+                improved -> {
+                }).getTour();
+    }
+
+    /**
+     * Improve a tour
+     *
+     * @param problem  The problem
+     * @param tour     A feasible tour, which is not modified
+     * @param deadline The {@link System#nanoTime()} after which no new round starts
+     * @return The best tour found and how its cost decreased
+     */
+    public Result improve(PickupDeliveryProblem problem, int[] tour, long deadline) {
+        return improve(problem, tour, deadline, () -> false, improved -> {
+        });
+    }
+
+    /**
+     * Improve a tour, telling each better tour found at the end of a round
+     *
+     * @param cancelled Whether the computation was cancelled, after which no new round starts
+     * @param listener  Called with a copy of each better tour, from the calling thread
+     * @see #improve(PickupDeliveryProblem, int[], long)
+     */
+    public Result improve(PickupDeliveryProblem problem, int[] tour, long deadline, BooleanSupplier cancelled,
+                          Consumer<int[]> listener) {
+        long start = System.nanoTime();
+        List<Search> searches = new ArrayList<>();
+        for (int i = 0; i < searchCount; i++) {
+            searches.add(new Search(problem, tour, seed * 31 + i, iterations));
+        }
+
+        int[] best = tour.clone();
+        double bestCost = problem.tourCost(tour);
+        List<Improvement> improvements = new ArrayList<>();
+        improvements.add(new Improvement(0, 0, bestCost));
+
+        int done = 0;
+        while (done < iterations && System.nanoTime() < deadline && !cancelled.getAsBoolean()) {
+            int roundIterations = Math.min(ROUND_ITERATIONS, iterations - done);
+            List<Callable<Void>> round = new ArrayList<>();
+            for (Search search : searches) {
+                round.add(() -> {
+                    search.run(roundIterations);
+                    return null;
+                });
+            }
+            ForkJoinTask.invokeAll(round.stream().map(ForkJoinTask::adapt).toList())
+                    .forEach(ForkJoinTask::join);
+            done += roundIterations;
+
+            // The first of the best searches wins, whatever the order in which they finished
+            Search leader = searches.get(0);
+            for (Search search : searches) {
+                if (search.bestCost < leader.bestCost) {
+                    leader = search;
+                }
+            }
+            if (leader.bestCost < bestCost) {
+                bestCost = leader.bestCost;
+                best = leader.best();
+                improvements.add(new Improvement(done, (System.nanoTime() - start) / 1_000_000, bestCost));
+                listener.accept(best.clone());
+            }
+            for (Search search : searches) {
+                if (search.bestCost > bestCost * 1.01) {
+                    search.restartFrom(best, bestCost);
+                }
+            }
+        }
+        return new Result(best, done, improvements);
+    }
+
+    /**
+     * Outcome of a search
+     */
+    @Value
+    public static class Result {
+
+        /**
+         * The best tour found
+         */
+        int[] tour;
+
+        /**
+         * The number of iterations of each search
+         */
+        int iterations;
+
+        /**
+         * The cost of the given tour, then of each better tour when it was found
+         */
+        List<Improvement> improvements;
+    }
+
+    /**
+     * Best cost known at the end of a round of the searches
+     */
+    @Value
+    public static class Improvement {
+
+        /**
+         * The number of iterations of each search
+         */
+        int iteration;
+
+        /**
+         * The time since the start of the search
+         */
+        long elapsedMillis;
+
+        /**
+         * The cost of the best tour
+         */
+        double cost;
+    }
+
+    /**
+     * One of the independent searches
+     */
+    private static final class Search {
+
+        private final PickupDeliveryProblem problem;
+
+        private final Random random;
+
+        private final int requestCount;
+
+        /**
+         * The current tour, the warehouse first and last
+         */
+        private int[] current;
+
+        private double currentCost;
+
+        private int[] candidate;
+
+        private int[] bestRoute;
+
+        private double bestCost;
+
+        private final int[] positions;
+
+        private final boolean[] removed;
+
+        private final int[] removedRequests;
+
+        private final double[] destroyWeights = new double[DESTROY_OPERATORS];
+
+        private final double[] destroyScores = new double[DESTROY_OPERATORS];
+
+        private final int[] destroyUses = new int[DESTROY_OPERATORS];
+
+        private final double[] repairWeights = new double[REPAIR_OPERATORS];
+
+        private final double[] repairScores = new double[REPAIR_OPERATORS];
+
+        private final int[] repairUses = new int[REPAIR_OPERATORS];
+
+        private double temperature;
+
+        private final double cooling;
+
+        private int iteration;
+
+        Search(PickupDeliveryProblem problem, int[] tour, long seed, int iterations) {
+            this.problem = problem;
+            this.random = new Random(seed);
+            this.requestCount = problem.requestCount();
+            this.current = new int[tour.length + 2];
+            System.arraycopy(tour, 0, current, 1, tour.length);
+            this.candidate = new int[current.length];
+            this.bestRoute = current.clone();
+            this.currentCost = routeCost(current, current.length);
+            this.bestCost = currentCost;
+            this.positions = new int[problem.stopCount()];
+            this.removed = new boolean[requestCount];
+            this.removedRequests = new int[requestCount];
+            Arrays.fill(destroyWeights, 1.0);
+            Arrays.fill(repairWeights, 1.0);
+
+            // A tour 5% worse is accepted half of the time at first, and almost never at the end
+            this.temperature = 0.05 * currentCost / Math.log(2);
+            this.cooling = Math.pow(0.002, 1.0 / Math.max(1, iterations));
+        }
+
+        int[] best() {
+            return Arrays.copyOfRange(bestRoute, 1, bestRoute.length - 1);
+        }
+
+        void restartFrom(int[] tour, double cost) {
+            System.arraycopy(tour, 0, current, 1, tour.length);
+            currentCost = cost;
+        }
+
+        private double routeCost(int[] route, int length) {
+            double cost = 0.0;
+            for (int position = 1; position < length; position++) {
+                cost += problem.cost(route[position - 1], route[position]);
+            }
+            return cost;
+        }
+
+        void run(int count) {
+            for (int i = 0; i < count; i++) {
+                iterate();
+            }
+        }
+
+        private void iterate() {
+            int destroy = pick(destroyWeights);
+            int repair = pick(repairWeights);
+            int maxRemoved = Math.max(1, Math.min(20, (int) (0.2 * requestCount)));
+            int toRemove = 1 + random.nextInt(maxRemoved);
+
+            Arrays.fill(removed, false);
+            switch (destroy) {
+                case 0 -> randomRemoval(toRemove);
+                case 1 -> worstRemoval(toRemove);
+                default -> relatedRemoval(toRemove);
+            }
+
+            int length = 0;
+            int removedCount = 0;
+            for (int stop : current) {
+                if (stop == 0 || !removed[PickupDeliveryProblem.request(stop)]) {
+                    candidate[length++] = stop;
+                }
+            }
+            for (int request = 0; request < requestCount; request++) {
+                if (removed[request]) removedRequests[removedCount++] = request;
+            }
+
+            if (repair == 0) {
+                randomInsertion(length, removedCount);
+            } else {
+                cheapestInsertion(length, removedCount);
+            }
+
+            double cost = routeCost(candidate, candidate.length);
+            double score = 0;
+            if (cost < currentCost - 1e-9 || random.nextDouble() < Math.exp((currentCost - cost) / temperature)) {
+                if (cost < bestCost - 1e-9) {
+                    bestCost = cost;
+                    System.arraycopy(candidate, 0, bestRoute, 0, candidate.length);
+                    score = BEST_SCORE;
+                } else {
+                    score = cost < currentCost - 1e-9 ? BETTER_SCORE : ACCEPTED_SCORE;
+                }
+                int[] previous = current;
+                current = candidate;
+                candidate = previous;
+                currentCost = cost;
+            }
+
+            destroyScores[destroy] += score;
+            destroyUses[destroy]++;
+            repairScores[repair] += score;
+            repairUses[repair]++;
+            temperature *= cooling;
+            if (++iteration % SEGMENT_ITERATIONS == 0) {
+                adapt(destroyWeights, destroyScores, destroyUses);
+                adapt(repairWeights, repairScores, repairUses);
+            }
+        }
+
+        private int pick(double[] weights) {
+            double total = 0.0;
+            for (double weight : weights) total += weight;
+            double draw = random.nextDouble() * total;
+            for (int operator = 0; operator < weights.length - 1; operator++) {
+                draw -= weights[operator];
+                if (draw < 0) return operator;
+            }
+            return weights.length - 1;
+        }
+
+        private void adapt(double[] weights, double[] scores, int[] uses) {
+            for (int operator = 0; operator < weights.length; operator++) {
+                if (uses[operator] > 0) {
+                    weights[operator] = weights[operator] * (1 - REACTION) + REACTION * scores[operator] / uses[operator];
+                    weights[operator] = Math.max(weights[operator], 0.1);
+                }
+                scores[operator] = 0;
+                uses[operator] = 0;
+            }
+        }
+
+        /**
+         * Random index favouring the first ones
+         */
+        private int skewedIndex(int size) {
+            return (int) (Math.pow(random.nextDouble(), REMOVAL_DETERMINISM) * size);
+        }
+
+        private void randomRemoval(int count) {
+            int[] requests = shuffledRequests();
+            for (int i = 0; i < count; i++) {
+                removed[requests[i]] = true;
+            }
+        }
+
+        /**
+         * Remove the requests whose stops save the most when taken out of the tour
+         */
+        private void worstRemoval(int count) {
+            for (int position = 0; position < current.length - 1; position++) {
+                positions[current[position]] = position;
+            }
+            double[] savings = new double[requestCount];
+            for (int request = 0; request < requestCount; request++) {
+                savings[request] = saving(positions[PickupDeliveryProblem.pickup(request)],
+                        positions[PickupDeliveryProblem.delivery(request)]);
+            }
+            Integer[] requests = new Integer[requestCount];
+            for (int request = 0; request < requestCount; request++) requests[request] = request;
+            Arrays.sort(requests, (a, b) -> Double.compare(savings[b], savings[a]));
+
+            List<Integer> remaining = new ArrayList<>(Arrays.asList(requests));
+            for (int i = 0; i < count; i++) {
+                removed[remaining.remove(skewedIndex(remaining.size()))] = true;
+            }
+        }
+
+        private double saving(int pickupPosition, int deliveryPosition) {
+            int[] route = current;
+            if (deliveryPosition == pickupPosition + 1) {
+                return problem.cost(route[pickupPosition - 1], route[pickupPosition])
+                        + problem.cost(route[pickupPosition], route[deliveryPosition])
+                        + problem.cost(route[deliveryPosition], route[deliveryPosition + 1])
+                        - problem.cost(route[pickupPosition - 1], route[deliveryPosition + 1]);
+            }
+            return problem.cost(route[pickupPosition - 1], route[pickupPosition])
+                    + problem.cost(route[pickupPosition], route[pickupPosition + 1])
+                    - problem.cost(route[pickupPosition - 1], route[pickupPosition + 1])
+                    + problem.cost(route[deliveryPosition - 1], route[deliveryPosition])
+                    + problem.cost(route[deliveryPosition], route[deliveryPosition + 1])
+                    - problem.cost(route[deliveryPosition - 1], route[deliveryPosition + 1]);
+        }
+
+        /**
+         * Remove requests whose pickups and deliveries are close to those of the requests already removed
+         */
+        private void relatedRemoval(int count) {
+            List<Integer> taken = new ArrayList<>();
+            List<Integer> remaining = new ArrayList<>();
+            int first = random.nextInt(requestCount);
+            for (int request = 0; request < requestCount; request++) {
+                if (request != first) remaining.add(request);
+            }
+            taken.add(first);
+            removed[first] = true;
+
+            while (taken.size() < count) {
+                int reference = taken.get(random.nextInt(taken.size()));
+                remaining.sort((a, b) -> Double.compare(relatedness(reference, a), relatedness(reference, b)));
+                int request = remaining.remove(skewedIndex(remaining.size()));
+                taken.add(request);
+                removed[request] = true;
+            }
+        }
+
+        private double relatedness(int first, int second) {
+            return problem.cost(PickupDeliveryProblem.pickup(first), PickupDeliveryProblem.pickup(second))
+                    + problem.cost(PickupDeliveryProblem.delivery(first), PickupDeliveryProblem.delivery(second));
+        }
+
+        private int[] shuffledRequests() {
+            int[] requests = new int[requestCount];
+            for (int request = 0; request < requestCount; request++) requests[request] = request;
+            for (int i = requestCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int request = requests[i];
+                requests[i] = requests[j];
+                requests[j] = request;
+            }
+            return requests;
+        }
+
+        /**
+         * Insert the removed requests one by one in random order, each at its cheapest place
+         */
+        private void randomInsertion(int length, int removedCount) {
+            for (int i = removedCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int request = removedRequests[i];
+                removedRequests[i] = removedRequests[j];
+                removedRequests[j] = request;
+            }
+            for (int i = 0; i < removedCount; i++) {
+                PairInsertion.cheapest(problem, candidate, length, removedRequests[i]).apply(candidate, length, removedRequests[i]);
+                length += 2;
+            }
+        }
+
+        /**
+         * Insert first the removed request whose cheapest insertion costs the least, until all are inserted
+         */
+        private void cheapestInsertion(int length, int removedCount) {
+            while (removedCount > 0) {
+                PairInsertion best = null;
+                int bestIndex = -1;
+                for (int i = 0; i < removedCount; i++) {
+                    PairInsertion insertion = PairInsertion.cheapest(problem, candidate, length, removedRequests[i]);
+                    if (best == null || insertion.getCost() < best.getCost()) {
+                        best = insertion;
+                        bestIndex = i;
+                    }
+                }
+                best.apply(candidate, length, removedRequests[bestIndex]);
+                length += 2;
+                removedRequests[bestIndex] = removedRequests[--removedCount];
+            }
+        }
+    }
+}
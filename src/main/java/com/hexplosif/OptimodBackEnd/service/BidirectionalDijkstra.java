@@ -0,0 +1,120 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.Arrays;
+
+/**
+ * Bidirectional Dijkstra point-to-point search on a {@link RoadGraph}.
+ * <p>
+ * A forward search grows from the source along the outgoing edges and a backward search grows from the target
+ * along the incoming edges, always expanding the side with the smaller tentative distance. Every edge relaxation
+ * that reaches a node seen by the other side is a candidate meeting point. The search stops as soon as the sum of
+ * the smallest keys of both heaps is not lower than the best candidate, which is then a shortest path.
+ */
+public final class BidirectionalDijkstra implements PointToPointSearch {
+
+    private final RoadGraph graph;
+
+    private final SearchSpace forward;
+
+    /**
+     * Predecessors of the backward search are the successors on the path to the target
+     */
+    private final SearchSpace backward;
+
+    private int meetingNode = -1;
+
+    private double bestDistance;
+
+    private int settledCount;
+
+    /**
+     * @param graph The graph
+     */
+    public BidirectionalDijkstra(RoadGraph graph) {
+        this.graph = graph;
+        this.forward = new SearchSpace(graph.nodeCount());
+        this.backward = new SearchSpace(graph.nodeCount());
+    }
+
+    @Override
+    public double search(int source, int target) {
+        forward.reset();
+        backward.reset();
+        settledCount = 0;
+        bestDistance = Double.MAX_VALUE;
+        meetingNode = -1;
+
+        forward.update(source, 0.0, -1);
+        forward.heap.push(source, 0.0);
+        backward.update(target, 0.0, -1);
+        backward.heap.push(target, 0.0);
+        if (source == target) {
+            bestDistance = 0.0;
+            meetingNode = source;
+            return bestDistance;
+        }
+
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            // Stopping rule: no path through an unsettled node can beat the best meeting point
+            if (forward.heap.peekKey() + backward.heap.peekKey() >= bestDistance) {
+                break;
+            }
+
+            if (forward.heap.peekKey() <= backward.heap.peekKey()) {
+                int current = forward.heap.poll();
+                settledCount++;
+                double currentDistance = forward.distance(current);
+                for (int edge = graph.firstEdge(current); edge < graph.lastEdge(current); edge++) {
+                    relax(forward, backward, current, graph.edgeTarget(edge), currentDistance + graph.edgeWeight(edge));
+                }
+            } else {
+                int current = backward.heap.poll();
+                settledCount++;
+                double currentDistance = backward.distance(current);
+                for (int edge = graph.firstIncomingEdge(current); edge < graph.lastIncomingEdge(current); edge++) {
+                    relax(backward, forward, current, graph.incomingEdgeSource(edge), currentDistance + graph.incomingEdgeWeight(edge));
+                }
+            }
+        }
+
+        return bestDistance;
+    }
+
+    private void relax(SearchSpace side, SearchSpace otherSide, int current, int neighbor, double newDist) {
+        if (newDist < side.distance(neighbor)) {
+            side.update(neighbor, newDist, current);
+            side.heap.push(neighbor, newDist);
+
+            double otherDistance = otherSide.distance(neighbor);
+            if (otherDistance != Double.MAX_VALUE && newDist + otherDistance < bestDistance) {
+                bestDistance = newDist + otherDistance;
+                meetingNode = neighbor;
+            }
+        }
+    }
+
+    @Override
+    public int[] path() {
+        if (meetingNode == -1) {
+            return new int[0];
+        }
+
+        // Stitch the forward path to the meeting node and the backward path from it
+        int[] head = forward.pathTo(meetingNode);
+        int length = head.length;
+        for (int at = backward.previous(meetingNode); at != -1; at = backward.previous(at)) {
+            length++;
+        }
+        int[] path = Arrays.copyOf(head, length);
+        int i = head.length;
+        for (int at = backward.previous(meetingNode); at != -1; at = backward.previous(at)) {
+            path[i++] = at;
+        }
+        return path;
+    }
+
+    @Override
+    public int settledCount() {
+        return settledCount;
+    }
+}
@@ -0,0 +1,124 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Route of a courier with everything needed to show it: its stops with the distance travelled when reaching them,
+ * the length of the legs between them, and its geometry as an {@link Polyline encoded polyline}, so that the nodes of
+ * the map do not have to be downloaded.
+ */
+@Value
+public class CompactRoute {
+
+    /**
+     * What a courier does at a stop
+     */
+    public enum StopType {
+        WAREHOUSE,
+        PICKUP,
+        DELIVERY
+    }
+
+    /**
+     * Stop of a route
+     */
+    @Value
+    public static class Stop {
+
+        Long nodeId;
+
+        StopType type;
+
+        /**
+         * The id of the delivery request picked up or delivered, null at the warehouse
+         */
+        Long deliveryRequestId;
+
+        /**
+         * Length of the route from the warehouse to the stop
+         */
+        double distance;
+    }
+
+    /**
+     * The stops, from the warehouse back to it
+     */
+    List<Stop> stops;
+
+    /**
+     * Length of the route between each stop and the next one
+     */
+    double[] legLengths;
+
+    double totalLength;
+
+    /**
+     * The nodes of the route as an encoded polyline, null if the coordinates of some nodes are unknown
+     */
+    String polyline;
+
+    /**
+     * Describe a route. Its stops are found along it: a request is picked up the first time the route goes through
+     * its pickup, and delivered the first time it goes through its delivery after that.
+     *
+     * @param graph            The graph the route was computed on
+     * @param route            The ids of the nodes of the route, from the warehouse back to it
+     * @param deliveryRequests The delivery requests of the courier
+     * @return The description of the route
+     */
+    public static CompactRoute of(RoadGraph graph, List<Long> route, List<DeliveryRequest> deliveryRequests) {
+        List<Stop> stops = new ArrayList<>();
+        Set<Long> pickedUp = new HashSet<>();
+        Set<Long> delivered = new HashSet<>();
+        double[] latitudes = new double[route.size()];
+        double[] longitudes = new double[route.size()];
+        boolean located = true;
+        double distance = 0.0;
+
+        for (int i = 0; i < route.size(); i++) {
+            Long nodeId = route.get(i);
+            int node = graph.indexOf(nodeId);
+            if (i > 0) {
+                distance += graph.pathLength(route.subList(i - 1, i + 1));
+            }
+            if (node >= 0 && graph.hasCoordinates(node)) {
+                latitudes[i] = graph.latitude(node);
+                longitudes[i] = graph.longitude(node);
+            } else {
+                located = false;
+            }
+
+            if (i == 0) {
+                stops.add(new Stop(nodeId, StopType.WAREHOUSE, null, distance));
+            }
+            for (DeliveryRequest deliveryRequest : deliveryRequests) {
+                if (!pickedUp.contains(deliveryRequest.getId()) && nodeId.equals(deliveryRequest.getIdPickup())) {
+                    pickedUp.add(deliveryRequest.getId());
+                    stops.add(new Stop(nodeId, StopType.PICKUP, deliveryRequest.getId(), distance));
+                }
+            }
+            for (DeliveryRequest deliveryRequest : deliveryRequests) {
+                if (pickedUp.contains(deliveryRequest.getId()) && !delivered.contains(deliveryRequest.getId())
+                        && nodeId.equals(deliveryRequest.getIdDelivery())) {
+                    delivered.add(deliveryRequest.getId());
+                    stops.add(new Stop(nodeId, StopType.DELIVERY, deliveryRequest.getId(), distance));
+                }
+            }
+            if (i == route.size() - 1 && i > 0) {
+                stops.add(new Stop(nodeId, StopType.WAREHOUSE, null, distance));
+            }
+        }
+
+        double[] legLengths = new double[Math.max(0, stops.size() - 1)];
+        for (int leg = 0; leg < legLengths.length; leg++) {
+            legLengths[leg] = stops.get(leg + 1).getDistance() - stops.get(leg).getDistance();
+        }
+        return new CompactRoute(stops, legLengths, distance, located ? Polyline.encode(latitudes, longitudes) : null);
+    }
+}
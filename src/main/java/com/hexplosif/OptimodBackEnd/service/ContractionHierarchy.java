@@ -0,0 +1,272 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Contraction Hierarchy of a {@link RoadGraph}: a rank for every node and the original edges plus the shortcuts
+ * added while contracting the nodes by increasing rank.
+ * <p>
+ * Every edge goes either upward (to a node of higher rank) or downward. A query runs a forward search along the
+ * upward edges leaving the source and a backward search along the downward edges reaching the target, both only
+ * climbing the hierarchy, so that they settle a few hundred nodes even on large maps. A shortcut remembers the two
+ * edges it replaces, to unpack it into original edges.
+ * <p>
+ * The hierarchy is tagged with the fingerprint of the graph it was built from, and can be saved to and read from a
+ * file so that the preprocessing is only done once per map.
+ */
+public final class ContractionHierarchy {
+
+    private static final int FILE_MAGIC = 0x4F434831;
+
+    private final long fingerprint;
+
+    private final int[] ranks;
+
+    private final int[] edgeFrom;
+
+    private final int[] edgeTo;
+
+    private final double[] edgeWeights;
+
+    /**
+     * The two edges replaced by each shortcut, -1 for original edges
+     */
+    private final int[] edgeChild1;
+
+    private final int[] edgeChild2;
+
+    /**
+     * Upward edges grouped by their lower (start) node
+     */
+    private final int[] upwardOffsets;
+
+    private final int[] upwardEdges;
+
+    /**
+     * Downward edges grouped by their lower (end) node
+     */
+    private final int[] downwardOffsets;
+
+    private final int[] downwardEdges;
+
+    ContractionHierarchy(long fingerprint, int[] ranks, int[] edgeFrom, int[] edgeTo, double[] edgeWeights,
+                         int[] edgeChild1, int[] edgeChild2) {
+        this.fingerprint = fingerprint;
+        this.ranks = ranks;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeights = edgeWeights;
+        this.edgeChild1 = edgeChild1;
+        this.edgeChild2 = edgeChild2;
+
+        int nodeCount = ranks.length;
+        upwardOffsets = new int[nodeCount + 1];
+        downwardOffsets = new int[nodeCount + 1];
+        for (int edge = 0; edge < edgeFrom.length; edge++) {
+            if (isUpward(edge)) {
+                upwardOffsets[edgeFrom[edge] + 1]++;
+            } else {
+                downwardOffsets[edgeTo[edge] + 1]++;
+            }
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            upwardOffsets[node + 1] += upwardOffsets[node];
+            downwardOffsets[node + 1] += downwardOffsets[node];
+        }
+        upwardEdges = new int[upwardOffsets[nodeCount]];
+        downwardEdges = new int[downwardOffsets[nodeCount]];
+        int[] nextUpward = new int[nodeCount];
+        int[] nextDownward = new int[nodeCount];
+        for (int edge = 0; edge < edgeFrom.length; edge++) {
+            if (isUpward(edge)) {
+                int node = edgeFrom[edge];
+                upwardEdges[upwardOffsets[node] + nextUpward[node]++] = edge;
+            } else {
+                int node = edgeTo[edge];
+                downwardEdges[downwardOffsets[node] + nextDownward[node]++] = edge;
+            }
+        }
+    }
+
+    /**
+     * Preprocess a graph
+     *
+     * @param graph The graph
+     * @return The hierarchy of the graph
+     */
+    public static ContractionHierarchy build(RoadGraph graph) {
+        return new ContractionHierarchyBuilder(graph).build(graph.fingerprint());
+    }
+
+    private boolean isUpward(int edge) {
+        return ranks[edgeTo[edge]] > ranks[edgeFrom[edge]];
+    }
+
+    /**
+     * @param graph The graph
+     * @return true if the hierarchy was built from this graph
+     */
+    public boolean matches(RoadGraph graph) {
+        return ranks.length == graph.nodeCount() && fingerprint == graph.fingerprint();
+    }
+
+    /**
+     * @return The fingerprint of the graph the hierarchy was built from
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return The number of nodes of the hierarchy
+     */
+    public int nodeCount() {
+        return ranks.length;
+    }
+
+    /**
+     * @return The number of edges of the hierarchy, original edges and shortcuts
+     */
+    public int edgeCount() {
+        return edgeFrom.length;
+    }
+
+    /**
+     * @return The number of shortcuts of the hierarchy
+     */
+    public int shortcutCount() {
+        int count = 0;
+        for (int child : edgeChild1) {
+            if (child >= 0) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The position of the node in the contraction order
+     */
+    public int rank(int node) {
+        return ranks[node];
+    }
+
+    int firstUpwardEdge(int node) {
+        return upwardOffsets[node];
+    }
+
+    int lastUpwardEdge(int node) {
+        return upwardOffsets[node + 1];
+    }
+
+    int firstDownwardEdge(int node) {
+        return downwardOffsets[node];
+    }
+
+    int lastDownwardEdge(int node) {
+        return downwardOffsets[node + 1];
+    }
+
+    /**
+     * @param position The position in the upward or downward edge lists
+     * @return The edge id
+     */
+    int upwardEdge(int position) {
+        return upwardEdges[position];
+    }
+
+    int downwardEdge(int position) {
+        return downwardEdges[position];
+    }
+
+    int edgeFrom(int edge) {
+        return edgeFrom[edge];
+    }
+
+    int edgeTo(int edge) {
+        return edgeTo[edge];
+    }
+
+    double edgeWeight(int edge) {
+        return edgeWeights[edge];
+    }
+
+    int edgeChild1(int edge) {
+        return edgeChild1[edge];
+    }
+
+    int edgeChild2(int edge) {
+        return edgeChild2[edge];
+    }
+
+    /**
+     * Save the hierarchy, through a temporary file so that a concurrent reader never sees a partial file
+     *
+     * @param file The file
+     * @throws IOException If the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), "ch", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeLong(fingerprint);
+            out.writeInt(ranks.length);
+            out.writeInt(edgeFrom.length);
+            for (int rank : ranks) {
+                out.writeInt(rank);
+            }
+            for (int edge = 0; edge < edgeFrom.length; edge++) {
+                out.writeInt(edgeFrom[edge]);
+                out.writeInt(edgeTo[edge]);
+                out.writeDouble(edgeWeights[edge]);
+                out.writeInt(edgeChild1[edge]);
+                out.writeInt(edgeChild2[edge]);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read a hierarchy saved with {@link #writeTo(Path)}
+     *
+     * @param file The file
+     * @return The hierarchy
+     * @throws IOException If the file cannot be read or is not a hierarchy file
+     */
+    public static ContractionHierarchy readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a contraction hierarchy file: " + file);
+            }
+            long fingerprint = in.readLong();
+            int nodeCount = in.readInt();
+            int edgeCount = in.readInt();
+            int[] ranks = new int[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                ranks[node] = in.readInt();
+            }
+            int[] edgeFrom = new int[edgeCount];
+            int[] edgeTo = new int[edgeCount];
+            double[] edgeWeights = new double[edgeCount];
+            int[] edgeChild1 = new int[edgeCount];
+            int[] edgeChild2 = new int[edgeCount];
+            for (int edge = 0; edge < edgeCount; edge++) {
+                edgeFrom[edge] = in.readInt();
+                edgeTo[edge] = in.readInt();
+                edgeWeights[edge] = in.readDouble();
+                edgeChild1[edge] = in.readInt();
+                edgeChild2[edge] = in.readInt();
+            }
+            return new ContractionHierarchy(fingerprint, ranks, edgeFrom, edgeTo, edgeWeights, edgeChild1, edgeChild2);
+        }
+    }
+}
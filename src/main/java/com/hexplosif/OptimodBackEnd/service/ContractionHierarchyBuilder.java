@@ -0,0 +1,279 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.Arrays;
+
+/**
+ * Contraction Hierarchies preprocessing of a {@link RoadGraph}.
+ * <p>
+ * Nodes are contracted one by one, by increasing priority (edge difference plus number of contracted neighbors).
+ * The priorities of the neighbors of a contracted node are updated at once, the others lazily when they are polled. Contracting a node adds a shortcut between each pair of its remaining
+ * neighbors, unless a witness search finds a path at least as short that avoids it. The witness searches are
+ * bounded, which can only add unnecessary shortcuts, never wrong ones.
+ */
+final class ContractionHierarchyBuilder {
+
+    /**
+     * Maximum number of nodes settled by a witness search when contracting a node
+     */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    /**
+     * Maximum number of nodes settled by a witness search when estimating the priority of a node
+     */
+    private static final int PRIORITY_SETTLE_LIMIT = 50;
+
+    private final int nodeCount;
+
+    // All the edges, original ones and shortcuts
+    private int edgeCount;
+
+    private int[] edgeFrom = new int[16];
+
+    private int[] edgeTo = new int[16];
+
+    private double[] edgeWeight = new double[16];
+
+    private int[] edgeChild1 = new int[16];
+
+    private int[] edgeChild2 = new int[16];
+
+    // Outgoing and incoming edge ids of every node
+    private final int[][] out;
+
+    private final int[] outSize;
+
+    private final int[][] in;
+
+    private final int[] inSize;
+
+    private final boolean[] contracted;
+
+    private final int[] contractedNeighbors;
+
+    private final int[] lastContractedNeighbor;
+
+    private final SearchSpace witness;
+
+    ContractionHierarchyBuilder(RoadGraph graph) {
+        nodeCount = graph.nodeCount();
+        out = new int[nodeCount][];
+        in = new int[nodeCount][];
+        outSize = new int[nodeCount];
+        inSize = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            out[node] = new int[4];
+            in[node] = new int[4];
+        }
+        contracted = new boolean[nodeCount];
+        contractedNeighbors = new int[nodeCount];
+        lastContractedNeighbor = new int[nodeCount];
+        Arrays.fill(lastContractedNeighbor, -1);
+        witness = new SearchSpace(nodeCount);
+
+        for (int node = 0; node < nodeCount; node++) {
+            for (int edge = graph.firstEdge(node); edge < graph.lastEdge(node); edge++) {
+                if (graph.edgeTarget(edge) != node) {
+                    addEdge(node, graph.edgeTarget(edge), graph.edgeWeight(edge), -1, -1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Contract all the nodes
+     *
+     * @param fingerprint The fingerprint of the graph
+     * @return The hierarchy
+     */
+    ContractionHierarchy build(long fingerprint) {
+        int[] rank = new int[nodeCount];
+        IndexedHeap queue = new IndexedHeap(nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            queue.push(node, priority(node));
+        }
+
+        int nextRank = 0;
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+
+            // Lazy update: contract the node only if it is still the cheapest one
+            double priority = priority(node);
+            if (!queue.isEmpty() && priority > queue.peekKey()) {
+                queue.push(node, priority);
+                continue;
+            }
+
+            contract(node, true);
+            contracted[node] = true;
+            rank[node] = nextRank++;
+            disconnect(node);
+
+            // The neighbors lost an edge and may have gained shortcuts: update their priority
+            for (int i = 0; i < outSize[node]; i++) {
+                updateNeighbor(queue, node, edgeTo[out[node][i]]);
+            }
+            for (int i = 0; i < inSize[node]; i++) {
+                updateNeighbor(queue, node, edgeFrom[in[node][i]]);
+            }
+        }
+
+        return new ContractionHierarchy(fingerprint, rank, Arrays.copyOf(edgeFrom, edgeCount),
+                Arrays.copyOf(edgeTo, edgeCount), Arrays.copyOf(edgeWeight, edgeCount),
+                Arrays.copyOf(edgeChild1, edgeCount), Arrays.copyOf(edgeChild2, edgeCount));
+    }
+
+    /**
+     * Remove the edges of a contracted node from the lists of its neighbors, which only hold the remaining graph
+     */
+    private void disconnect(int node) {
+        for (int i = 0; i < outSize[node]; i++) {
+            int edge = out[node][i];
+            inSize[edgeTo[edge]] = remove(in[edgeTo[edge]], inSize[edgeTo[edge]], edge);
+        }
+        for (int i = 0; i < inSize[node]; i++) {
+            int edge = in[node][i];
+            outSize[edgeFrom[edge]] = remove(out[edgeFrom[edge]], outSize[edgeFrom[edge]], edge);
+        }
+    }
+
+    private static int remove(int[] edges, int size, int edge) {
+        for (int i = 0; i < size; i++) {
+            if (edges[i] == edge) {
+                edges[i] = edges[size - 1];
+                return size - 1;
+            }
+        }
+        return size;
+    }
+
+    private void updateNeighbor(IndexedHeap queue, int node, int neighbor) {
+        if (!contracted[neighbor] && lastContractedNeighbor[neighbor] != node) {
+            lastContractedNeighbor[neighbor] = node;
+            contractedNeighbors[neighbor]++;
+            queue.update(neighbor, priority(neighbor));
+        }
+    }
+
+    private double priority(int node) {
+        int degree = 0;
+        for (int i = 0; i < outSize[node]; i++) {
+            if (!contracted[edgeTo[out[node][i]]]) degree++;
+        }
+        for (int i = 0; i < inSize[node]; i++) {
+            if (!contracted[edgeFrom[in[node][i]]]) degree++;
+        }
+        return contract(node, false) - degree + contractedNeighbors[node];
+    }
+
+    /**
+     * Compute the shortcuts needed to contract a node
+     *
+     * @param node The node
+     * @param add  true to add the shortcuts, false to only count them
+     * @return The number of shortcuts
+     */
+    private int contract(int node, boolean add) {
+        int shortcuts = 0;
+        for (int i = 0; i < inSize[node]; i++) {
+            int inEdge = in[node][i];
+            int source = edgeFrom[inEdge];
+            if (contracted[source]) continue;
+
+            double maxDistance = 0;
+            for (int j = 0; j < outSize[node]; j++) {
+                int outEdge = out[node][j];
+                if (!contracted[edgeTo[outEdge]] && edgeTo[outEdge] != source) {
+                    maxDistance = Math.max(maxDistance, edgeWeight[inEdge] + edgeWeight[outEdge]);
+                }
+            }
+            if (maxDistance == 0) continue;
+
+            witnessSearch(source, node, maxDistance, add ? WITNESS_SETTLE_LIMIT : PRIORITY_SETTLE_LIMIT);
+
+            for (int j = 0; j < outSize[node]; j++) {
+                int outEdge = out[node][j];
+                int target = edgeTo[outEdge];
+                if (contracted[target] || target == source) continue;
+
+                double distance = edgeWeight[inEdge] + edgeWeight[outEdge];
+                if (witness.distance(target) > distance) {
+                    shortcuts++;
+                    if (add) {
+                        addEdge(source, target, distance, inEdge, outEdge);
+                    }
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Bounded Dijkstra from a source on the remaining graph, avoiding the node being contracted
+     */
+    private void witnessSearch(int source, int avoided, double maxDistance, int settleLimit) {
+        witness.reset();
+        witness.update(source, 0.0, -1);
+        witness.heap.push(source, 0.0);
+
+        int settled = 0;
+        while (!witness.heap.isEmpty() && settled < settleLimit) {
+            if (witness.heap.peekKey() > maxDistance) break;
+            int current = witness.heap.poll();
+            settled++;
+
+            double currentDistance = witness.distance(current);
+            for (int i = 0; i < outSize[current]; i++) {
+                int edge = out[current][i];
+                int neighbor = edgeTo[edge];
+                if (neighbor == avoided || contracted[neighbor]) continue;
+
+                double newDist = currentDistance + edgeWeight[edge];
+                if (newDist < witness.distance(neighbor)) {
+                    witness.update(neighbor, newDist, current);
+                    witness.heap.push(neighbor, newDist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add an edge between two uncontracted nodes, or shorten the existing one
+     */
+    private void addEdge(int from, int to, double weight, int child1, int child2) {
+        for (int i = 0; i < outSize[from]; i++) {
+            int edge = out[from][i];
+            if (edgeTo[edge] == to) {
+                if (weight < edgeWeight[edge]) {
+                    edgeWeight[edge] = weight;
+                    edgeChild1[edge] = child1;
+                    edgeChild2[edge] = child2;
+                }
+                return;
+            }
+        }
+
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+            edgeChild1 = Arrays.copyOf(edgeChild1, capacity);
+            edgeChild2 = Arrays.copyOf(edgeChild2, capacity);
+        }
+        int edge = edgeCount++;
+        edgeFrom[edge] = from;
+        edgeTo[edge] = to;
+        edgeWeight[edge] = weight;
+        edgeChild1[edge] = child1;
+        edgeChild2[edge] = child2;
+
+        if (outSize[from] == out[from].length) {
+            out[from] = Arrays.copyOf(out[from], outSize[from] * 2);
+        }
+        out[from][outSize[from]++] = edge;
+        if (inSize[to] == in[to].length) {
+            in[to] = Arrays.copyOf(in[to], inSize[to] * 2);
+        }
+        in[to][inSize[to]++] = edge;
+    }
+}
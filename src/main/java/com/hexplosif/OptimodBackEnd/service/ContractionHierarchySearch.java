@@ -0,0 +1,186 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.Arrays;
+
+/**
+ * Point-to-point search on a {@link ContractionHierarchy}.
+ * <p>
+ * A forward search from the source follows the upward edges and a backward search from the target follows the
+ * downward edges in reverse. Each side stops once its smallest key is not lower than the best meeting point found.
+ * A settled node that a higher node of the same side reaches with a shorter distance is stalled: it is not on a
+ * shortest path, so its edges are not relaxed.
+ * The path is then unpacked by recursively replacing shortcuts with the two edges they stand for.
+ */
+public final class ContractionHierarchySearch implements PointToPointSearch {
+
+    private final ContractionHierarchy hierarchy;
+
+    /**
+     * Predecessors of both searches are the ids of the edges that reached the nodes
+     */
+    private final SearchSpace forward;
+
+    private final SearchSpace backward;
+
+    private int source;
+
+    private int meetingNode = -1;
+
+    private double bestDistance;
+
+    private int settledCount;
+
+    private int[] edgeStack = new int[64];
+
+    /**
+     * @param hierarchy The hierarchy of the graph
+     */
+    public ContractionHierarchySearch(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        this.forward = new SearchSpace(hierarchy.nodeCount());
+        this.backward = new SearchSpace(hierarchy.nodeCount());
+    }
+
+    @Override
+    public double search(int source, int target) {
+        forward.reset();
+        backward.reset();
+        settledCount = 0;
+        this.source = source;
+        bestDistance = Double.MAX_VALUE;
+        meetingNode = -1;
+
+        forward.update(source, 0.0, -1);
+        forward.heap.push(source, 0.0);
+        backward.update(target, 0.0, -1);
+        backward.heap.push(target, 0.0);
+        if (source == target) {
+            bestDistance = 0.0;
+            meetingNode = source;
+            return bestDistance;
+        }
+
+        while (true) {
+            boolean forwardActive = !forward.heap.isEmpty() && forward.heap.peekKey() < bestDistance;
+            boolean backwardActive = !backward.heap.isEmpty() && backward.heap.peekKey() < bestDistance;
+            if (!forwardActive && !backwardActive) {
+                break;
+            }
+
+            if (forwardActive && (!backwardActive || forward.heap.peekKey() <= backward.heap.peekKey())) {
+                int current = forward.heap.poll();
+                settledCount++;
+                double currentDistance = forward.distance(current);
+                if (isStalled(forward, current, currentDistance, hierarchy.firstDownwardEdge(current),
+                        hierarchy.lastDownwardEdge(current), true)) {
+                    continue;
+                }
+                for (int i = hierarchy.firstUpwardEdge(current); i < hierarchy.lastUpwardEdge(current); i++) {
+                    int edge = hierarchy.upwardEdge(i);
+                    relax(forward, backward, edge, hierarchy.edgeTo(edge), currentDistance + hierarchy.edgeWeight(edge));
+                }
+            } else {
+                int current = backward.heap.poll();
+                settledCount++;
+                double currentDistance = backward.distance(current);
+                if (isStalled(backward, current, currentDistance, hierarchy.firstUpwardEdge(current),
+                        hierarchy.lastUpwardEdge(current), false)) {
+                    continue;
+                }
+                for (int i = hierarchy.firstDownwardEdge(current); i < hierarchy.lastDownwardEdge(current); i++) {
+                    int edge = hierarchy.downwardEdge(i);
+                    relax(backward, forward, edge, hierarchy.edgeFrom(edge), currentDistance + hierarchy.edgeWeight(edge));
+                }
+            }
+        }
+
+        return bestDistance;
+    }
+
+    /**
+     * Stall-on-demand: look for a higher node of the same side with a shorter path to the node
+     *
+     * @param first    The first of the edges linking the node to higher nodes against the direction of the side
+     * @param last     The end (exclusive) of these edges
+     * @param downward true if they are downward edges, false if they are upward edges
+     */
+    private boolean isStalled(SearchSpace side, int node, double distance, int first, int last, boolean downward) {
+        for (int i = first; i < last; i++) {
+            int edge = downward ? hierarchy.downwardEdge(i) : hierarchy.upwardEdge(i);
+            int higher = downward ? hierarchy.edgeFrom(edge) : hierarchy.edgeTo(edge);
+            if (side.distance(higher) + hierarchy.edgeWeight(edge) < distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void relax(SearchSpace side, SearchSpace otherSide, int edge, int neighbor, double newDist) {
+        if (newDist < side.distance(neighbor)) {
+            side.update(neighbor, newDist, edge);
+            side.heap.push(neighbor, newDist);
+
+            double otherDistance = otherSide.distance(neighbor);
+            if (otherDistance != Double.MAX_VALUE && newDist + otherDistance < bestDistance) {
+                bestDistance = newDist + otherDistance;
+                meetingNode = neighbor;
+            }
+        }
+    }
+
+    @Override
+    public int[] path() {
+        if (meetingNode == -1) {
+            return new int[0];
+        }
+
+        // Hierarchy edges from the source to the meeting node, then from the meeting node to the target
+        int edgeCount = 0;
+        for (int at = meetingNode; forward.previous(at) != -1; at = hierarchy.edgeFrom(forward.previous(at))) {
+            edgeCount++;
+        }
+        int forwardCount = edgeCount;
+        for (int at = meetingNode; backward.previous(at) != -1; at = hierarchy.edgeTo(backward.previous(at))) {
+            edgeCount++;
+        }
+        int[] edges = new int[edgeCount];
+        int i = forwardCount;
+        for (int at = meetingNode; forward.previous(at) != -1; at = hierarchy.edgeFrom(forward.previous(at))) {
+            edges[--i] = forward.previous(at);
+        }
+        i = forwardCount;
+        for (int at = meetingNode; backward.previous(at) != -1; at = hierarchy.edgeTo(backward.previous(at))) {
+            edges[i++] = backward.previous(at);
+        }
+
+        int[] path = new int[16];
+        int length = 0;
+        path[length++] = source;
+        for (int edge : edges) {
+            // Depth-first unpacking of the shortcuts, the first child on top of the stack
+            int top = 0;
+            edgeStack[top++] = edge;
+            while (top > 0) {
+                int current = edgeStack[--top];
+                if (hierarchy.edgeChild1(current) < 0) {
+                    if (length == path.length) {
+                        path = Arrays.copyOf(path, length * 2);
+                    }
+                    path[length++] = hierarchy.edgeTo(current);
+                } else {
+                    if (top + 2 > edgeStack.length) {
+                        edgeStack = Arrays.copyOf(edgeStack, edgeStack.length * 2);
+                    }
+                    edgeStack[top++] = hierarchy.edgeChild2(current);
+                    edgeStack[top++] = hierarchy.edgeChild1(current);
+                }
+            }
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    @Override
+    public int settledCount() {
+        return settledCount;
+    }
+}
@@ -0,0 +1,14 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import lombok.Data;
+
+/**
+ * Point given by its coordinates, to be matched with the nearest node of the map
+ */
+@Data
+public class Coordinates {
+
+    private Double latitude;
+
+    private Double longitude;
+}
@@ -0,0 +1,503 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Assigns the delivery requests without a courier to the couriers.
+ * <p>
+ * The requests are inserted one at a time in the route of a courier, by regret: the next request is the one that
+ * would cost the most if it did not get its best courier, so that the requests with a single good courier are placed
+ * before the others take it. The cost of a request for a courier is the length its cheapest feasible insertion adds
+ * to the route of the courier, or the length of the route after it when minimizing the longest route. The requests
+ * already assigned stay with their courier, and a courier only takes the requests of the warehouse of its first one.
+ * <p>
+ * Since a courier only serves one warehouse, the stops are grouped by warehouse, and only the distances between the
+ * stops of each warehouse are computed, once, in parallel, and shared by all the evaluations. A warehouse with more
+ * than {@code optimod.dispatch.max-stops} stops is refused, its distances taking 8 bytes per pair of stops. After each
+ * insertion, only the costs for the changed courier are evaluated again, in parallel over the requests. The routes
+ * built here only estimate the lengths of the final ones, which are planned by {@link RoutePlanner}.
+ */
+@Service
+public class CourierDispatcher {
+
+    /**
+     * Largest number of stops whose distances fit in an array
+     */
+    static final int MAX_STOPS = 46_340;
+
+    @Autowired
+    private RoutePlanner routePlanner;
+
+    /**
+     * Largest number of stops of a warehouse (the warehouse, the pickups and the deliveries of its requests)
+     */
+    @Value("${optimod.dispatch.max-stops:4000}")
+    private int maxStops;
+
+    /**
+     * Assign the requests without a courier
+     *
+     * @param snapshot         The snapshot of the map
+     * @param courierIds       The ids of the couriers
+     * @param deliveryRequests The delivery requests, with or without a courier
+     * @param objective        What the assignment minimizes
+     * @return The new assignments
+     * @throws IllegalStateException If a warehouse has more than {@code optimod.dispatch.max-stops} stops
+     */
+    public Result dispatch(GraphSnapshot snapshot, List<Long> courierIds, List<DeliveryRequest> deliveryRequests,
+                           DispatchObjective objective) throws IllegalStateException {
+        RoadGraph graph = snapshot.getGraph();
+
+        // The stops of each warehouse, numbered from 0 in each of them
+        Map<Long, Integer> warehouseIndices = new LinkedHashMap<>();
+        List<Map<Long, Integer>> warehouseStops = new ArrayList<>();
+        int[] requestWarehouses = new int[deliveryRequests.size()];
+        int[] warehouses = new int[deliveryRequests.size()];
+        int[] pickups = new int[deliveryRequests.size()];
+        int[] deliveries = new int[deliveryRequests.size()];
+        int[] couriers = new int[deliveryRequests.size()];
+        for (int request = 0; request < deliveryRequests.size(); request++) {
+            DeliveryRequest deliveryRequest = deliveryRequests.get(request);
+            int warehouse = warehouseIndices.computeIfAbsent(deliveryRequest.getIdWarehouse(), id -> {
+                warehouseStops.add(new LinkedHashMap<>());
+                return warehouseStops.size() - 1;
+            });
+            Map<Long, Integer> stopIndices = warehouseStops.get(warehouse);
+            requestWarehouses[request] = warehouse;
+            warehouses[request] = stopIndices.computeIfAbsent(deliveryRequest.getIdWarehouse(), id -> stopIndices.size());
+            pickups[request] = stopIndices.computeIfAbsent(deliveryRequest.getIdPickup(), id -> stopIndices.size());
+            deliveries[request] = stopIndices.computeIfAbsent(deliveryRequest.getIdDelivery(), id -> stopIndices.size());
+            couriers[request] = deliveryRequest.getIdCourier() != null ? courierIds.indexOf(deliveryRequest.getIdCourier()) : -1;
+        }
+
+        // The stops of all the warehouses are then numbered one warehouse after the other
+        long[][] stopIds = new long[warehouseStops.size()][];
+        int[] offsets = new int[warehouseStops.size() + 1];
+        for (Map.Entry<Long, Integer> entry : warehouseIndices.entrySet()) {
+            int warehouse = entry.getValue();
+            stopIds[warehouse] = warehouseStops.get(warehouse).keySet().stream().mapToLong(Long::longValue).toArray();
+            if (stopIds[warehouse].length > Math.min(maxStops, MAX_STOPS)) {
+                throw new IllegalStateException("Too many stops for the warehouse " + entry.getKey() + ": "
+                        + stopIds[warehouse].length + ", at most " + Math.min(maxStops, MAX_STOPS) + " can be dispatched.");
+            }
+            offsets[warehouse + 1] = offsets[warehouse] + stopIds[warehouse].length;
+        }
+        for (int request = 0; request < deliveryRequests.size(); request++) {
+            int offset = offsets[requestWarehouses[request]];
+            warehouses[request] += offset;
+            pickups[request] += offset;
+            deliveries[request] += offset;
+        }
+
+        ForkJoinPool pool = routePlanner.getPool();
+        Distances distances = pool.submit(() -> new Distances(graph, stopIds, offsets, pool.getParallelism())).join();
+        Dispatch dispatch = new Dispatch(distances, warehouses, pickups, deliveries, couriers, courierIds.size(),
+                objective);
+        pool.submit(dispatch::run).join();
+
+        Map<Long, List<Long>> assignments = new LinkedHashMap<>();
+        List<Long> unassigned = new ArrayList<>();
+        for (int request = 0; request < deliveryRequests.size(); request++) {
+            if (deliveryRequests.get(request).getIdCourier() != null && couriers[request] >= 0) {
+                continue;
+            }
+            if (dispatch.couriers[request] >= 0) {
+                assignments.computeIfAbsent(courierIds.get(dispatch.couriers[request]), id -> new ArrayList<>())
+                        .add(deliveryRequests.get(request).getId());
+            } else {
+                unassigned.add(deliveryRequests.get(request).getId());
+            }
+        }
+        Map<Long, Double> routeLengths = new LinkedHashMap<>();
+        for (int courier = 0; courier < courierIds.size(); courier++) {
+            routeLengths.put(courierIds.get(courier), dispatch.routeLengths[courier]);
+        }
+        return new Result(assignments, unassigned, routeLengths,
+                Arrays.stream(dispatch.routeLengths).sum(), Arrays.stream(dispatch.routeLengths).max().orElse(0.0));
+    }
+
+    /**
+     * Distances between the stops of each warehouse, from one search per stop, Double.MAX_VALUE between unconnected
+     * stops and between the stops of different warehouses
+     */
+    static final class Distances {
+
+        /**
+         * The distances between the stops of each warehouse, by start stop then end stop
+         */
+        private final double[][] blocks;
+
+        /**
+         * The number of stops of each warehouse
+         */
+        private final int[] sizes;
+
+        /**
+         * The warehouse of each stop
+         */
+        private final int[] stopWarehouses;
+
+        /**
+         * The number of each stop among the stops of its warehouse
+         */
+        private final int[] localStops;
+
+        /**
+         * @param stopIds     The ids of the nodes of the stops of each warehouse
+         * @param offsets     The number of the first stop of each warehouse, and the number of stops last
+         * @param parallelism The number of threads searching
+         */
+        Distances(RoadGraph graph, long[][] stopIds, int[] offsets, int parallelism) {
+            int warehouseCount = stopIds.length;
+            int stopCount = offsets[warehouseCount];
+            blocks = new double[warehouseCount][];
+            sizes = new int[warehouseCount];
+            stopWarehouses = new int[stopCount];
+            localStops = new int[stopCount];
+            int[][] nodes = new int[warehouseCount][];
+            int[][] targets = new int[warehouseCount][];
+            for (int warehouse = 0; warehouse < warehouseCount; warehouse++) {
+                int size = stopIds[warehouse].length;
+                sizes[warehouse] = size;
+                nodes[warehouse] = Arrays.stream(stopIds[warehouse]).mapToInt(graph::indexOf).toArray();
+                targets[warehouse] = Arrays.stream(nodes[warehouse]).filter(node -> node >= 0).toArray();
+                blocks[warehouse] = new double[size * size];
+                Arrays.fill(blocks[warehouse], Double.MAX_VALUE);
+                for (int stop = 0; stop < size; stop++) {
+                    stopWarehouses[offsets[warehouse] + stop] = warehouse;
+                    localStops[offsets[warehouse] + stop] = stop;
+                }
+            }
+
+            // One chunk of sources per thread, reusing the arrays of its searches
+            int chunks = Math.max(1, Math.min(parallelism, stopCount));
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                double[] treeDistances = new double[graph.nodeCount()];
+                int[] previousNodes = new int[graph.nodeCount()];
+                IndexedHeap heap = new IndexedHeap(graph.nodeCount());
+                for (int stop = chunk; stop < stopCount; stop += chunks) {
+                    int warehouse = stopWarehouses[stop];
+                    int from = localStops[stop];
+                    int size = sizes[warehouse];
+                    double[] block = blocks[warehouse];
+                    block[from * size + from] = 0.0;
+                    if (nodes[warehouse][from] < 0) continue;
+                    Dijkstra.oneToMany(graph, nodes[warehouse][from], targets[warehouse], treeDistances,
+                            previousNodes, heap);
+                    for (int to = 0; to < size; to++) {
+                        if (nodes[warehouse][to] >= 0) {
+                            block[from * size + to] = treeDistances[nodes[warehouse][to]];
+                        }
+                    }
+                }
+            });
+        }
+
+        double distance(int from, int to) {
+            int warehouse = stopWarehouses[from];
+            if (stopWarehouses[to] != warehouse) {
+                return Double.MAX_VALUE;
+            }
+            return blocks[warehouse][localStops[from] * sizes[warehouse] + localStops[to]];
+        }
+    }
+
+    /**
+     * State of the insertion of the requests in the routes, on the indices of the stops in the distance matrix
+     */
+    static final class Dispatch {
+
+        private final Distances distances;
+
+        private final int[] warehouses;
+
+        private final int[] pickups;
+
+        private final int[] deliveries;
+
+        /**
+         * The courier of each request, -1 while it has none
+         */
+        final int[] couriers;
+
+        private final DispatchObjective objective;
+
+        private final int[][] routes;
+
+        private final int[] routeSizes;
+
+        /**
+         * Stop of the warehouse of each courier, -1 until it gets a request
+         */
+        private final int[] courierWarehouses;
+
+        final double[] routeLengths;
+
+        /**
+         * Length added to the route of each courier by each request, by request then courier
+         */
+        private final double[] insertionCosts;
+
+        /**
+         * Legs the pickup and the delivery of each request are inserted in by its cheapest insertion in the route of
+         * each courier, by {@link #legKey(int, int)}
+         */
+        private final long[] insertionLegs;
+
+        /**
+         * Legs of the route changed by the last insertion: the replaced legs, then the new legs
+         */
+        private final long[] replacedLegs = new long[2];
+
+        private int replacedLegCount;
+
+        private final int[] newLegs = new int[8];
+
+        private int newLegCount;
+
+        Dispatch(Distances distances, int[] warehouses, int[] pickups, int[] deliveries, int[] couriers,
+                 int courierCount, DispatchObjective objective) {
+            this.distances = distances;
+            this.warehouses = warehouses;
+            this.pickups = pickups;
+            this.deliveries = deliveries;
+            this.couriers = couriers.clone();
+            this.objective = objective;
+            this.routes = new int[courierCount][8];
+            this.routeSizes = new int[courierCount];
+            this.courierWarehouses = new int[courierCount];
+            this.routeLengths = new double[courierCount];
+            this.insertionCosts = new double[warehouses.length * courierCount];
+            this.insertionLegs = new long[2 * warehouses.length * courierCount];
+            Arrays.fill(courierWarehouses, -1);
+        }
+
+        void run() {
+            int courierCount = routes.length;
+            // The requests already assigned are kept
+            for (int request = 0; request < couriers.length; request++) {
+                if (couriers[request] >= 0 && isFeasible(request, couriers[request])) {
+                    insert(request, couriers[request]);
+                }
+            }
+            List<Integer> remaining = new ArrayList<>();
+            for (int request = 0; request < couriers.length; request++) {
+                if (couriers[request] < 0) {
+                    remaining.add(request);
+                }
+            }
+            if (courierCount == 0) {
+                return;
+            }
+            remaining.parallelStream().forEach(request -> {
+                for (int courier = 0; courier < courierCount; courier++) {
+                    evaluate(request, courier);
+                }
+            });
+
+            while (!remaining.isEmpty()) {
+                int chosen = -1;
+                int chosenCourier = -1;
+                double chosenRegret = Double.NEGATIVE_INFINITY;
+                double chosenScore = Double.POSITIVE_INFINITY;
+                for (int position = 0; position < remaining.size(); position++) {
+                    int request = remaining.get(position);
+                    int bestCourier = -1;
+                    double best = Double.POSITIVE_INFINITY;
+                    double second = Double.POSITIVE_INFINITY;
+                    for (int courier = 0; courier < courierCount; courier++) {
+                        double score = score(request, courier);
+                        if (score < best) {
+                            second = best;
+                            best = score;
+                            bestCourier = courier;
+                        } else if (score < second) {
+                            second = score;
+                        }
+                    }
+                    if (bestCourier < 0) {
+                        continue; // No courier can reach the request
+                    }
+                    double regret = second - best;
+                    if (regret > chosenRegret || (regret == chosenRegret && best < chosenScore)) {
+                        chosen = position;
+                        chosenCourier = bestCourier;
+                        chosenRegret = regret;
+                        chosenScore = best;
+                    }
+                }
+                if (chosen < 0) {
+                    return;
+                }
+
+                int request = remaining.remove(chosen);
+                boolean first = routeSizes[chosenCourier] == 0;
+                insert(request, chosenCourier);
+                int courier = chosenCourier;
+                remaining.parallelStream().forEach(other -> {
+                    if (first || mayHaveChanged(other, courier)) {
+                        evaluate(other, courier);
+                    }
+                });
+            }
+        }
+
+        private double score(int request, int courier) {
+            double cost = insertionCosts[request * routes.length + courier];
+            return objective == DispatchObjective.MAX_LENGTH ? routeLengths[courier] + cost : cost;
+        }
+
+        private double distance(int from, int to) {
+            return distances.distance(from, to);
+        }
+
+        private static long legKey(int from, int to) {
+            return ((long) from << 32) | to;
+        }
+
+        private boolean isFeasible(int request, int courier) {
+            int warehouse = warehouses[request];
+            return (courierWarehouses[courier] < 0 || courierWarehouses[courier] == warehouse)
+                    && distance(warehouse, pickups[request]) != Double.MAX_VALUE
+                    && distance(pickups[request], deliveries[request]) != Double.MAX_VALUE
+                    && distance(deliveries[request], warehouse) != Double.MAX_VALUE;
+        }
+
+        /**
+         * Compute the cheapest insertion of a request in the route of a courier, infinite if not possible
+         */
+        private void evaluate(int request, int courier) {
+            int cell = request * routes.length + courier;
+            if (!isFeasible(request, courier)) {
+                insertionCosts[cell] = Double.POSITIVE_INFINITY;
+            } else if (routeSizes[courier] == 0) {
+                int warehouse = warehouses[request];
+                insertionCosts[cell] = distance(warehouse, pickups[request])
+                        + distance(pickups[request], deliveries[request]) + distance(deliveries[request], warehouse);
+                insertionLegs[2 * cell] = legKey(warehouse, warehouse);
+                insertionLegs[2 * cell + 1] = legKey(warehouse, warehouse);
+            } else {
+                int[] route = routes[courier];
+                PairInsertion insertion = PairInsertion.cheapest(this::distance, route, routeSizes[courier],
+                        pickups[request], deliveries[request]);
+                insertionCosts[cell] = insertion.getCost();
+                insertionLegs[2 * cell] = legKey(route[insertion.getPickupAfter()], route[insertion.getPickupAfter() + 1]);
+                insertionLegs[2 * cell + 1] = legKey(route[insertion.getDeliveryAfter()], route[insertion.getDeliveryAfter() + 1]);
+            }
+        }
+
+        /**
+         * Whether the cheapest insertion of a request may have changed with the last insertion in the route of a
+         * courier.
+         * <p>
+         * The legs kept by the insertion keep their order, so the cheapest insertion stays possible if it does not use
+         * a replaced leg, and only an insertion in a new leg can be cheaper. With the distances of a road graph,
+         * inserting a stop in a leg costs at least its detour, so none is cheaper if the detours of the pickup and of
+         * the delivery in each new leg are not. Most requests, far from the new stops, are then not evaluated again.
+         */
+        private boolean mayHaveChanged(int request, int courier) {
+            int cell = request * routes.length + courier;
+            double cost = insertionCosts[cell];
+            if (cost == Double.POSITIVE_INFINITY) {
+                return false;
+            }
+            for (int leg = 0; leg < replacedLegCount; leg++) {
+                if (insertionLegs[2 * cell] == replacedLegs[leg] || insertionLegs[2 * cell + 1] == replacedLegs[leg]) {
+                    return true;
+                }
+            }
+            for (int leg = 0; leg < newLegCount; leg++) {
+                int from = newLegs[2 * leg];
+                int to = newLegs[2 * leg + 1];
+                double replaced = distance(from, to);
+                if (distance(from, pickups[request]) + distance(pickups[request], to) - replaced < cost
+                        || distance(from, deliveries[request]) + distance(deliveries[request], to) - replaced < cost) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void insert(int request, int courier) {
+            if (routeSizes[courier] == 0) {
+                courierWarehouses[courier] = warehouses[request];
+                routes[courier][0] = warehouses[request];
+                routes[courier][1] = warehouses[request];
+                routeSizes[courier] = 2;
+            }
+            if (routes[courier].length < routeSizes[courier] + 2) {
+                routes[courier] = Arrays.copyOf(routes[courier], 2 * routes[courier].length);
+            }
+            int[] route = routes[courier];
+            int pickup = pickups[request];
+            int delivery = deliveries[request];
+            PairInsertion insertion = PairInsertion.cheapest(this::distance, route, routeSizes[courier], pickup, delivery);
+
+            int previous = route[insertion.getPickupAfter()];
+            int next = route[insertion.getPickupAfter() + 1];
+            replacedLegCount = 0;
+            newLegCount = 0;
+            replacedLegs[replacedLegCount++] = legKey(previous, next);
+            addNewLeg(previous, pickup);
+            if (insertion.getDeliveryAfter() == insertion.getPickupAfter()) {
+                addNewLeg(pickup, delivery);
+                addNewLeg(delivery, next);
+            } else {
+                addNewLeg(pickup, next);
+                int beforeDelivery = route[insertion.getDeliveryAfter()];
+                int afterDelivery = route[insertion.getDeliveryAfter() + 1];
+                replacedLegs[replacedLegCount++] = legKey(beforeDelivery, afterDelivery);
+                addNewLeg(beforeDelivery, delivery);
+                addNewLeg(delivery, afterDelivery);
+            }
+
+            insertion.apply(route, routeSizes[courier], pickup, delivery);
+            routeSizes[courier] += 2;
+            routeLengths[courier] += insertion.getCost();
+            couriers[request] = courier;
+        }
+
+        private void addNewLeg(int from, int to) {
+            newLegs[2 * newLegCount] = from;
+            newLegs[2 * newLegCount + 1] = to;
+            newLegCount++;
+        }
+    }
+
+    /**
+     * Assignments made by a dispatch
+     */
+    @lombok.Value
+    public static class Result {
+
+        /**
+         * The ids of the delivery requests newly assigned to each courier
+         */
+        Map<Long, List<Long>> assignments;
+
+        /**
+         * The ids of the delivery requests that no courier can serve
+         */
+        List<Long> unassigned;
+
+        /**
+         * Estimated length of the route of each courier, with its previous and new requests
+         */
+        Map<Long, Double> routeLengths;
+
+        double totalLength;
+
+        double maxLength;
+    }
+}
@@ -0,0 +1,394 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Route of a courier that can be changed one request at a time.
+ * <p>
+ * The stops are laid out as in {@link PickupDeliveryProblem}: stop 0 is the warehouse, and each request added gets
+ * the next two stops for its pickup and delivery. The leg costs between all the stops and the paths of the legs of
+ * the route are kept, so that a request is inserted at its cheapest feasible place with two one-to-many searches
+ * from its pickup and delivery, and removed without any search. The graph has every segment in both directions, so
+ * the distance to a new stop is the distance from it, and the path to it is the reversed path from it.
+ * <p>
+ * The stops of a removed request are given to the last request, so that the stops stay numbered from 0 and the
+ * costs only span the requests of the route.
+ */
+public final class CourierRoute {
+
+    private final long mapVersion;
+
+    private final RoutingAlgorithm algorithm;
+
+    private final RoutingSolver solver;
+
+    private int stopCount;
+
+    private long[] nodeIds;
+
+    /**
+     * Copy of the request of each pair of stops
+     */
+    private DeliveryRequest[] requests;
+
+    private double[][] costs;
+
+    /**
+     * The stops of the route, the warehouse first and last
+     */
+    private int[] order;
+
+    private int length;
+
+    /**
+     * Path of the legs of the route, by {@link #legKey(int, int)}
+     */
+    private final Map<Long, List<Long>> legs = new HashMap<>();
+
+    private int revision;
+
+    /**
+     * Route planned from a distance matrix
+     *
+     * @param mapVersion       The version of the map
+     * @param algorithm        The shortest path algorithm of the legs
+     * @param solver           The method that ordered the stops
+     * @param deliveryRequests The delivery requests, in the order of the requests of the problem
+     * @param problem          The problem
+     * @param matrix           The distance matrix the problem was built from
+     * @param tour             A feasible tour of the problem
+     */
+    CourierRoute(long mapVersion, RoutingAlgorithm algorithm, RoutingSolver solver, List<DeliveryRequest> deliveryRequests,
+                 PickupDeliveryProblem problem, DistanceMatrix matrix, int[] tour) {
+        this.mapVersion = mapVersion;
+        this.algorithm = algorithm;
+        this.solver = solver;
+        this.stopCount = problem.stopCount();
+        allocate(stopCount);
+        for (int stop = 0; stop < stopCount; stop++) {
+            nodeIds[stop] = matrix.stopId(problem.matrixIndex(stop));
+            for (int other = 0; other < stopCount; other++) {
+                costs[stop][other] = problem.cost(stop, other);
+            }
+        }
+        for (int request = 0; request < deliveryRequests.size(); request++) {
+            requests[request] = copy(deliveryRequests.get(request));
+        }
+
+        order[0] = 0;
+        System.arraycopy(tour, 0, order, 1, tour.length);
+        order[tour.length + 1] = 0;
+        length = tour.length + 2;
+        for (int position = 1; position < length; position++) {
+            int from = order[position - 1];
+            int to = order[position];
+            legs.put(legKey(from, to), matrix.path(problem.matrixIndex(from), problem.matrixIndex(to)));
+        }
+    }
+
+    private void allocate(int capacity) {
+        nodeIds = nodeIds == null ? new long[capacity] : Arrays.copyOf(nodeIds, capacity);
+        requests = requests == null ? new DeliveryRequest[capacity / 2] : Arrays.copyOf(requests, capacity / 2);
+        order = order == null ? new int[capacity + 1] : Arrays.copyOf(order, capacity + 1);
+        double[][] grown = new double[capacity][capacity];
+        if (costs != null) {
+            for (int stop = 0; stop < costs.length; stop++) {
+                System.arraycopy(costs[stop], 0, grown[stop], 0, costs.length);
+            }
+        }
+        costs = grown;
+    }
+
+    private static DeliveryRequest copy(DeliveryRequest deliveryRequest) {
+        DeliveryRequest copy = new DeliveryRequest();
+        copy.setId(deliveryRequest.getId());
+        copy.setIdPickup(deliveryRequest.getIdPickup());
+        copy.setIdDelivery(deliveryRequest.getIdDelivery());
+        copy.setIdWarehouse(deliveryRequest.getIdWarehouse());
+        copy.setIdCourier(deliveryRequest.getIdCourier());
+        return copy;
+    }
+
+    private static long legKey(int from, int to) {
+        return ((long) from << 32) | to;
+    }
+
+    /**
+     * @return The version of the map the route was planned on
+     */
+    public long getMapVersion() {
+        return mapVersion;
+    }
+
+    /**
+     * @return The shortest path algorithm the route was planned with
+     */
+    public RoutingAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return The method that first ordered the stops
+     */
+    public RoutingSolver getSolver() {
+        return solver;
+    }
+
+    /**
+     * @return The id of the node of the warehouse the route starts from
+     */
+    public Long getWarehouseId() {
+        return nodeIds[0];
+    }
+
+    /**
+     * @return The number of changes of the route since it was planned
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return The delivery requests of the route, in the order they were added
+     */
+    public List<DeliveryRequest> getDeliveryRequests() {
+        List<DeliveryRequest> deliveryRequests = new ArrayList<>();
+        for (int request = 0; request < stopCount / 2; request++) {
+            deliveryRequests.add(copy(requests[request]));
+        }
+        return deliveryRequests;
+    }
+
+    /**
+     * @return The ids of the delivery requests of the route
+     */
+    public Set<Long> getDeliveryRequestIds() {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (int request = 0; request < stopCount / 2; request++) {
+            ids.add(requests[request].getId());
+        }
+        return ids;
+    }
+
+    /**
+     * @return The length of the route
+     */
+    public double getCost() {
+        double cost = 0.0;
+        for (int position = 1; position < length; position++) {
+            cost += costs[order[position - 1]][order[position]];
+        }
+        return cost;
+    }
+
+    /**
+     * Insert a delivery request at its cheapest feasible place
+     *
+     * @param graph           The graph of the map version of the route
+     * @param deliveryRequest The delivery request, whose warehouse must be the one of the route
+     * @param buffers         The buffers of the searches, for the graph
+     */
+    public void insert(RoadGraph graph, DeliveryRequest deliveryRequest, SearchBuffers buffers) {
+        if (stopCount + 2 > costs.length) {
+            allocate(Math.max(2 * costs.length, stopCount + 2) | 1);
+        }
+        int pickup = stopCount;
+        int delivery = stopCount + 1;
+        stopCount += 2;
+        nodeIds[pickup] = deliveryRequest.getIdPickup();
+        nodeIds[delivery] = deliveryRequest.getIdDelivery();
+        requests[PickupDeliveryProblem.request(pickup)] = copy(deliveryRequest);
+
+        // The costs between the new stops and the stops of the route, from one tree per new stop
+        int[] stops = Arrays.copyOf(order, length + 1);
+        stops[length - 1] = pickup;
+        stops[length] = delivery;
+        int[] pickupTree = buffers.pickupTree;
+        int[] deliveryTree = buffers.deliveryTree;
+        searchFrom(graph, pickup, stops, pickupTree, buffers);
+        searchFrom(graph, delivery, stops, deliveryTree, buffers);
+
+        PairInsertion insertion = PairInsertion.cheapest((from, to) -> costs[from][to], order, length, pickup, delivery);
+        int previous = order[insertion.getPickupAfter()];
+        int next = order[insertion.getPickupAfter() + 1];
+        legs.put(legKey(previous, pickup), reversed(path(graph, pickupTree, previous)));
+        if (insertion.getDeliveryAfter() == insertion.getPickupAfter()) {
+            legs.put(legKey(pickup, delivery), path(graph, pickupTree, delivery));
+            legs.put(legKey(delivery, next), path(graph, deliveryTree, next));
+        } else {
+            legs.put(legKey(pickup, next), path(graph, pickupTree, next));
+            int beforeDelivery = order[insertion.getDeliveryAfter()];
+            int afterDelivery = order[insertion.getDeliveryAfter() + 1];
+            legs.put(legKey(beforeDelivery, delivery), reversed(path(graph, deliveryTree, beforeDelivery)));
+            legs.put(legKey(delivery, afterDelivery), path(graph, deliveryTree, afterDelivery));
+        }
+        insertion.apply(order, length, pickup, delivery);
+        length += 2;
+        revision++;
+    }
+
+    /**
+     * Fill the costs between a new stop and other stops, keeping the tree of the search from it
+     */
+    private void searchFrom(RoadGraph graph, int stop, int[] others, int[] tree, SearchBuffers buffers) {
+        double[] distances = buffers.distances;
+        int source = graph.indexOf(nodeIds[stop]);
+        if (source >= 0) {
+            int[] targets = Arrays.stream(others).map(other -> graph.indexOf(nodeIds[other])).filter(t -> t >= 0).toArray();
+            Dijkstra.oneToMany(graph, source, targets, distances, tree, buffers.heap);
+        } else {
+            Arrays.fill(distances, Double.MAX_VALUE);
+            Arrays.fill(tree, -1);
+        }
+        for (int other : others) {
+            int node = graph.indexOf(nodeIds[other]);
+            double distance = other == stop ? 0.0 : node >= 0 ? distances[node] : Double.MAX_VALUE;
+            costs[stop][other] = distance;
+            costs[other][stop] = distance;
+        }
+    }
+
+    /**
+     * Path from the source of a tree to a stop, only the stop if it is not reached
+     */
+    private List<Long> path(RoadGraph graph, int[] tree, int stop) {
+        int target = graph.indexOf(nodeIds[stop]);
+        if (target < 0) {
+            return List.of(nodeIds[stop]);
+        }
+        List<Long> path = new ArrayList<>();
+        for (int at = target; at != -1; at = tree[at]) {
+            path.add(graph.nodeId(at));
+        }
+        return reversed(path);
+    }
+
+    private static List<Long> reversed(List<Long> path) {
+        List<Long> reversed = new ArrayList<>(path);
+        Collections.reverse(reversed);
+        return reversed;
+    }
+
+    /**
+     * Remove the stops of a delivery request
+     *
+     * @param deliveryRequestId The id of the delivery request
+     * @return true if the request was in the route
+     */
+    public boolean remove(Long deliveryRequestId) {
+        for (int request = 0; request < stopCount / 2; request++) {
+            if (Objects.equals(requests[request].getId(), deliveryRequestId)) {
+                int pickup = PickupDeliveryProblem.pickup(request);
+                int delivery = PickupDeliveryProblem.delivery(request);
+                int kept = 0;
+                for (int position = 0; position < length; position++) {
+                    if (order[position] != pickup && order[position] != delivery) {
+                        order[kept++] = order[position];
+                    }
+                }
+                length = kept;
+                renumber(request);
+                revision++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Give the stops of a removed request to the last request, and keep only the paths of the legs of the route
+     */
+    private void renumber(int removed) {
+        int last = stopCount / 2 - 1;
+        int lastPickup = PickupDeliveryProblem.pickup(last);
+        int lastDelivery = PickupDeliveryProblem.delivery(last);
+        int pickup = PickupDeliveryProblem.pickup(removed);
+        int delivery = PickupDeliveryProblem.delivery(removed);
+        if (removed != last) {
+            nodeIds[pickup] = nodeIds[lastPickup];
+            nodeIds[delivery] = nodeIds[lastDelivery];
+            requests[removed] = requests[last];
+            System.arraycopy(costs[lastPickup], 0, costs[pickup], 0, stopCount);
+            System.arraycopy(costs[lastDelivery], 0, costs[delivery], 0, stopCount);
+            for (int stop = 0; stop < stopCount; stop++) {
+                costs[stop][pickup] = costs[stop][lastPickup];
+                costs[stop][delivery] = costs[stop][lastDelivery];
+            }
+        }
+        requests[last] = null;
+        stopCount -= 2;
+
+        Map<Long, List<Long>> kept = new HashMap<>();
+        int previous = order[0];
+        for (int position = 1; position < length; position++) {
+            int stop = order[position];
+            order[position] = stop == lastPickup ? pickup : stop == lastDelivery ? delivery : stop;
+            List<Long> path = legs.get(legKey(previous, stop));
+            if (path != null) {
+                kept.put(legKey(order[position - 1], order[position]), path);
+            }
+            previous = stop;
+        }
+        legs.clear();
+        legs.putAll(kept);
+    }
+
+    /**
+     * @param graph The graph of the map version of the route
+     * @return The ids of the nodes of the route, from the warehouse back to it
+     */
+    public List<Long> nodes(RoadGraph graph) {
+        List<Long> route = new ArrayList<>();
+        route.add(nodeIds[0]); // Start at the warehouse
+        for (int position = 1; position < length; position++) {
+            int from = order[position - 1];
+            int to = order[position];
+            // The legs created by removals are only searched when needed
+            List<Long> path = legs.computeIfAbsent(legKey(from, to), key -> Dijkstra.path(graph, nodeIds[from], nodeIds[to]));
+            route.addAll(path.subList(1, path.size())); // Avoid duplicating the current node
+        }
+        return route;
+    }
+
+    /**
+     * Buffers of the searches of the insertions, sized for a graph and reused from one insertion to the next
+     */
+    public static final class SearchBuffers {
+
+        private final IndexedHeap heap;
+
+        private final double[] distances;
+
+        private final int[] pickupTree;
+
+        private final int[] deliveryTree;
+
+        /**
+         * @param graph The graph the routes are changed on
+         */
+        public SearchBuffers(RoadGraph graph) {
+            heap = new IndexedHeap(graph.nodeCount());
+            distances = new double[graph.nodeCount()];
+            pickupTree = new int[graph.nodeCount()];
+            deliveryTree = new int[graph.nodeCount()];
+        }
+
+        /**
+         * @param graph A graph
+         * @return true if the buffers can be used for the searches on the graph
+         */
+        public boolean fits(RoadGraph graph) {
+            return distances.length == graph.nodeCount();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shortest path searches on a {@link RoadGraph}
+ */
+public final class Dijkstra {
+
+    private Dijkstra() {
+    }
+
+    /**
+     * Compute the shortest path between two nodes
+     *
+     * @param graph  The graph
+     * @param start  The id of the start node
+     * @param target The id of the target node
+     * @return The ids of the nodes of the path, from start to target. If the target cannot be reached, the list
+     * only contains the target.
+     */
+    public static List<Long> path(RoadGraph graph, Long start, Long target) {
+        List<Long> path = new ArrayList<>();
+        int source = graph.indexOf(start);
+        int goal = graph.indexOf(target);
+        if (source < 0 || goal < 0) {
+            path.add(target);
+            return path;
+        }
+
+        double[] distances = new double[graph.nodeCount()];
+        int[] previousNodes = new int[graph.nodeCount()];
+        oneToMany(graph, source, new int[]{goal}, distances, previousNodes);
+
+        // Backtrack to construct the path
+        for (int at = goal; at != -1; at = previousNodes[at]) {
+            path.add(graph.nodeId(at));
+        }
+        Collections.reverse(path);
+
+        return path;
+    }
+
+    /**
+     * Compute the length of the shortest path between two nodes
+     *
+     * @param graph The graph
+     * @param start The id of the start node
+     * @param end   The id of the end node
+     * @return The length of the shortest path, or Double.MAX_VALUE if there is none
+     */
+    public static double distance(RoadGraph graph, Long start, Long end) {
+        int source = graph.indexOf(start);
+        int goal = graph.indexOf(end);
+        if (source < 0 || goal < 0) return Double.MAX_VALUE;
+
+        double[] distances = new double[graph.nodeCount()];
+        int[] previousNodes = new int[graph.nodeCount()];
+        oneToMany(graph, source, new int[]{goal}, distances, previousNodes);
+
+        return distances[goal];
+    }
+
+    /**
+     * Grow the shortest path tree of a source until all the targets are settled
+     *
+     * @param graph         The graph
+     * @param source        The index of the source node
+     * @param targets       The indices of the target nodes
+     * @param distances     Filled with the distance from the source of every reached node, Double.MAX_VALUE for the
+     *                      others
+     * @param previousNodes Filled with the predecessor of every reached node in the tree, -1 for the others
+     * @return The number of settled nodes
+     */
+    public static int oneToMany(RoadGraph graph, int source, int[] targets, double[] distances, int[] previousNodes) {
+        return oneToMany(graph, source, targets, distances, previousNodes, new IndexedHeap(graph.nodeCount()));
+    }
+
+    /**
+     * Grow the shortest path tree of a source until all the targets are settled, reusing a heap
+     *
+     * @param heap An empty heap with the capacity of the graph, left empty after the search
+     * @see #oneToMany(RoadGraph, int, int[], double[], int[])
+     */
+    public static int oneToMany(RoadGraph graph, int source, int[] targets, double[] distances, int[] previousNodes,
+                                IndexedHeap heap) {
+        Arrays.fill(distances, Double.MAX_VALUE);
+        Arrays.fill(previousNodes, -1);
+
+        int[] sortedTargets = Arrays.stream(targets).sorted().distinct().toArray();
+        int remainingTargets = sortedTargets.length;
+        int settledCount = 0;
+
+        distances[source] = 0.0;
+        heap.push(source, 0.0);
+
+        while (!heap.isEmpty() && remainingTargets > 0) {
+            int current = heap.poll();
+            settledCount++;
+
+            if (Arrays.binarySearch(sortedTargets, current) >= 0) {
+                remainingTargets--;
+            }
+
+            for (int edge = graph.firstEdge(current); edge < graph.lastEdge(current); edge++) {
+                int neighbor = graph.edgeTarget(edge);
+                double newDist = distances[current] + graph.edgeWeight(edge);
+
+                if (newDist < distances[neighbor]) {
+                    distances[neighbor] = newDist;
+                    previousNodes[neighbor] = current;
+                    heap.push(neighbor, newDist);
+                }
+            }
+        }
+        heap.clear();
+
+        return settledCount;
+    }
+}
@@ -0,0 +1,17 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+/**
+ * What the automatic assignment of the delivery requests to the couriers minimizes
+ */
+public enum DispatchObjective {
+    /**
+     * The sum of the lengths of the routes. Since the couriers have no limit, this tends to give most requests of a
+     * warehouse to a single courier.
+     */
+    TOTAL_LENGTH,
+
+    /**
+     * The length of the longest route, which balances the work of the couriers
+     */
+    MAX_LENGTH
+}
@@ -0,0 +1,287 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shortest distances and paths between every pair of stops of a route computation (warehouse, pickups and
+ * deliveries).
+ * <p>
+ * With Dijkstra, the matrix is filled with one bounded one-to-many search per stop, which stops as soon as every
+ * other stop is settled. The shortest-path tree of each search is copied into an arena owned by the matrix, so that
+ * the path of a leg is only unpacked when the route planner asks for it, without searching again. The trees are taken
+ * from a budget of bytes, which may be shared by the matrices of the couriers of a computation; the paths from the
+ * stops whose tree did not fit are searched again when asked for.
+ * With a point-to-point algorithm (A*, ALT, bidirectional Dijkstra, Contraction Hierarchies), one search is run per
+ * leg for its distance, and the path is searched again only for the legs of the routes.
+ * <p>
+ * The arena is freed with the matrix, once the route computation is over.
+ */
+public final class DistanceMatrix {
+
+    /**
+     * Size of the arena of the trees when none is given
+     */
+    public static final long DEFAULT_ARENA_BYTES = 64L * 1024 * 1024;
+
+    private final RoadGraph graph;
+
+    private final long[] stopIds;
+
+    /**
+     * The index of the node of each stop in the graph, -1 if the node is not in the graph
+     */
+    private final int[] stopIndices;
+
+    private final double[] distances;
+
+    /**
+     * The predecessor of each node in the shortest-path tree of the stops, one slot of {@code graph.nodeCount()}
+     * entries per kept tree
+     */
+    private final int[] trees;
+
+    /**
+     * The slot of the tree of each stop in {@link #trees}, -1 if its tree is not kept
+     */
+    private final int[] treeSlots;
+
+    /**
+     * Point-to-point search of the paths, null with Dijkstra
+     */
+    private final PointToPointSearch search;
+
+    private DistanceMatrix(RoadGraph graph, long[] stopIds, int[] stopIndices, double[] distances, int[] trees,
+                           int[] treeSlots, PointToPointSearch search) {
+        this.graph = graph;
+        this.stopIds = stopIds;
+        this.stopIndices = stopIndices;
+        this.distances = distances;
+        this.trees = trees;
+        this.treeSlots = treeSlots;
+        this.search = search;
+    }
+
+    /**
+     * Compute the matrix between the given stops with Dijkstra
+     *
+     * @param graph   The graph
+     * @param nodeIds The ids of the stops, duplicates are ignored
+     * @return The matrix
+     */
+    public static DistanceMatrix build(RoadGraph graph, Collection<Long> nodeIds) {
+        return build(graph, nodeIds, RoutingAlgorithm.DIJKSTRA);
+    }
+
+    /**
+     * Compute the matrix between the given stops
+     *
+     * @param graph     The graph
+     * @param nodeIds   The ids of the stops, duplicates are ignored
+     * @param algorithm The shortest path algorithm, A* falls back to Dijkstra if the graph does not allow it
+     * @return The matrix
+     */
+    public static DistanceMatrix build(RoadGraph graph, Collection<Long> nodeIds, RoutingAlgorithm algorithm) {
+        return build(new GraphSnapshot(0, graph, null, null, null), nodeIds, algorithm);
+    }
+
+    /**
+     * Compute the matrix between the given stops, using the preprocessed data of a snapshot
+     *
+     * @param snapshot  The snapshot of the map
+     * @param nodeIds   The ids of the stops, duplicates are ignored
+     * @param algorithm The shortest path algorithm
+     * @return The matrix
+     * @see GraphSnapshot#newSearch(RoutingAlgorithm)
+     */
+    public static DistanceMatrix build(GraphSnapshot snapshot, Collection<Long> nodeIds, RoutingAlgorithm algorithm) {
+        return build(snapshot, nodeIds, algorithm, DEFAULT_ARENA_BYTES);
+    }
+
+    /**
+     * Compute the matrix between the given stops, using the preprocessed data of a snapshot
+     *
+     * @param snapshot   The snapshot of the map
+     * @param nodeIds    The ids of the stops, duplicates are ignored
+     * @param algorithm  The shortest path algorithm
+     * @param arenaBytes The largest size of the shortest-path trees kept with Dijkstra
+     * @return The matrix
+     * @see GraphSnapshot#newSearch(RoutingAlgorithm)
+     */
+    public static DistanceMatrix build(GraphSnapshot snapshot, Collection<Long> nodeIds, RoutingAlgorithm algorithm,
+                                       long arenaBytes) {
+        return build(snapshot, nodeIds, algorithm, new AtomicLong(arenaBytes));
+    }
+
+    /**
+     * Compute the matrix between the given stops, using the preprocessed data of a snapshot
+     *
+     * @param snapshot   The snapshot of the map
+     * @param nodeIds    The ids of the stops, duplicates are ignored
+     * @param algorithm  The shortest path algorithm
+     * @param arenaBytes The bytes left for the shortest-path trees kept with Dijkstra, from which the trees of the
+     *                   matrix are taken
+     * @return The matrix
+     * @see GraphSnapshot#newSearch(RoutingAlgorithm)
+     */
+    public static DistanceMatrix build(GraphSnapshot snapshot, Collection<Long> nodeIds, RoutingAlgorithm algorithm,
+                                       AtomicLong arenaBytes) {
+        RoadGraph graph = snapshot.getGraph();
+        long[] stopIds = new LinkedHashSet<>(nodeIds).stream().mapToLong(Long::longValue).toArray();
+        int size = stopIds.length;
+
+        int[] stopIndices = new int[size];
+        for (int i = 0; i < size; i++) {
+            stopIndices[i] = graph.indexOf(stopIds[i]);
+        }
+
+        double[] distances = new double[size * size];
+        for (int i = 0; i < size * size; i++) {
+            // Unreachable stops keep these values
+            distances[i] = i / size == i % size ? 0.0 : Double.MAX_VALUE;
+        }
+
+        int[] treeSlots = new int[size];
+        Arrays.fill(treeSlots, -1);
+
+        PointToPointSearch search = snapshot.newSearch(algorithm);
+        if (search != null) {
+            for (int from = 0; from < size; from++) {
+                for (int to = 0; to < size; to++) {
+                    if (from != to && stopIndices[from] >= 0 && stopIndices[to] >= 0) {
+                        distances[from * size + to] = search.search(stopIndices[from], stopIndices[to]);
+                    }
+                }
+            }
+            return new DistanceMatrix(graph, stopIds, stopIndices, distances, new int[0], treeSlots, search);
+        }
+
+        int nodeCount = graph.nodeCount();
+        int[] targets = Arrays.stream(stopIndices).filter(index -> index >= 0).toArray();
+        int treeCount = reserveTrees(arenaBytes, targets.length, (long) Integer.BYTES * Math.max(1, nodeCount));
+        int[] trees = new int[treeCount * nodeCount];
+        double[] treeDistances = new double[nodeCount];
+        int[] previousNodes = new int[nodeCount];
+        IndexedHeap heap = new IndexedHeap(nodeCount);
+
+        int kept = 0;
+        for (int from = 0; from < size; from++) {
+            if (stopIndices[from] < 0) continue;
+            Dijkstra.oneToMany(graph, stopIndices[from], targets, treeDistances, previousNodes, heap);
+
+            for (int to = 0; to < size; to++) {
+                if (from != to && stopIndices[to] >= 0) {
+                    distances[from * size + to] = treeDistances[stopIndices[to]];
+                }
+            }
+            if (kept < treeCount) {
+                System.arraycopy(previousNodes, 0, trees, kept * nodeCount, nodeCount);
+                treeSlots[from] = kept++;
+            }
+        }
+
+        return new DistanceMatrix(graph, stopIds, stopIndices, distances, trees, treeSlots, null);
+    }
+
+    /**
+     * Take trees from a budget shared with other matrices
+     *
+     * @return The number of trees taken, at most the wanted number
+     */
+    private static int reserveTrees(AtomicLong arenaBytes, int wanted, long treeBytes) {
+        while (true) {
+            long available = arenaBytes.get();
+            int count = (int) Math.min(wanted, Math.max(0, available) / treeBytes);
+            if (count == 0 || arenaBytes.compareAndSet(available, available - count * treeBytes)) {
+                return count;
+            }
+        }
+    }
+
+    private List<Long> toNodeIds(int[] path) {
+        Long[] nodeIds = new Long[path.length];
+        for (int i = 0; i < path.length; i++) {
+            nodeIds[i] = graph.nodeId(path[i]);
+        }
+        return List.of(nodeIds);
+    }
+
+    private List<Long> unpack(int[] previousNodes, int offset, int target) {
+        int length = 0;
+        for (int at = target; at != -1; at = previousNodes[offset + at]) {
+            length++;
+        }
+        Long[] path = new Long[length];
+        for (int at = target; at != -1; at = previousNodes[offset + at]) {
+            path[--length] = graph.nodeId(at);
+        }
+        return List.of(path);
+    }
+
+    /**
+     * @return The number of stops of the matrix
+     */
+    public int size() {
+        return stopIds.length;
+    }
+
+    /**
+     * @param nodeId The id of a node
+     * @return The index of the stop in the matrix, or -1 if the node is not a stop
+     */
+    public int indexOf(long nodeId) {
+        for (int i = 0; i < stopIds.length; i++) {
+            if (stopIds[i] == nodeId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param stop The index of the stop
+     * @return The id of the node of the stop
+     */
+    public long stopId(int stop) {
+        return stopIds[stop];
+    }
+
+    /**
+     * @param from The index of the start stop
+     * @param to   The index of the end stop
+     * @return The length of the shortest path between the stops, or Double.MAX_VALUE if there is none
+     */
+    public double distance(int from, int to) {
+        return distances[from * stopIds.length + to];
+    }
+
+    /**
+     * @param from The index of the start stop
+     * @param to   The index of the end stop
+     * @return The ids of the nodes of the shortest path between the stops, from start to end. If the end stop cannot
+     * be reached, the list only contains the end stop.
+     */
+    public List<Long> path(int from, int to) {
+        if (from == to || distance(from, to) == Double.MAX_VALUE) {
+            return List.of(stopIds[to]);
+        }
+        if (search != null) {
+            synchronized (search) {
+                search.search(stopIndices[from], stopIndices[to]);
+                return toNodeIds(search.path());
+            }
+        }
+        if (treeSlots[from] >= 0) {
+            return unpack(trees, treeSlots[from] * graph.nodeCount(), stopIndices[to]);
+        }
+
+        // The tree of the start stop did not fit in the arena
+        int nodeCount = graph.nodeCount();
+        int[] previousNodes = new int[nodeCount];
+        Dijkstra.oneToMany(graph, stopIndices[from], new int[]{stopIndices[to]}, new double[nodeCount], previousNodes);
+        return unpack(previousNodes, 0, stopIndices[to]);
+    }
+}
@@ -0,0 +1,225 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Exact solver of small pickup and delivery problems, by depth-first branch and bound.
+ * <p>
+ * The search starts from the tour of the nearest-next heuristic improved by {@link LocalSearch}, and extends partial
+ * tours with the feasible stops, nearest first. A partial tour is cut when its cost plus a lower bound of the rest
+ * reaches the best complete tour, or when the same set of stops was already visited, ending at the same stop, for no
+ * more, so the search stops at once when the bound of the empty tour proves the first tour optimal. The rest of the
+ * tour goes from the last stop to a feasible next stop, through all the stops still to visit, and from a delivery back
+ * to the warehouse: it costs at least the cheapest first leg, plus the minimum spanning tree of the stops still to
+ * visit (weighted by the cheaper direction of each leg), plus the cheapest last leg.
+ * <p>
+ * If the deadline passes or the computation is cancelled, the best tour found so far is returned.
+ */
+public final class ExactTourSolver implements TourSolver {
+
+    /**
+     * Largest number of requests, for the visited stops to fit in an int
+     */
+    public static final int MAX_REQUESTS = 15;
+
+    /**
+     * Largest size of the table of the best costs of the visited states, older entries are overwritten
+     */
+    private static final int MEMO_SIZE = 1 << 18;
+
+    private final TourSolver initialSolver = new GreedyTourSolver();
+
+    private final LocalSearch localSearch = new LocalSearch();
+
+    @Override
+    public int[] solve(PickupDeliveryProblem problem, long deadline, BooleanSupplier cancelled) {
+        if (problem.requestCount() > MAX_REQUESTS) {
+            throw new IllegalArgumentException("Too many requests for the exact solver: " + problem.requestCount());
+        }
+        int[] initial = localSearch.improve(problem, initialSolver.solve(problem, deadline), deadline, cancelled,
+                better -> {
+                });
+        Search search = new Search(problem, initial, deadline, cancelled);
+        search.extend(0, 0, 0, 0.0);
+        return search.best;
+    }
+
+    /**
+     * State of one resolution, so that the solver can be shared between threads
+     */
+    private static final class Search {
+
+        private final PickupDeliveryProblem problem;
+
+        private final int stopCount;
+
+        private final long deadline;
+
+        private final BooleanSupplier cancelled;
+
+        /**
+         * Cost of the cheaper direction between each pair of stops
+         */
+        private final double[] weights;
+
+        private final int[] treeNodes;
+
+        private final double[] treeDistances;
+
+        private final int[] current;
+
+        /**
+         * Next stops of the partial tour at each depth
+         */
+        private final int[][] candidates;
+
+        private int[] best;
+
+        private double bestCost;
+
+        private final long[] memoKeys;
+
+        private final double[] memoCosts;
+
+        private long expanded;
+
+        private boolean timedOut;
+
+        Search(PickupDeliveryProblem problem, int[] initial, long deadline, BooleanSupplier cancelled) {
+            this.problem = problem;
+            this.stopCount = problem.stopCount();
+            this.deadline = deadline;
+            this.cancelled = cancelled;
+            this.current = new int[stopCount - 1];
+            this.candidates = new int[stopCount - 1][stopCount];
+            this.best = initial;
+            this.bestCost = problem.tourCost(initial);
+            // At most a state per set of visited stops and last stop
+            long states = (long) stopCount << (stopCount - 1);
+            int memoSize = states >= MEMO_SIZE ? MEMO_SIZE : (int) Long.highestOneBit(states - 1) << 1;
+            memoKeys = new long[memoSize];
+            memoCosts = new double[memoSize];
+            Arrays.fill(memoKeys, -1);
+
+            weights = new double[stopCount * stopCount];
+            for (int from = 0; from < stopCount; from++) {
+                for (int to = 0; to < stopCount; to++) {
+                    weights[from * stopCount + to] = Math.min(problem.cost(from, to), problem.cost(to, from));
+                }
+            }
+            treeNodes = new int[stopCount + 1];
+            treeDistances = new double[stopCount + 1];
+        }
+
+        /**
+         * @param depth      The number of stops of the partial tour
+         * @param last       The last stop of the partial tour, 0 at the warehouse
+         * @param visited    The visited stops, bit {@code stop - 1} for each stop
+         * @param cost    The cost of the partial tour
+         */
+        void extend(int depth, int last, int visited, double cost) {
+            if (depth == current.length) {
+                double total = cost + problem.cost(last, 0);
+                if (total < bestCost) {
+                    bestCost = total;
+                    best = current.clone();
+                }
+                return;
+            }
+            if ((++expanded & 1023) == 0 && (System.nanoTime() > deadline || cancelled.getAsBoolean())) {
+                timedOut = true;
+            }
+            if (timedOut) {
+                return;
+            }
+
+            long key = ((long) visited << 5) | last;
+            int slot = (int) (mix(key) & (memoKeys.length - 1));
+            if (memoKeys[slot] == key && memoCosts[slot] <= cost) {
+                return;
+            }
+            memoKeys[slot] = key;
+            memoCosts[slot] = cost;
+
+            // Feasible next stops, nearest first
+            int[] candidates = this.candidates[depth];
+            int count = 0;
+            double lastLeg = Double.MAX_VALUE;
+            for (int request = 0; request < problem.requestCount(); request++) {
+                int pickup = PickupDeliveryProblem.pickup(request);
+                int delivery = PickupDeliveryProblem.delivery(request);
+                int candidate;
+                if ((visited & bit(pickup)) == 0) {
+                    candidate = pickup;
+                } else if ((visited & bit(delivery)) == 0) {
+                    candidate = delivery;
+                } else {
+                    continue;
+                }
+                lastLeg = Math.min(lastLeg, problem.cost(delivery, 0));
+                int position = count++;
+                while (position > 0 && problem.cost(last, candidates[position - 1]) > problem.cost(last, candidate)) {
+                    candidates[position] = candidates[position - 1];
+                    position--;
+                }
+                candidates[position] = candidate;
+            }
+
+            double bound = problem.cost(last, candidates[0]) + spanningTreeCost(visited) + lastLeg;
+            if (cost + bound >= bestCost) {
+                return;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int next = candidates[i];
+                current[depth] = next;
+                extend(depth + 1, next, visited | bit(next), cost + problem.cost(last, next));
+            }
+        }
+
+        /**
+         * Prim's algorithm on the stops still to visit
+         */
+        private double spanningTreeCost(int visited) {
+            int count = 0;
+            for (int stop = 1; stop < stopCount; stop++) {
+                if ((visited & bit(stop)) == 0) {
+                    treeNodes[count++] = stop;
+                }
+            }
+
+            // The first node is in the tree, the others are sorted out as they join it
+            for (int i = 1; i < count; i++) {
+                treeDistances[i] = weights[treeNodes[0] * stopCount + treeNodes[i]];
+            }
+            double total = 0.0;
+            for (int joined = 1; joined < count; joined++) {
+                int nearest = joined;
+                for (int i = joined + 1; i < count; i++) {
+                    if (treeDistances[i] < treeDistances[nearest]) {
+                        nearest = i;
+                    }
+                }
+                int node = treeNodes[nearest];
+                total += treeDistances[nearest];
+                treeNodes[nearest] = treeNodes[joined];
+                treeDistances[nearest] = treeDistances[joined];
+                treeNodes[joined] = node;
+                for (int i = joined + 1; i < count; i++) {
+                    treeDistances[i] = Math.min(treeDistances[i], weights[node * stopCount + treeNodes[i]]);
+                }
+            }
+            return total;
+        }
+
+        private static int bit(int stop) {
+            return 1 << (stop - 1);
+        }
+
+        private static long mix(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return key ^ (key >>> 29);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import lombok.Value;
+
+/**
+ * Routing graph of the loaded map, tagged with the version of the map it was built from
+ */
+@Value
+public class GraphSnapshot {
+
+    /**
+     * Version of the map, increased every time the graph is rebuilt
+     */
+    long mapVersion;
+
+    RoadGraph graph;
+
+    /**
+     * Contraction Hierarchy of the graph, null if the preprocessing is disabled
+     */
+    ContractionHierarchy hierarchy;
+
+    /**
+     * Landmarks of the graph for ALT searches, null if disabled
+     */
+    Landmarks landmarks;
+
+    /**
+     * Index of the nodes of the graph by their coordinates, null if not built
+     */
+    SpatialIndex spatialIndex;
+
+    /**
+     * Create the search to run for each leg of a route computation
+     *
+     * @param algorithm The shortest path algorithm
+     * @return The search, or null if the legs are computed with one-to-many Dijkstra searches
+     */
+    public PointToPointSearch newSearch(RoutingAlgorithm algorithm) {
+        switch (algorithm) {
+            case ALT:
+                if (landmarks != null) {
+                    return new LandmarkSearch(graph, landmarks);
+                }
+                return AStar.isApplicable(graph) ? new AStar(graph) : null;
+            case ASTAR:
+                return AStar.isApplicable(graph) ? new AStar(graph) : null;
+            case BIDIRECTIONAL:
+                return new BidirectionalDijkstra(graph);
+            case CH:
+                return hierarchy != null ? new ContractionHierarchySearch(hierarchy) : new BidirectionalDijkstra(graph);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.repository.NodeRepository;
+import com.hexplosif.OptimodBackEnd.repository.SegmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Keeps the routing graph of the loaded map in memory, so that it is built once per map load instead of once per
+ * route computation.
+ * <p>
+ * Any modification of the nodes or segments invalidates the snapshot; the next call to {@link #getSnapshot()}
+ * rebuilds it with a new map version.
+ * <p>
+ * The landmarks of the graph for ALT searches and the spatial index of its nodes are computed with it. When enabled,
+ * the Contraction Hierarchy of the graph is built too. Hierarchies are saved in a directory under the fingerprint of
+ * their graph, so that loading the same map again reads the hierarchy instead of preprocessing it.
+ */
+@Service
+public class GraphSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphSnapshotService.class);
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private SegmentRepository segmentRepository;
+
+    @Autowired
+    private RouteCache routeCache;
+
+    @Autowired
+    private RoutePlanner routePlanner;
+
+    @Value("${optimod.routing.ch.enabled:false}")
+    private boolean hierarchyEnabled;
+
+    @Value("${optimod.routing.ch.directory:${java.io.tmpdir}/optimod-ch}")
+    private String hierarchyDirectory;
+
+    @Value("${optimod.routing.alt.landmarks:8}")
+    private int landmarkCount;
+
+    private final Object lock = new Object();
+
+    private volatile GraphSnapshot snapshot;
+
+    private long lastVersion;
+
+    /**
+     * Get the current snapshot, building it if the map was modified since the last build
+     *
+     * @return The current snapshot
+     */
+    public GraphSnapshot getSnapshot() {
+        GraphSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (lock) {
+            current = snapshot;
+            return current != null ? current : build();
+        }
+    }
+
+    /**
+     * Get the current snapshot without building it
+     *
+     * @return The current snapshot, or null if the map was modified since the last build
+     */
+    public GraphSnapshot peek() {
+        return snapshot;
+    }
+
+    /**
+     * Build a new snapshot from the nodes and segments in the database
+     *
+     * @return The new snapshot
+     */
+    public GraphSnapshot rebuild() {
+        synchronized (lock) {
+            return build();
+        }
+    }
+
+    /**
+     * Drop the current snapshot and the routes computed on it after a modification of the map.
+     * Waits for a build in progress, so that a snapshot read before the modification is never kept.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            snapshot = null;
+            routeCache.clear();
+        }
+    }
+
+    /**
+     * @return The version of the current snapshot, building it if needed
+     */
+    public long getMapVersion() {
+        return getSnapshot().getMapVersion();
+    }
+
+    private GraphSnapshot build() {
+        RoadGraph graph = RoadGraph.build(nodeRepository.findAll(), segmentRepository.findAll());
+        ContractionHierarchy hierarchy = hierarchyEnabled ? loadHierarchy(graph) : null;
+        Landmarks landmarks = landmarkCount > 0 ? Landmarks.build(graph, landmarkCount, routePlanner.getPool())
+                : null;
+        snapshot = new GraphSnapshot(++lastVersion, graph, hierarchy, landmarks, SpatialIndex.build(graph));
+        return snapshot;
+    }
+
+    /**
+     * Read the saved hierarchy of the graph, or build and save it
+     *
+     * @param graph The graph
+     * @return The hierarchy of the graph
+     */
+    ContractionHierarchy loadHierarchy(RoadGraph graph) {
+        Path file = Paths.get(hierarchyDirectory, String.format("ch-%016x.bin", graph.fingerprint()));
+        if (Files.isRegularFile(file)) {
+            try {
+                ContractionHierarchy hierarchy = ContractionHierarchy.readFrom(file);
+                if (hierarchy.matches(graph)) {
+                    return hierarchy;
+                }
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable contraction hierarchy {}: {}", file, e.getMessage());
+            }
+        }
+
+        long start = System.nanoTime();
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        logger.info("Contraction hierarchy of {} nodes built in {} ms with {} shortcuts", graph.nodeCount(),
+                (System.nanoTime() - start) / 1_000_000, hierarchy.shortcutCount());
+        try {
+            Files.createDirectories(file.getParent());
+            hierarchy.writeTo(file);
+        } catch (IOException e) {
+            logger.warn("Could not save the contraction hierarchy to {}: {}", file, e.getMessage());
+        }
+        return hierarchy;
+    }
+}
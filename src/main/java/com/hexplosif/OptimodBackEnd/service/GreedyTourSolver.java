@@ -0,0 +1,41 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Nearest-next heuristic: starting from the warehouse, go to the nearest pending stop, a pickup or the delivery of a
+ * request already picked up. Ties go to the request that comes first.
+ */
+public final class GreedyTourSolver implements TourSolver {
+
+    @Override
+    public int[] solve(PickupDeliveryProblem problem, long deadline, BooleanSupplier cancelled) {
+        int nbRequests = problem.requestCount();
+        int[] tour = new int[2 * nbRequests];
+        boolean[] pickedUp = new boolean[nbRequests];
+        boolean[] delivered = new boolean[nbRequests];
+        int position = 0;
+
+        for (int step = 0; step < tour.length; step++) {
+            int next = -1;
+            int nextRequest = -1;
+            for (int i = 0; i < nbRequests; i++) {
+                if (delivered[i]) continue;
+                int candidate = pickedUp[i] ? PickupDeliveryProblem.delivery(i) : PickupDeliveryProblem.pickup(i);
+                if (next == -1 || problem.cost(position, candidate) < problem.cost(position, next)) {
+                    next = candidate;
+                    nextRequest = i;
+                }
+            }
+
+            if (pickedUp[nextRequest]) {
+                delivered[nextRequest] = true;
+            } else {
+                pickedUp[nextRequest] = true;
+            }
+            tour[step] = next;
+            position = next;
+        }
+        return tour;
+    }
+}
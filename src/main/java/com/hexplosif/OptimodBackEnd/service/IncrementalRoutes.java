@@ -0,0 +1,217 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Last route of each courier, kept up to date when its delivery requests change instead of being planned again.
+ * <p>
+ * A new or reassigned request is inserted at its cheapest feasible place in the route of its courier, and a deleted
+ * or reassigned one is removed from the route of its previous courier, which only takes a few searches around the
+ * request. The order of the other stops is kept, so the routes drift away from the best ones as they change: when
+ * {@code optimod.routing.incremental.background-reoptimization} is set, each changed courier is planned again in
+ * the background, and its new route replaces the incremental one if it is shorter and no change happened meanwhile.
+ * A full computation of the routes replaces them all.
+ * <p>
+ * The routes of a previous map version are dropped, as well as the ones a request cannot be inserted in, so that the
+ * next computation plans them again.
+ */
+@Service
+public class IncrementalRoutes {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalRoutes.class);
+
+    @Autowired
+    private GraphSnapshotService graphSnapshotService;
+
+    @Autowired
+    private RoutePlanner routePlanner;
+
+    @Value("${optimod.routing.incremental.background-reoptimization:true}")
+    private boolean backgroundReoptimization;
+
+    @Value("${optimod.routing.time-budget-ms:1000}")
+    private long timeBudget;
+
+    private final Map<Long, CourierRoute> routes = new HashMap<>();
+
+    /**
+     * Couriers waiting for a background re-optimization
+     */
+    private final Set<Long> pending = new HashSet<>();
+
+    /**
+     * Buffers of the insertions, for the graph of the routes
+     */
+    private CourierRoute.SearchBuffers searchBuffers;
+
+    private ExecutorService reoptimizer;
+
+    @PostConstruct
+    void start() {
+        reoptimizer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-reoptimizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        reoptimizer.shutdownNow();
+    }
+
+    /**
+     * Keep the route of a courier, replacing the previous one
+     *
+     * @param courierId The id of the courier
+     * @param route     The route
+     */
+    public synchronized void store(Long courierId, CourierRoute route) {
+        routes.put(courierId, route);
+    }
+
+    /**
+     * Get the route of a courier if it serves exactly the given requests on the given map version
+     *
+     * @param courierId          The id of the courier
+     * @param snapshot           The snapshot of the map
+     * @param deliveryRequestIds The ids of the delivery requests of the courier
+     * @return The ids of the nodes of the route, null if there is no such route
+     */
+    public synchronized List<Long> route(Long courierId, GraphSnapshot snapshot, Set<Long> deliveryRequestIds) {
+        CourierRoute route = routes.get(courierId);
+        if (route == null || route.getMapVersion() != snapshot.getMapVersion()
+                || !route.getDeliveryRequestIds().equals(deliveryRequestIds)) {
+            return null;
+        }
+        return route.nodes(snapshot.getGraph());
+    }
+
+    /**
+     * Update the routes after a delivery request was saved: it is removed from the route it was in, and inserted in
+     * the route of its courier
+     *
+     * @param deliveryRequest The saved delivery request
+     */
+    public void requestChanged(DeliveryRequest deliveryRequest) {
+        update(deliveryRequest.getId(), deliveryRequest);
+    }
+
+    /**
+     * Update the routes after a delivery request was deleted
+     *
+     * @param deliveryRequestId The id of the deleted delivery request
+     */
+    public void requestRemoved(Long deliveryRequestId) {
+        update(deliveryRequestId, null);
+    }
+
+    /**
+     * Drop every route
+     */
+    public synchronized void clear() {
+        routes.clear();
+        pending.clear();
+        searchBuffers = null;
+    }
+
+    private void update(Long deliveryRequestId, DeliveryRequest deliveryRequest) {
+        // Never builds the graph: without a current snapshot, the routes are of a previous map version
+        GraphSnapshot snapshot = graphSnapshotService.peek();
+        synchronized (this) {
+            if (routes.isEmpty()) {
+                return;
+            }
+            if (snapshot == null) {
+                routes.clear();
+                searchBuffers = null;
+                return;
+            }
+
+            Set<Long> changed = new HashSet<>();
+            Iterator<Map.Entry<Long, CourierRoute>> iterator = routes.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, CourierRoute> entry = iterator.next();
+                if (entry.getValue().getMapVersion() != snapshot.getMapVersion()) {
+                    iterator.remove();
+                } else if (entry.getValue().remove(deliveryRequestId)) {
+                    changed.add(entry.getKey());
+                }
+            }
+
+            Long courierId = deliveryRequest != null ? deliveryRequest.getIdCourier() : null;
+            CourierRoute route = courierId != null ? routes.get(courierId) : null;
+            if (route != null) {
+                RoadGraph graph = snapshot.getGraph();
+                if (route.getWarehouseId().equals(deliveryRequest.getIdWarehouse())
+                        && graph.contains(deliveryRequest.getIdPickup()) && graph.contains(deliveryRequest.getIdDelivery())) {
+                    if (searchBuffers == null || !searchBuffers.fits(graph)) {
+                        searchBuffers = new CourierRoute.SearchBuffers(graph);
+                    }
+                    route.insert(graph, deliveryRequest, searchBuffers);
+                    changed.add(courierId);
+                } else {
+                    routes.remove(courierId);
+                    changed.remove(courierId);
+                }
+            }
+
+            if (backgroundReoptimization) {
+                for (Long changedCourierId : changed) {
+                    // A courier already waiting is planned with all its changes
+                    if (pending.add(changedCourierId)) {
+                        reoptimizer.execute(() -> reoptimize(changedCourierId));
+                    }
+                }
+            }
+        }
+    }
+
+    private void reoptimize(Long courierId) {
+        CourierRoute route;
+        int revision;
+        List<DeliveryRequest> deliveryRequests;
+        synchronized (this) {
+            pending.remove(courierId);
+            route = routes.get(courierId);
+            if (route == null) {
+                return;
+            }
+            revision = route.getRevision();
+            deliveryRequests = route.getDeliveryRequests();
+        }
+        GraphSnapshot snapshot = graphSnapshotService.peek();
+        if (deliveryRequests.isEmpty() || snapshot == null || snapshot.getMapVersion() != route.getMapVersion()) {
+            return;
+        }
+
+        try {
+            CourierRoute planned = routePlanner.planRoute(snapshot, deliveryRequests, route.getAlgorithm(),
+                    route.getSolver(), System.nanoTime() + timeBudget * 1_000_000);
+            synchronized (this) {
+                if (routes.get(courierId) == route && route.getRevision() == revision
+                        && planned.getCost() < route.getCost()) {
+                    routes.put(courierId, planned);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Re-optimization of the route of courier {} failed: {}", courierId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.Arrays;
+
+/**
+ * Indexed 4-ary min-heap of node indices keyed by a distance, with decrease-key.
+ * <p>
+ * Each node is in the heap at most once and its position is tracked, so that lowering the key of a queued node
+ * moves it up in place instead of queueing a stale duplicate.
+ */
+public final class IndexedHeap {
+
+    private static final int ARITY = 4;
+
+    private final int[] nodes;
+
+    private final double[] keys;
+
+    /**
+     * Position of each node in the heap, -1 if the node is not queued
+     */
+    private final int[] positions;
+
+    private int size;
+
+    /**
+     * @param capacity The number of nodes of the graph, node indices must be lower than it
+     */
+    public IndexedHeap(int capacity) {
+        nodes = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * @return true if no node is queued
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The number of queued nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param node The index of the node
+     * @return true if the node is queued
+     */
+    public boolean contains(int node) {
+        return positions[node] >= 0;
+    }
+
+    /**
+     * @return The smallest key of the heap
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * Queue a node, or lower its key if it is already queued with a greater key
+     *
+     * @param node The index of the node
+     * @param key  The key of the node
+     */
+    public void push(int node, double key) {
+        int position = positions[node];
+        if (position < 0) {
+            position = size++;
+        } else if (key >= keys[position]) {
+            return;
+        }
+        siftUp(position, node, key);
+    }
+
+    /**
+     * Queue a node, or move it to a greater or lower key if it is already queued
+     *
+     * @param node The index of the node
+     * @param key  The new key of the node
+     */
+    public void update(int node, double key) {
+        int position = positions[node];
+        if (position < 0 || key <= keys[position]) {
+            push(node, key);
+        } else {
+            siftDown(position, node, key);
+        }
+    }
+
+    /**
+     * Remove the node with the smallest key
+     *
+     * @return The index of the node
+     */
+    public int poll() {
+        int top = nodes[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            siftDown(0, nodes[size], keys[size]);
+        }
+        return top;
+    }
+
+    /**
+     * Remove all the queued nodes, in time proportional to their number
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[nodes[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position, int node, double key) {
+        while (position > 0) {
+            int parent = (position - 1) / ARITY;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(position, nodes[parent], keys[parent]);
+            position = parent;
+        }
+        place(position, node, key);
+    }
+
+    private void siftDown(int position, int node, double key) {
+        while (true) {
+            int firstChild = position * ARITY + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int smallest = firstChild;
+            int lastChild = Math.min(firstChild + ARITY, size);
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                if (keys[child] < keys[smallest]) {
+                    smallest = child;
+                }
+            }
+            if (keys[smallest] >= key) {
+                break;
+            }
+            place(position, nodes[smallest], keys[smallest]);
+            position = smallest;
+        }
+        place(position, node, key);
+    }
+
+    private void place(int position, int node, double key) {
+        nodes[position] = node;
+        keys[position] = key;
+        positions[node] = position;
+    }
+}
@@ -0,0 +1,137 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+/**
+ * ALT point-to-point search on a {@link RoadGraph}: A* using the landmark lower bounds of {@link Landmarks}.
+ * <p>
+ * Each search only uses the few landmarks giving the best bound between its source and target, whose distances to
+ * the target are read once. All of these bounds are consistent, and so is their maximum.
+ */
+public final class LandmarkSearch implements PointToPointSearch {
+
+    /**
+     * Number of landmarks used by a search
+     */
+    private static final int ACTIVE_LANDMARKS = 4;
+
+    private final RoadGraph graph;
+
+    private final Landmarks landmarks;
+
+    private final SearchSpace space;
+
+    private int target = -1;
+
+    private final int[] active;
+
+    private int activeCount;
+
+    /**
+     * Distances between the active landmarks and the target
+     */
+    private final double[] landmarkToTarget;
+
+    private final double[] targetToLandmark;
+
+    private int settledCount;
+
+    /**
+     * @param graph     The graph
+     * @param landmarks The landmarks of the graph
+     */
+    public LandmarkSearch(RoadGraph graph, Landmarks landmarks) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.space = new SearchSpace(graph.nodeCount());
+        this.active = new int[Math.min(ACTIVE_LANDMARKS, landmarks.count())];
+        this.landmarkToTarget = new double[active.length];
+        this.targetToLandmark = new double[active.length];
+    }
+
+    /**
+     * Keep the landmarks giving the best bounds between the source and the target
+     */
+    private void selectLandmarks(int source) {
+        double[] bounds = new double[landmarks.count()];
+        for (int landmark = 0; landmark < bounds.length; landmark++) {
+            bounds[landmark] = bound(landmark, source, landmarks.fromLandmark(landmark, target),
+                    landmarks.toLandmark(landmark, target));
+        }
+        activeCount = 0;
+        while (activeCount < active.length) {
+            int best = -1;
+            for (int landmark = 0; landmark < bounds.length; landmark++) {
+                if (bounds[landmark] >= 0 && (best == -1 || bounds[landmark] > bounds[best])) {
+                    best = landmark;
+                }
+            }
+            active[activeCount] = best;
+            landmarkToTarget[activeCount] = landmarks.fromLandmark(best, target);
+            targetToLandmark[activeCount] = landmarks.toLandmark(best, target);
+            bounds[best] = -1;
+            activeCount++;
+        }
+    }
+
+    private double bound(int landmark, int node, double landmarkToTarget, double targetToLandmark) {
+        double bound = 0.0;
+        double landmarkToNode = landmarks.fromLandmark(landmark, node);
+        if (landmarkToNode != Double.MAX_VALUE && landmarkToTarget != Double.MAX_VALUE) {
+            bound = landmarkToTarget - landmarkToNode;
+        }
+        double nodeToLandmark = landmarks.toLandmark(landmark, node);
+        if (nodeToLandmark != Double.MAX_VALUE && targetToLandmark != Double.MAX_VALUE) {
+            bound = Math.max(bound, nodeToLandmark - targetToLandmark);
+        }
+        return bound;
+    }
+
+    private double lowerBound(int node) {
+        double bound = 0.0;
+        for (int i = 0; i < activeCount; i++) {
+            bound = Math.max(bound, bound(active[i], node, landmarkToTarget[i], targetToLandmark[i]));
+        }
+        return bound;
+    }
+
+    @Override
+    public double search(int source, int target) {
+        this.target = target;
+        settledCount = 0;
+        space.reset();
+        selectLandmarks(source);
+        IndexedHeap heap = space.heap;
+
+        space.update(source, 0.0, -1);
+        heap.push(source, lowerBound(source));
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            settledCount++;
+
+            if (current == target) break;
+
+            double currentDistance = space.distance(current);
+            for (int edge = graph.firstEdge(current); edge < graph.lastEdge(current); edge++) {
+                int neighbor = graph.edgeTarget(edge);
+                double newDist = currentDistance + graph.edgeWeight(edge);
+
+                if (newDist < space.distance(neighbor)) {
+                    space.update(neighbor, newDist, current);
+                    heap.push(neighbor, newDist + lowerBound(neighbor));
+                }
+            }
+        }
+
+        return space.distance(target);
+    }
+
+    @Override
+    public int[] path() {
+        return space.distance(target) == Double.MAX_VALUE ? new int[0] : space.pathTo(target);
+    }
+
+    @Override
+    public int settledCount() {
+        return settledCount;
+    }
+}
@@ -0,0 +1,215 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Landmarks of a {@link RoadGraph} and the shortest distances from and to each of them, for the lower bounds of
+ * ALT searches (A*, landmarks, triangle inequality).
+ * <p>
+ * For a landmark L, the triangle inequality gives {@code d(v, t) >= d(L, t) - d(L, v)} and
+ * {@code d(v, t) >= d(v, L) - d(t, L)}. Landmarks are picked with farthest-point selection: each one is the node
+ * farthest from the landmarks already picked, so that they end up on the edges of the map, behind most nodes seen
+ * from each other. The distances are stored node by node, the distance from and to each landmark side by side, so
+ * that the bound of a node reads consecutive values. In a symmetric graph both distances are the same and are only
+ * stored once.
+ */
+public final class Landmarks {
+
+    private final int[] nodes;
+
+    /**
+     * Distance from each landmark to each node at {@code stride * (node * count + landmark)}, and from each node to
+     * each landmark at {@code stride - 1} after it, Double.MAX_VALUE if unreachable
+     */
+    private final double[] distances;
+
+    /**
+     * 1 if the distances to the landmarks are the distances from them, 2 otherwise
+     */
+    private final int stride;
+
+    private Landmarks(int[] nodes, double[] distances, int stride) {
+        this.nodes = nodes;
+        this.distances = distances;
+        this.stride = stride;
+    }
+
+    /**
+     * Pick the landmarks of a graph and compute their distances, searching on the common pool
+     *
+     * @see #build(RoadGraph, int, ForkJoinPool)
+     */
+    public static Landmarks build(RoadGraph graph, int count) {
+        return build(graph, count, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Pick the landmarks of a graph and compute their distances.
+     * The selection needs the distances from the landmarks already picked, so the searches from the landmarks run
+     * one after the other, each one picking the next landmark. The searches to the landmarks run in parallel on the
+     * pool as soon as a landmark is picked, unless the graph is symmetric and the searches from the landmarks give
+     * them.
+     *
+     * @param graph The graph
+     * @param count The number of landmarks, fewer are picked if the graph has fewer nodes
+     * @param pool  The pool running the searches to the landmarks
+     * @return The landmarks
+     */
+    public static Landmarks build(RoadGraph graph, int count, ForkJoinPool pool) {
+        int nodeCount = graph.nodeCount();
+        count = Math.min(count, nodeCount);
+        boolean symmetric = graph.isSymmetric();
+        int[] nodes = new int[count];
+        double[][] fromTrees = new double[count][];
+        List<ForkJoinTask<double[]>> toTrees = new ArrayList<>(count);
+
+        // The first landmark is the node farthest from an arbitrary node
+        double[] closestLandmark = new double[nodeCount];
+        Arrays.fill(closestLandmark, Double.MAX_VALUE);
+        int candidate = count > 0 ? farthest(shortestDistances(graph, 0, false), closestLandmark) : -1;
+
+        int picked = 0;
+        while (picked < count && candidate >= 0) {
+            int landmark = candidate;
+            nodes[picked] = landmark;
+            if (!symmetric) {
+                toTrees.add(pool.submit(() -> shortestDistances(graph, landmark, true)));
+            }
+            fromTrees[picked] = shortestDistances(graph, landmark, false);
+            for (int node = 0; node < nodeCount; node++) {
+                closestLandmark[node] = Math.min(closestLandmark[node], fromTrees[picked][node]);
+            }
+            picked++;
+            candidate = farthest(closestLandmark, closestLandmark);
+        }
+
+        int stride = symmetric ? 1 : 2;
+        double[] distances = new double[stride * nodeCount * picked];
+        for (int landmark = 0; landmark < picked; landmark++) {
+            double[] toTree = symmetric ? null : toTrees.get(landmark).join();
+            for (int node = 0; node < nodeCount; node++) {
+                distances[stride * (node * picked + landmark)] = fromTrees[landmark][node];
+                if (!symmetric) {
+                    distances[stride * (node * picked + landmark) + 1] = toTree[node];
+                }
+            }
+            fromTrees[landmark] = null;
+        }
+        return new Landmarks(Arrays.copyOf(nodes, picked), distances, stride);
+    }
+
+    /**
+     * Nodes not reached from any landmark yet come first, so that every connected part of the map gets one
+     *
+     * @param distances        The distances of the nodes
+     * @param closestLandmarks The distance of each node to the closest landmark, 0 for the landmarks
+     * @return The node with the greatest distance that is not a landmark, -1 if every node is a landmark
+     */
+    private static int farthest(double[] distances, double[] closestLandmarks) {
+        int farthest = -1;
+        for (int node = 0; node < distances.length; node++) {
+            if (closestLandmarks[node] > 0 && (farthest == -1 || distances[node] > distances[farthest])) {
+                farthest = node;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * Full Dijkstra search from or to a node
+     *
+     * @param backward true to follow the incoming edges, giving the distances to the node
+     */
+    private static double[] shortestDistances(RoadGraph graph, int source, boolean backward) {
+        double[] distances = new double[graph.nodeCount()];
+        Arrays.fill(distances, Double.MAX_VALUE);
+        IndexedHeap heap = new IndexedHeap(graph.nodeCount());
+        distances[source] = 0.0;
+        heap.push(source, 0.0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            if (backward) {
+                for (int edge = graph.firstIncomingEdge(current); edge < graph.lastIncomingEdge(current); edge++) {
+                    relax(distances, heap, graph.incomingEdgeSource(edge), distances[current] + graph.incomingEdgeWeight(edge));
+                }
+            } else {
+                for (int edge = graph.firstEdge(current); edge < graph.lastEdge(current); edge++) {
+                    relax(distances, heap, graph.edgeTarget(edge), distances[current] + graph.edgeWeight(edge));
+                }
+            }
+        }
+        return distances;
+    }
+
+    private static void relax(double[] distances, IndexedHeap heap, int neighbor, double newDist) {
+        if (newDist < distances[neighbor]) {
+            distances[neighbor] = newDist;
+            heap.push(neighbor, newDist);
+        }
+    }
+
+    /**
+     * @return The number of landmarks
+     */
+    public int count() {
+        return nodes.length;
+    }
+
+    /**
+     * @param landmark The number of the landmark
+     * @return The index of the node of the landmark
+     */
+    public int node(int landmark) {
+        return nodes[landmark];
+    }
+
+    /**
+     * @return The distance from the landmark to the node, Double.MAX_VALUE if unreachable
+     */
+    double fromLandmark(int landmark, int node) {
+        return distances[stride * (node * nodes.length + landmark)];
+    }
+
+    /**
+     * @return The distance from the node to the landmark, Double.MAX_VALUE if unreachable
+     */
+    double toLandmark(int landmark, int node) {
+        return distances[stride * (node * nodes.length + landmark) + stride - 1];
+    }
+
+    /**
+     * Lower bound of the shortest distance between two nodes, from the triangle inequality with every landmark
+     *
+     * @param from The index of the first node
+     * @param to   The index of the second node
+     * @return The lower bound, 0 if no landmark gives one
+     */
+    public double lowerBound(int from, int to) {
+        double bound = 0.0;
+        for (int landmark = 0; landmark < nodes.length; landmark++) {
+            double landmarkToFrom = fromLandmark(landmark, from);
+            double landmarkToTo = fromLandmark(landmark, to);
+            if (landmarkToFrom != Double.MAX_VALUE && landmarkToTo != Double.MAX_VALUE) {
+                bound = Math.max(bound, landmarkToTo - landmarkToFrom);
+            }
+            double fromToLandmark = toLandmark(landmark, from);
+            double toToLandmark = toLandmark(landmark, to);
+            if (fromToLandmark != Double.MAX_VALUE && toToLandmark != Double.MAX_VALUE) {
+                bound = Math.max(bound, fromToLandmark - toToLandmark);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * @return The size in bytes of the distance arrays
+     */
+    public long memoryFootprint() {
+        return 4L * nodes.length + 8L * distances.length;
+    }
+}
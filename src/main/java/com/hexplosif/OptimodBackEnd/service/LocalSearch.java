@@ -0,0 +1,284 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Improvement of a feasible tour of a {@link PickupDeliveryProblem} by local search.
+ * <p>
+ * Three neighbourhoods are tried in turn, the first one improving the tour restarting the loop: 2-opt (reversing a
+ * part of the tour), Or-opt (moving up to {@value #MAX_SEGMENT} consecutive stops elsewhere) and pair relocation
+ * (moving the pickup and the delivery of a request to their cheapest places). Only moves keeping every pickup before
+ * its delivery are considered. The cost of the tour up to each position is kept in both directions, so that the
+ * change of cost of every move is computed in constant time from the leg costs.
+ * <p>
+ * The search stops at a local optimum, or when the deadline passes or the computation is cancelled.
+ */
+public final class LocalSearch {
+
+    /**
+     * Longest sequence of stops moved by Or-opt
+     */
+    private static final int MAX_SEGMENT = 3;
+
+    /**
+     * Smallest gain of an applied move, against rounding loops
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Improve a tour
+     *
+     * @param problem  The problem
+     * @param tour     A feasible tour, which is not modified
+     * @param deadline The {@link System#nanoTime()} after which the best tour found so far is returned
+     * @return A feasible tour costing no more than the given one
+     */
+    public int[] improve(PickupDeliveryProblem problem, int[] tour, long deadline) {
+        return improve(problem, tour, deadline, () -> false, better -> {
+        });
+    }
+
+    /**
+     * Improve a tour, telling each better tour found
+     *
+     * @param cancelled Whether the computation was cancelled, checked along with the deadline
+     * @param listener  Called with a copy of the tour after each round of moves improving it, the last one being the
+     *                  returned tour
+     * @see #improve(PickupDeliveryProblem, int[], long)
+     */
+    public int[] improve(PickupDeliveryProblem problem, int[] tour, long deadline, BooleanSupplier cancelled,
+                         Consumer<int[]> listener) {
+        Route route = new Route(problem, tour, deadline, cancelled);
+        boolean improved = true;
+        while (improved && !route.timedOut()) {
+            improved = route.twoOpt() || route.orOpt() || route.relocatePairs();
+            if (improved) {
+                listener.accept(route.tour());
+            }
+        }
+        return route.tour();
+    }
+
+    /**
+     * Tour being improved, between two visits of the warehouse
+     */
+    private static final class Route {
+
+        private final PickupDeliveryProblem problem;
+
+        private final long deadline;
+
+        private final BooleanSupplier cancelled;
+
+        /**
+         * The stops, the warehouse first and last
+         */
+        private int[] stops;
+
+        private int[] buffer;
+
+        /**
+         * Position in the route of each stop
+         */
+        private final int[] positions;
+
+        /**
+         * Cost from the start to each position, following the route and against it
+         */
+        private final double[] forward;
+
+        private final double[] backward;
+
+        Route(PickupDeliveryProblem problem, int[] tour, long deadline, BooleanSupplier cancelled) {
+            this.problem = problem;
+            this.deadline = deadline;
+            this.cancelled = cancelled;
+            this.stops = new int[tour.length + 2];
+            this.buffer = new int[tour.length + 2];
+            System.arraycopy(tour, 0, stops, 1, tour.length);
+            this.positions = new int[problem.stopCount()];
+            this.forward = new double[stops.length];
+            this.backward = new double[stops.length];
+            update();
+        }
+
+        int[] tour() {
+            int[] tour = new int[stops.length - 2];
+            System.arraycopy(stops, 1, tour, 0, tour.length);
+            return tour;
+        }
+
+        boolean timedOut() {
+            return System.nanoTime() > deadline || cancelled.getAsBoolean();
+        }
+
+        private double cost(int fromPosition, int toPosition) {
+            return problem.cost(stops[fromPosition], stops[toPosition]);
+        }
+
+        /**
+         * Recompute the positions and costs after a move
+         */
+        private void update() {
+            for (int position = 1; position < stops.length; position++) {
+                positions[stops[position]] = position;
+                forward[position] = forward[position - 1] + cost(position - 1, position);
+                backward[position] = backward[position - 1] + cost(position, position - 1);
+            }
+        }
+
+        /**
+         * Position of the other stop of the request of a stop
+         */
+        private int partner(int stop) {
+            int request = PickupDeliveryProblem.request(stop);
+            return positions[PickupDeliveryProblem.isPickup(stop) ? PickupDeliveryProblem.delivery(request)
+                    : PickupDeliveryProblem.pickup(request)];
+        }
+
+        /**
+         * Reverse the stops between positions {@code i} and {@code j}, which is feasible as long as no request is
+         * picked up and delivered in between
+         *
+         * @return true if the tour was improved
+         */
+        boolean twoOpt() {
+            boolean improved = false;
+            int last = stops.length - 2;
+            for (int i = 1; i < last; i++) {
+                if (timedOut()) return improved;
+                for (int j = i + 1; j <= last; j++) {
+                    int stop = stops[j];
+                    if (!PickupDeliveryProblem.isPickup(stop) && partner(stop) >= i) {
+                        break; // Every longer reversal contains this request too
+                    }
+                    double delta = problem.cost(stops[i - 1], stops[j]) + (backward[j] - backward[i])
+                            + problem.cost(stops[i], stops[j + 1])
+                            - cost(i - 1, i) - (forward[j] - forward[i]) - cost(j, j + 1);
+                    if (delta < -EPSILON) {
+                        reverse(i, j);
+                        improved = true;
+                    }
+                }
+            }
+            return improved;
+        }
+
+        private void reverse(int i, int j) {
+            for (int left = i, right = j; left < right; left++, right--) {
+                int stop = stops[left];
+                stops[left] = stops[right];
+                stops[right] = stop;
+            }
+            update();
+        }
+
+        /**
+         * Move the stops between positions {@code i} and {@code i + length - 1} after the stop at position
+         * {@code k}, which is feasible as long as the pickups of their deliveries stay before them and the deliveries
+         * of their pickups after them
+         *
+         * @return true if the tour was improved
+         */
+        boolean orOpt() {
+            boolean improved = false;
+            int last = stops.length - 2;
+            for (int length = 1; length <= MAX_SEGMENT; length++) {
+                for (int i = 1; i + length - 1 <= last; i++) {
+                    if (timedOut()) return improved;
+                    int end = i + length - 1;
+
+                    // Insertion positions keeping the precedences of the moved stops
+                    int lowest = 0;
+                    int highest = last;
+                    for (int position = i; position <= end; position++) {
+                        int partner = partner(stops[position]);
+                        if (partner >= i && partner <= end) continue;
+                        if (PickupDeliveryProblem.isPickup(stops[position])) {
+                            highest = Math.min(highest, partner - 1);
+                        } else {
+                            lowest = Math.max(lowest, partner);
+                        }
+                    }
+
+                    double removal = cost(i - 1, i) + cost(end, end + 1) - cost(i - 1, end + 1);
+                    for (int k = lowest; k <= highest; k++) {
+                        if (k >= i - 1 && k <= end) continue;
+                        double delta = cost(k, i) + cost(end, k + 1) - cost(k, k + 1) - removal;
+                        if (delta < -EPSILON) {
+                            move(i, end, k);
+                            improved = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            return improved;
+        }
+
+        private void move(int start, int end, int after) {
+            int count = 0;
+            for (int position = 0; position < stops.length; position++) {
+                if (position >= start && position <= end) continue;
+                buffer[count++] = stops[position];
+                if (position == after) {
+                    for (int moved = start; moved <= end; moved++) {
+                        buffer[count++] = stops[moved];
+                    }
+                }
+            }
+            swapBuffer();
+        }
+
+        /**
+         * Take the pickup and the delivery of a request out of the tour and put them back at their cheapest places
+         *
+         * @return true if the tour was improved
+         */
+        boolean relocatePairs() {
+            boolean improved = false;
+            int[] reduced = new int[stops.length - 2];
+            for (int request = 0; request < problem.requestCount(); request++) {
+                if (timedOut()) return improved;
+                int pickup = PickupDeliveryProblem.pickup(request);
+                int delivery = PickupDeliveryProblem.delivery(request);
+                int pickupPosition = positions[pickup];
+                int deliveryPosition = positions[delivery];
+
+                double removal;
+                if (deliveryPosition == pickupPosition + 1) {
+                    removal = forward[deliveryPosition + 1] - forward[pickupPosition - 1]
+                            - cost(pickupPosition - 1, deliveryPosition + 1);
+                } else {
+                    removal = cost(pickupPosition - 1, pickupPosition) + cost(pickupPosition, pickupPosition + 1)
+                            - cost(pickupPosition - 1, pickupPosition + 1)
+                            + cost(deliveryPosition - 1, deliveryPosition) + cost(deliveryPosition, deliveryPosition + 1)
+                            - cost(deliveryPosition - 1, deliveryPosition + 1);
+                }
+
+                int count = 0;
+                for (int stop : stops) {
+                    if (stop != pickup && stop != delivery) {
+                        reduced[count++] = stop;
+                    }
+                }
+                PairInsertion insertion = PairInsertion.cheapest(problem, reduced, count, request);
+                if (insertion.getCost() < removal - EPSILON) {
+                    System.arraycopy(reduced, 0, buffer, 0, count);
+                    insertion.apply(buffer, count, request);
+                    swapBuffer();
+                    improved = true;
+                }
+            }
+            return improved;
+        }
+
+        private void swapBuffer() {
+            int[] previous = stops;
+            stops = buffer;
+            buffer = previous;
+            update();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+import lombok.Value;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the nodes and segments of a map file in a single streaming pass, applying the same checks as
+ * {@link OptimodService#loadNode(String)} and {@link OptimodService#loadSegment(String)}.
+ * <p>
+ * Only the current chunk of nodes and the current chunk of segments are held in memory: each one is handed to a
+ * {@link Handler} as soon as it is full, so a file of any size is read in bounded memory.
+ */
+public final class MapReader {
+
+    /**
+     * Receives the nodes and segments as they are read
+     */
+    public interface Handler {
+
+        /**
+         * @param nodes The next chunk of nodes, in file order. The list is reused once the call returns.
+         */
+        void nodes(List<Node> nodes);
+
+        /**
+         * @param segments The next chunk of segments, in file order. The list is reused once the call returns.
+         */
+        void segments(List<Segment> segments);
+
+        /**
+         * Forget the chunks handed so far, the file being read again from the start
+         */
+        void clear();
+    }
+
+    /**
+     * Numbers of elements read
+     */
+    @Value
+    public static class Counts {
+
+        long nodeCount;
+
+        long segmentCount;
+    }
+
+    private MapReader() {
+    }
+
+    /**
+     * Read a map file
+     *
+     * @param file      The XML file
+     * @param chunkSize The largest number of nodes or segments handed at once
+     * @param handler   Receives the chunks
+     * @return The numbers of nodes and segments read
+     * @throws IOException           If the file cannot be read
+     * @throws IllegalStateException If the file is not a valid map, possibly after some chunks were handed
+     */
+    public static Counts read(Path file, int chunkSize, Handler handler) throws IOException, IllegalStateException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        List<Node> nodes = new ArrayList<>(chunkSize);
+        List<Segment> segments = new ArrayList<>(chunkSize);
+        long nodeCount = 0;
+        long segmentCount = 0;
+
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(input);
+            try {
+                boolean root = true;
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String name = reader.getPrefix() == null || reader.getPrefix().isEmpty() ? reader.getLocalName()
+                            : reader.getPrefix() + ":" + reader.getLocalName();
+
+                    if (root) {
+                        if (!name.equals("reseau")) {
+                            throw new IllegalStateException("No 'reseau' tag found in the XML file");
+                        }
+                        root = false;
+                    } else if (name.equals("noeud")) {
+                        nodes.add(readNode(reader, nodeCount++));
+                        if (nodes.size() == chunkSize) {
+                            handler.nodes(nodes);
+                            nodes.clear();
+                        }
+                    } else if (name.equals("troncon")) {
+                        segments.add(readSegment(reader, segmentCount++));
+                        if (segments.size() == chunkSize) {
+                            handler.segments(segments);
+                            segments.clear();
+                        }
+                    } else if (!name.equals("reseau")) {
+                        throw new IllegalStateException("Invalid tag found in the XML file");
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Invalid XML file: " + e.getMessage());
+        }
+
+        if (nodeCount == 0) {
+            throw new IllegalStateException("No 'noeud' tag found in the XML file");
+        }
+        if (segmentCount == 0) {
+            throw new IllegalStateException("No 'troncon' tag found in the XML file");
+        }
+        if (!nodes.isEmpty()) {
+            handler.nodes(nodes);
+        }
+        if (!segments.isEmpty()) {
+            handler.segments(segments);
+        }
+        return new Counts(nodeCount, segmentCount);
+    }
+
+    private static Node readNode(XMLStreamReader reader, long i) {
+        String idNoeud = attribute(reader, "id");
+        if (idNoeud.isEmpty()) {
+            throw new IllegalStateException("No id found for the node : " + i);
+        }
+        String latitudeNoeud = attribute(reader, "latitude");
+        if (latitudeNoeud.isEmpty()) {
+            throw new IllegalStateException("No latitude found for the node : " + i);
+        }
+        String longitudeNoeud = attribute(reader, "longitude");
+        if (longitudeNoeud.isEmpty()) {
+            throw new IllegalStateException("No longitude found for the node : " + i);
+        }
+
+        Node node = new Node();
+        node.setId(parseLong(idNoeud));
+        node.setLatitude(parseDouble(latitudeNoeud));
+        node.setLongitude(parseDouble(longitudeNoeud));
+        return node;
+    }
+
+    private static Segment readSegment(XMLStreamReader reader, long i) {
+        String origineTroncon = attribute(reader, "origine");
+        if (origineTroncon.isEmpty()) {
+            throw new IllegalStateException("No origin found for the segment : " + i);
+        }
+        String destinationTroncon = attribute(reader, "destination");
+        if (destinationTroncon.isEmpty()) {
+            throw new IllegalStateException("No destination found for the segment : " + i);
+        }
+        String longueurTroncon = attribute(reader, "longueur");
+        if (longueurTroncon.isEmpty()) {
+            throw new IllegalStateException("No length found for the segment : " + i);
+        }
+
+        Segment segment = new Segment();
+        segment.setIdOrigin(parseLong(origineTroncon));
+        segment.setIdDestination(parseLong(destinationTroncon));
+        segment.setLength(parseDouble(longueurTroncon));
+        // Not every segment has a street name
+        segment.setName(attribute(reader, "nomRue"));
+        return segment;
+    }
+
+    /**
+     * @return The value of the attribute, empty if it is missing as with the DOM
+     */
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? value : "";
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+}
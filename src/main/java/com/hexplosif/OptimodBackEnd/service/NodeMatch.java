@@ -0,0 +1,21 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import lombok.Value;
+
+/**
+ * Node of the map found near a point
+ */
+@Value
+public class NodeMatch {
+
+    Long nodeId;
+
+    double latitude;
+
+    double longitude;
+
+    /**
+     * Great-circle distance in meters between the point and the node
+     */
+    double distance;
+}
@@ -3,17 +3,24 @@ package com.hexplosif.OptimodBackEnd.service;
 import com.hexplosif.OptimodBackEnd.model.*;
 import com.hexplosif.OptimodBackEnd.repository.CourierRepository;
 import com.hexplosif.OptimodBackEnd.repository.DeliveryRequestRepository;
+import com.hexplosif.OptimodBackEnd.repository.MapBulkRepository;
 import com.hexplosif.OptimodBackEnd.repository.NodeRepository;
 import com.hexplosif.OptimodBackEnd.repository.SegmentRepository;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 import javax.xml.parsers.DocumentBuilder;
@@ -23,6 +30,8 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -38,12 +47,96 @@ public class OptimodService {
     @Autowired
     private SegmentRepository segmentRepository;
 
+    @Autowired
+    private MapBulkRepository mapBulkRepository;
+
     @Autowired
     private DeliveryRequestRepository deliveryRequestRepository;
 
     @Autowired
     private CourierRepository courierRepository;
 
+    @Autowired
+    private GraphSnapshotService graphSnapshotService;
+
+    @Autowired
+    private RoutePlanner routePlanner;
+
+    @Autowired
+    private RouteCache routeCache;
+
+    @Autowired
+    private IncrementalRoutes incrementalRoutes;
+
+    @Autowired
+    private CourierDispatcher courierDispatcher;
+
+    @Autowired
+    private TileService tileService;
+
+    @Value("${optimod.routing.algorithm:DIJKSTRA}")
+    private RoutingAlgorithm defaultAlgorithm;
+
+    @Value("${optimod.routing.solver:AUTO}")
+    private RoutingSolver defaultSolver;
+
+    @Value("${optimod.routing.time-budget-ms:1000}")
+    private long defaultTimeBudget;
+
+    @Value("${optimod.map.chunk-size:1000}")
+    private int mapChunkSize;
+
+    @Value("${optimod.map.parse-threads:0}")
+    private int mapParseThreads;
+
+    @Value("${optimod.viewport.page-size:1000}")
+    private int viewportPageSize;
+
+    @Value("${optimod.viewport.max-page-size:10000}")
+    private int viewportMaxPageSize;
+
+    /**
+     * Replace the map with the nodes and segments of an XML file, parsed on {@code optimod.map.parse-threads} threads
+     * and inserted by chunks of {@code optimod.map.chunk-size} elements. A node whose id is repeated keeps its last
+     * coordinates, as with {@link #loadNode(String)}. If the file is invalid or cannot be saved, the map is left empty.
+     *
+     * @param XMLFileName The XML file
+     * @return The numbers of nodes and segments read
+     * @throws IllegalStateException If the file is not a valid map, or if nodes are used by delivery requests
+     * @throws IOException           If the file cannot be read
+     */
+    public MapReader.Counts loadMap(String XMLFileName) throws IllegalStateException, IOException {
+        deleteAllNodes();
+        deleteAllSegments();
+        try {
+            int threads = mapParseThreads > 0 ? mapParseThreads : Runtime.getRuntime().availableProcessors();
+            return ParallelMapReader.read(Paths.get(XMLFileName), threads, mapChunkSize, new MapReader.Handler() {
+                @Override
+                public void nodes(List<Node> nodes) {
+                    mapBulkRepository.mergeNodes(nodes);
+                }
+
+                @Override
+                public void segments(List<Segment> segments) {
+                    mapBulkRepository.insertSegments(segments);
+                }
+
+                @Override
+                public void clear() {
+                    mapBulkRepository.deleteNodes();
+                    mapBulkRepository.deleteSegments();
+                }
+            });
+        } catch (RuntimeException | IOException e) {
+            // The chunks saved before the error do not make a map
+            mapBulkRepository.deleteNodes();
+            mapBulkRepository.deleteSegments();
+            throw e;
+        } finally {
+            graphSnapshotService.invalidate();
+        }
+    }
+
     /**
      * Load the nodes from the XML file
      *
@@ -75,7 +168,7 @@ public class OptimodService {
                 throw new IllegalStateException("No 'noeud' tag found in the XML file");
             }
 
-            List<Node> tmpListNodes = (List<Node>) nodeRepository.findAll();
+            List<Node> tmpListNodes = new ArrayList<>();
 
             for (int i = 0; i < nodeList.getLength(); i++) {
                 org.w3c.dom.Node noeud = nodeList.item(i);
@@ -87,7 +180,9 @@ public class OptimodService {
                 }
             }
 
-            nodeRepository.saveAll(tmpListNodes);
+            // The nodes already saved are only updated if the file has them too
+            mapBulkRepository.mergeNodes(tmpListNodes);
+            graphSnapshotService.invalidate();
 
         } catch (Exception e) {
             throw new Exception(e.getMessage());
@@ -146,7 +241,7 @@ public class OptimodService {
                 throw new IllegalStateException("No 'troncon' tag found in the XML file");
             }
 
-            List<Segment> tmpListSegments = (List<Segment>) segmentRepository.findAll();
+            List<Segment> tmpListSegments = new ArrayList<>();
 
             for (int i = 0; i < listeTroncons.getLength(); i++) {
                 org.w3c.dom.Node troncon = listeTroncons.item(i);
@@ -185,7 +280,8 @@ public class OptimodService {
                 }
             }
 
-            segmentRepository.saveAll(tmpListSegments);
+            mapBulkRepository.insertSegments(tmpListSegments);
+            graphSnapshotService.invalidate();
 
         } catch (Exception e) {
             throw new Exception(e.getMessage());
@@ -300,12 +396,26 @@ public class OptimodService {
     }
 
     /**
-     * Get all nodes
+     * Get all nodes, ordered by id
      *
      * @return The list of nodes
      */
     public Iterable<Node> findAllNodes() {
-        return nodeRepository.findAll();
+        // The index on the coordinates may otherwise be scanned instead of the primary key
+        return nodeRepository.findAll(Sort.by("id"));
+    }
+
+    /**
+     * Get a page of the nodes inside a viewport, ordered by id
+     *
+     * @param viewport The bounding box and the page
+     * @return The nodes of the page
+     * @throws IllegalStateException If the viewport or the page is invalid
+     */
+    public List<Node> findNodesInViewport(Viewport viewport) throws IllegalStateException {
+        Pageable pageable = toPageable(viewport);
+        return nodeRepository.findByLatitudeBetweenAndLongitudeBetween(viewport.getMinLatitude(),
+                viewport.getMaxLatitude(), viewport.getMinLongitude(), viewport.getMaxLongitude(), pageable);
     }
 
     /**
@@ -315,6 +425,7 @@ public class OptimodService {
      */
     public void deleteNodeById(Long id) {
         nodeRepository.deleteById(id);
+        graphSnapshotService.invalidate();
     }
 
     /**
@@ -326,6 +437,7 @@ public class OptimodService {
     public Node saveNode(Node node) {
         Node savedNode;
         savedNode = nodeRepository.save(node);
+        graphSnapshotService.invalidate();
         return savedNode;
     }
 
@@ -334,14 +446,14 @@ public class OptimodService {
      */
     public void deleteAllNodes() throws IllegalStateException {
         // Check if the nodes are assigned to a delivery request, if so, throw an exception
-        List<DeliveryRequest> deliveryRequests = (List<DeliveryRequest>) deliveryRequestRepository.findAll();
-        List<Node> nodes = (List<Node>) nodeRepository.findAll();
-        for (DeliveryRequest deliveryRequest : deliveryRequests) {
-            if (nodes.stream().anyMatch(node -> node.getId().equals(deliveryRequest.getIdPickup()) || node.getId().equals(deliveryRequest.getIdDelivery()) || node.getId().equals(deliveryRequest.getIdWarehouse()))) {
+        for (DeliveryRequest deliveryRequest : deliveryRequestRepository.findAll()) {
+            if (Stream.of(deliveryRequest.getIdPickup(), deliveryRequest.getIdDelivery(), deliveryRequest.getIdWarehouse())
+                    .anyMatch(id -> id != null && nodeRepository.existsById(id))) {
                 throw new IllegalStateException("A node is assigned to a delivery request\nDelete the delivery requests first");
             }
         }
-        nodeRepository.deleteAll();
+        mapBulkRepository.deleteNodes();
+        graphSnapshotService.invalidate();
     }
 
     /**
@@ -352,6 +464,7 @@ public class OptimodService {
      */
     public Iterable<Node> createNodes(Iterable<Node> nodes) {
         nodeRepository.saveAll(nodes);
+        graphSnapshotService.invalidate();
         return nodes;
     }
 
@@ -374,6 +487,36 @@ public class OptimodService {
         return segmentRepository.findAll();
     }
 
+    /**
+     * Get a page of the segments with at least one end inside a viewport, ordered by id. Segments crossing the
+     * viewport with both ends outside of it are not returned.
+     *
+     * @param viewport The bounding box and the page
+     * @return The segments of the page
+     * @throws IllegalStateException If the viewport or the page is invalid
+     */
+    public List<Segment> findSegmentsInViewport(Viewport viewport) throws IllegalStateException {
+        Pageable pageable = toPageable(viewport);
+        return segmentRepository.findWithEndInBox(viewport.getMinLatitude(), viewport.getMaxLatitude(),
+                viewport.getMinLongitude(), viewport.getMaxLongitude(), pageable);
+    }
+
+    private Pageable toPageable(Viewport viewport) {
+        if (viewport.getMinLatitude() == null || viewport.getMaxLatitude() == null
+                || viewport.getMinLongitude() == null || viewport.getMaxLongitude() == null) {
+            throw new IllegalStateException("The bounds of the viewport are required.");
+        }
+        if (viewport.getMinLatitude() > viewport.getMaxLatitude() || viewport.getMinLongitude() > viewport.getMaxLongitude()) {
+            throw new IllegalStateException("The minimum bounds of the viewport must not exceed the maximum bounds.");
+        }
+        int page = viewport.getPage() != null ? viewport.getPage() : 0;
+        int size = viewport.getSize() != null ? viewport.getSize() : viewportPageSize;
+        if (page < 0 || size < 1 || size > viewportMaxPageSize) {
+            throw new IllegalStateException("The page must be positive and its size between 1 and " + viewportMaxPageSize + ".");
+        }
+        return PageRequest.of(page, size, Sort.by("id"));
+    }
+
     /**
      * Delete a segment by its id
      *
@@ -381,6 +524,7 @@ public class OptimodService {
      */
     public void deleteSegmentById(Long id) {
         segmentRepository.deleteById(id);
+        graphSnapshotService.invalidate();
     }
 
     /**
@@ -392,6 +536,7 @@ public class OptimodService {
     public Segment saveSegment(Segment segment) {
         Segment savedSegment;
         savedSegment = segmentRepository.save(segment);
+        graphSnapshotService.invalidate();
         return savedSegment;
     }
 
@@ -400,7 +545,8 @@ public class OptimodService {
      * Delete all segments
      */
     public void deleteAllSegments() {
-        segmentRepository.deleteAll();
+        mapBulkRepository.deleteSegments();
+        graphSnapshotService.invalidate();
     }
 
     /**
@@ -411,6 +557,7 @@ public class OptimodService {
      */
     public Iterable<Segment> createSegments(Iterable<Segment> segments) {
         segmentRepository.saveAll(segments);
+        graphSnapshotService.invalidate();
         return segments;
     }
 
@@ -422,6 +569,7 @@ public class OptimodService {
      */
     public Iterable<DeliveryRequest> createDeliveryRequests(Iterable<DeliveryRequest> deliveryRequests) {
         deliveryRequestRepository.saveAll(deliveryRequests);
+        deliveryRequests.forEach(incrementalRoutes::requestChanged);
         return deliveryRequests;
     }
 
@@ -472,7 +620,9 @@ public class OptimodService {
             optionalDeliveryRequest.get().setIdCourier(deliveryRequest.getIdCourier());
         }
 
-        return deliveryRequestRepository.save(optionalDeliveryRequest.get());
+        DeliveryRequest savedDeliveryRequest = deliveryRequestRepository.save(optionalDeliveryRequest.get());
+        incrementalRoutes.requestChanged(savedDeliveryRequest);
+        return savedDeliveryRequest;
     }
 
     /**
@@ -488,6 +638,7 @@ public class OptimodService {
                 throw new IllegalStateException("Delivery request not found");
             }
             deliveryRequestRepository.deleteById(id);
+            incrementalRoutes.requestRemoved(id);
         } catch (Exception e) {
             throw new IllegalStateException(e.getMessage());
         }
@@ -504,6 +655,7 @@ public class OptimodService {
         try {
             DeliveryRequest savedDeliveryRequest;
             savedDeliveryRequest = deliveryRequestRepository.save(delivery_request);
+            incrementalRoutes.requestChanged(savedDeliveryRequest);
             return savedDeliveryRequest;
         } catch (Exception e) {
             throw new IllegalStateException(e.getMessage());
@@ -519,6 +671,7 @@ public class OptimodService {
     public void deleteAllDeliveryRequests() throws IllegalStateException {
         try {
             deliveryRequestRepository.deleteAll();
+            incrementalRoutes.clear();
         } catch (Exception e) {
             throw new IllegalStateException(e.getMessage());
         }
@@ -647,6 +800,7 @@ public class OptimodService {
 
             deliveryRequest.get().setIdCourier(idCourier);
             deliveryRequestRepository.save(deliveryRequest.get());
+            incrementalRoutes.requestChanged(deliveryRequest.get());
         } catch (Exception e) {
             throw new IllegalStateException(e.getMessage());
         }
@@ -654,11 +808,49 @@ public class OptimodService {
 
 
     /**
-     * Calculate the optimal route.
+     * Calculate the optimal route with the default options.
      *
      * @return The list of node IDs representing the optimal route.
      */
     public Map<Long, List<Long>> calculateOptimalRoute() throws IllegalStateException {
+        return calculateOptimalRoute(new RoutingOptions());
+    }
+
+    /**
+     * Calculate the optimal route.
+     *
+     * @param options The options of the computation
+     * @return The list of node IDs representing the optimal route.
+     */
+    public Map<Long, List<Long>> calculateOptimalRoute(RoutingOptions options) throws IllegalStateException {
+        // Nothing is told before the end, so the routes improved meanwhile are not built
+        return calculateOptimalRoute(options, new RouteListener() {
+            @Override
+            public void routeFound(Long courierId, List<Long> route, double length) {
+            }
+
+            @Override
+            public boolean wantsImprovements() {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Calculate the optimal route, telling each route as soon as it is known.
+     *
+     * @param options  The options of the computation
+     * @param listener Receives the route of each courier
+     * @return The list of node IDs representing the optimal route.
+     * @throws java.util.concurrent.CancellationException If the calling thread is interrupted
+     */
+    public Map<Long, List<Long>> calculateOptimalRoute(RoutingOptions options, RouteListener listener) throws IllegalStateException {
+        if (options.getDeadlineMs() != null && options.getDeadlineMs() < 0) {
+            throw new IllegalStateException("The deadline must not be negative.");
+        }
+        long timeBudget = options.getDeadlineMs() != null ? options.getDeadlineMs() : defaultTimeBudget;
+        long deadline = System.nanoTime() + timeBudget * 1_000_000;
+
         // Fetch all delivery requests
         List<DeliveryRequest> deliveryRequests = (List<DeliveryRequest>) deliveryRequestRepository.findAll();
 
@@ -673,24 +865,89 @@ public class OptimodService {
             throw new IllegalStateException("No couriers found.");
         }
 
-        Map<Long, List<Long>> listeRoutes = new HashMap<>();
-
-        int nbCouriers = courierList.size();
+        // The graph is shared by all couriers and only rebuilt when the map changes
+        GraphSnapshot snapshot = graphSnapshotService.getSnapshot();
+        RoutingAlgorithm algorithm = options.getAlgorithm() != null ? options.getAlgorithm() : defaultAlgorithm;
+        RoutingSolver solver = options.getSolver() != null ? options.getSolver() : defaultSolver;
 
-        for (int i = 0; i < nbCouriers; i++) {
-            int finalI = i;
+        Map<Long, List<DeliveryRequest>> deliveryRequestsByCourier = new LinkedHashMap<>();
+        Map<Long, RouteCache.Key> cacheKeys = new LinkedHashMap<>();
+        Map<Long, List<Long>> cachedRoutes = new LinkedHashMap<>();
+        for (Courier courier : courierList) {
             List<DeliveryRequest> deliveryRequestsCourier = deliveryRequests.stream()
                     .filter(deliveryRequest -> deliveryRequest.getIdCourier() != null)
-                    .filter(deliveryRequest -> deliveryRequest.getIdCourier().equals(courierList.get(finalI).getId()))
+                    .filter(deliveryRequest -> deliveryRequest.getIdCourier().equals(courier.getId()))
                     .collect(Collectors.toList());
 
-
             if (!deliveryRequestsCourier.isEmpty()) {
-                Map<Long, Map<Long, Double>> graph = buildGraph();
-                validateGraph(graph, deliveryRequestsCourier);
+                // The routes kept up to date since the last computation are used as they are
+                if (Boolean.TRUE.equals(options.getIncremental())) {
+                    Set<Long> deliveryRequestIds = deliveryRequestsCourier.stream().map(DeliveryRequest::getId)
+                            .collect(Collectors.toSet());
+                    List<Long> incrementalRoute = incrementalRoutes.route(courier.getId(), snapshot, deliveryRequestIds);
+                    if (incrementalRoute != null) {
+                        cachedRoutes.put(courier.getId(), incrementalRoute);
+                        continue;
+                    }
+                }
 
-                List<Long> route = findOptimalRoute(graph, deliveryRequestsCourier);
-                listeRoutes.put(courierList.get(i).getId(), route);
+                // The couriers whose requests did not change keep their last route
+                RouteCache.Key key = RouteCache.key(snapshot.getMapVersion(), courier.getId(), algorithm, solver,
+                        timeBudget, deliveryRequestsCourier);
+                List<Long> cachedRoute = routeCache.get(key);
+                if (cachedRoute != null) {
+                    cachedRoutes.put(courier.getId(), cachedRoute);
+                    continue;
+                }
+                validateGraph(snapshot.getGraph(), deliveryRequestsCourier);
+                deliveryRequestsByCourier.put(courier.getId(), deliveryRequestsCourier);
+                cacheKeys.put(courier.getId(), key);
+            }
+        }
+
+        List<Long> courierIds = new ArrayList<>(cachedRoutes.keySet());
+        courierIds.addAll(deliveryRequestsByCourier.keySet());
+        listener.started(courierIds);
+        cachedRoutes.forEach((courierId, route) -> {
+            listener.routeFound(courierId, route, snapshot.getGraph().pathLength(route));
+            listener.courierFinished(courierId);
+        });
+
+        // The couriers are independent and planned in parallel
+        Map<Long, List<Long>> plannedRoutes = new ConcurrentHashMap<>();
+        RoutePlanner.Listener plannerListener = new RoutePlanner.Listener() {
+            @Override
+            public void routeFound(Long courierId, CourierRoute route) {
+                plannedRoutes.put(courierId, route.nodes(snapshot.getGraph()));
+                listener.routeFound(courierId, plannedRoutes.get(courierId), route.getCost());
+            }
+
+            @Override
+            public void courierFinished(Long courierId) {
+                listener.courierFinished(courierId);
+            }
+
+            @Override
+            public boolean wantsImprovements() {
+                return listener.wantsImprovements();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return listener.isCancelled();
+            }
+        };
+        routePlanner.planRoutes(snapshot, deliveryRequestsByCourier, algorithm, solver, deadline, plannerListener).forEach((courierId, route) -> {
+            routeCache.put(cacheKeys.get(courierId), plannedRoutes.get(courierId));
+            incrementalRoutes.store(courierId, route);
+        });
+
+        Map<Long, List<Long>> listeRoutes = new LinkedHashMap<>();
+        for (Courier courier : courierList) {
+            List<Long> route = cachedRoutes.containsKey(courier.getId()) ? cachedRoutes.get(courier.getId())
+                    : plannedRoutes.get(courier.getId());
+            if (route != null) {
+                listeRoutes.put(courier.getId(), route);
             }
         }
 
@@ -702,6 +959,130 @@ public class OptimodService {
         return listeRoutes;
     }
 
+    /**
+     * Calculate the optimal route, describing each route with its stops, leg lengths and geometry.
+     *
+     * @param options The options of the computation
+     * @return The route of each courier
+     */
+    public Map<Long, CompactRoute> calculateCompactRoute(RoutingOptions options) throws IllegalStateException {
+        Map<Long, List<Long>> routes = calculateOptimalRoute(options);
+        RoadGraph graph = graphSnapshotService.getSnapshot().getGraph();
+        List<DeliveryRequest> deliveryRequests = (List<DeliveryRequest>) deliveryRequestRepository.findAll();
+
+        Map<Long, CompactRoute> compactRoutes = new LinkedHashMap<>();
+        routes.forEach((courierId, route) -> compactRoutes.put(courierId, CompactRoute.of(graph, route,
+                deliveryRequests.stream().filter(deliveryRequest -> courierId.equals(deliveryRequest.getIdCourier()))
+                        .collect(Collectors.toList()))));
+        return compactRoutes;
+    }
+
+    /**
+     * Assign the delivery requests without a courier to the couriers, and save the assignments
+     *
+     * @param objective What the assignment minimizes, the length of the longest route when null
+     * @return The new assignments
+     * @throws IllegalStateException If there are no couriers or no requests to assign, or if a warehouse has more than
+     *                               {@code optimod.dispatch.max-stops} stops
+     */
+    public CourierDispatcher.Result dispatchCouriers(DispatchObjective objective) throws IllegalStateException {
+        List<DeliveryRequest> deliveryRequests = (List<DeliveryRequest>) deliveryRequestRepository.findAll();
+        if (deliveryRequests.stream().noneMatch(deliveryRequest -> deliveryRequest.getIdCourier() == null)) {
+            throw new IllegalStateException("No unassigned delivery requests found.");
+        }
+        List<Long> courierIds = ((List<Courier>) courierRepository.findAll()).stream().map(Courier::getId)
+                .collect(Collectors.toList());
+        if (courierIds.isEmpty()) {
+            throw new IllegalStateException("No couriers found.");
+        }
+
+        CourierDispatcher.Result result = courierDispatcher.dispatch(graphSnapshotService.getSnapshot(), courierIds,
+                deliveryRequests, objective != null ? objective : DispatchObjective.MAX_LENGTH);
+
+        // All the assignments are written in a single batch
+        Map<Long, Long> courierByRequest = new HashMap<>();
+        result.getAssignments().forEach((courierId, requestIds) ->
+                requestIds.forEach(requestId -> courierByRequest.put(requestId, courierId)));
+        List<DeliveryRequest> assigned = deliveryRequests.stream()
+                .filter(deliveryRequest -> courierByRequest.containsKey(deliveryRequest.getId()))
+                .collect(Collectors.toList());
+        assigned.forEach(deliveryRequest -> deliveryRequest.setIdCourier(courierByRequest.get(deliveryRequest.getId())));
+        deliveryRequestRepository.saveAll(assigned);
+        incrementalRoutes.clear();
+        return result;
+    }
+
+    /**
+     * Find the nodes of the map nearest to a point
+     *
+     * @param latitude  The latitude of the point
+     * @param longitude The longitude of the point
+     * @param k         The number of nodes to find, 1 when null
+     * @return The k nearest nodes, nearest first
+     * @throws IllegalStateException If the point or k is invalid, or if no node of the map has coordinates
+     */
+    public List<NodeMatch> findNearestNodes(Double latitude, Double longitude, Integer k) throws IllegalStateException {
+        int count = k != null ? k : 1;
+        if (count < 1) {
+            throw new IllegalStateException("The number of nodes must be positive.");
+        }
+        GraphSnapshot snapshot = getLocatedSnapshot();
+        validateCoordinates(latitude, longitude);
+
+        List<NodeMatch> matches = new ArrayList<>(count);
+        for (int node : snapshot.getSpatialIndex().nearest(latitude, longitude, count)) {
+            matches.add(toNodeMatch(snapshot.getGraph(), node, latitude, longitude));
+        }
+        return matches;
+    }
+
+    /**
+     * Match each point with the node of the map nearest to it
+     *
+     * @param points The points
+     * @return The nearest node of each point, in the order of the points
+     * @throws IllegalStateException If a point is invalid, or if no node of the map has coordinates
+     */
+    public List<NodeMatch> snapToNodes(List<Coordinates> points) throws IllegalStateException {
+        GraphSnapshot snapshot = getLocatedSnapshot();
+        for (Coordinates point : points) {
+            validateCoordinates(point.getLatitude(), point.getLongitude());
+        }
+
+        List<NodeMatch> matches = new ArrayList<>(points.size());
+        for (Coordinates point : points) {
+            int node = snapshot.getSpatialIndex().nearest(point.getLatitude(), point.getLongitude());
+            matches.add(toNodeMatch(snapshot.getGraph(), node, point.getLatitude(), point.getLongitude()));
+        }
+        return matches;
+    }
+
+    private GraphSnapshot getLocatedSnapshot() {
+        GraphSnapshot snapshot = graphSnapshotService.getSnapshot();
+        if (snapshot.getSpatialIndex().size() == 0) {
+            throw new IllegalStateException("No nodes with coordinates found.");
+        }
+        return snapshot;
+    }
+
+    private static void validateCoordinates(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null || !(Math.abs(latitude) <= 90.0) || !(Math.abs(longitude) <= 180.0)) {
+            throw new IllegalStateException("Invalid coordinates: " + latitude + ", " + longitude);
+        }
+    }
+
+    private static NodeMatch toNodeMatch(RoadGraph graph, int node, double latitude, double longitude) {
+        return new NodeMatch(graph.nodeId(node), graph.latitude(node), graph.longitude(node),
+                RoadGraph.greatCircleDistance(latitude, longitude, graph.latitude(node), graph.longitude(node)));
+    }
+
+    /**
+     * @return The counters of the cache of the routes
+     */
+    public RouteCache.Statistics getRouteCacheStatistics() {
+        return routeCache.getStatistics();
+    }
+
     /**
      * Save the session to an XML file
      * @return The XML file
@@ -920,163 +1301,39 @@ public class OptimodService {
         }
     }
 
-    private Map<Long, Map<Long, Double>> buildGraph() {
-        Map<Long, Map<Long, Double>> graph = new HashMap<>();
-
-        List<Segment> segments = (List<Segment>) segmentRepository.findAll();
-        for (Segment segment : segments) {
-            graph.putIfAbsent(segment.getIdOrigin(), new HashMap<>());
-            graph.get(segment.getIdOrigin()).put(segment.getIdDestination(), segment.getLength());
-
-            graph.putIfAbsent(segment.getIdDestination(), new HashMap<>());
-            graph.get(segment.getIdDestination()).put(segment.getIdOrigin(), segment.getLength());
-        }
+    /**
+     * Build the routing graph of the loaded map, to be reused by the following route computations, and the tiles of
+     * its segments
+     *
+     * @return The version of the map
+     */
+    public long rebuildGraph() {
+        GraphSnapshot snapshot = graphSnapshotService.rebuild();
+        tileService.build(snapshot);
+        return snapshot.getMapVersion();
+    }
 
-        return graph;
+    /**
+     * Get a tile of the segments of the map
+     *
+     * @param zoom The zoom level
+     * @param x    The column of the tile, from the west
+     * @param y    The row of the tile, from the north
+     * @return The tile
+     * @throws IllegalStateException If the zoom level is not precomputed or the tile does not exist
+     */
+    public SegmentTiles.Tile getTile(int zoom, int x, int y) throws IllegalStateException {
+        return tileService.getTile(zoom, x, y);
     }
 
-    private void validateGraph(Map<Long, Map<Long, Double>> graph, List<DeliveryRequest> deliveryRequests) {
+    private void validateGraph(RoadGraph graph, List<DeliveryRequest> deliveryRequests) {
         for (DeliveryRequest request : deliveryRequests) {
-            if (!graph.containsKey(request.getIdPickup()) || !graph.containsKey(request.getIdDelivery())) {
+            if (!graph.contains(request.getIdPickup()) || !graph.contains(request.getIdDelivery())) {
                 throw new IllegalStateException("Graph does not contain nodes for delivery request: " + request);
             }
         }
     }
 
-    private List<Long> findOptimalRoute(Map<Long, Map<Long, Double>> graph, List<DeliveryRequest> deliveryRequests) {
-        List<Long> route = new ArrayList<>();
-        Long warehouseId = deliveryRequests.get(0).getIdWarehouse();
-        route.add(warehouseId); // Start at the warehouse
-
-        Set<Long> visitedPickups = new HashSet<>();
-        Set<Long> visitedDeliveries = new HashSet<>();
-
-        PriorityQueue<Long> toVisit = new PriorityQueue<>(Comparator.comparingDouble(node -> shortestDistance(graph, route.get(route.size() - 1), node)));
-        Map<Long, DeliveryRequest> deliveryMap = deliveryRequests.stream()
-                .collect(Collectors.toMap(DeliveryRequest::getIdPickup, request -> request));
-
-        // Add initial pickups to visit
-        toVisit.addAll(deliveryRequests.stream().map(DeliveryRequest::getIdPickup).toList());
-
-        while (!toVisit.isEmpty()) {
-            Long current = toVisit.poll();
-
-            // Calculate the shortest path from the current node to the next target
-            List<Long> path = dijkstraPath(graph, route.get(route.size() - 1), current);
-
-            // Append the intermediate nodes to the route
-            path.remove(0); // Avoid duplicating the current node
-            route.addAll(path);
-
-            if (visitedPickups.contains(current)) {
-                // Visit the delivery corresponding to the current pickup
-                DeliveryRequest request = deliveryMap.get(current);
-                if (request == null) {
-                    throw new IllegalStateException("DeliveryRequest not found for pickup ID: " + current);
-                }
-
-                Long deliveryId = request.getIdDelivery();
-                if (!visitedDeliveries.contains(deliveryId)) {
-                    toVisit.add(deliveryId);
-                    visitedDeliveries.add(deliveryId);
-                }
-            } else {
-                // Visit the pickup
-                visitedPickups.add(current);
-
-                // Add the corresponding delivery to the queue
-                DeliveryRequest request = deliveryMap.get(current);
-                if (request != null) {
-                    Long deliveryId = request.getIdDelivery();
-                    if (!visitedDeliveries.contains(deliveryId)) {
-                        toVisit.add(deliveryId);
-                    }
-                }
-
-                // Add other pickups to the queue if not already visited
-                for (DeliveryRequest otherRequest : deliveryRequests) {
-                    if (!visitedPickups.contains(otherRequest.getIdPickup()) && !toVisit.contains(otherRequest.getIdPickup())) {
-                        toVisit.add(otherRequest.getIdPickup());
-                    }
-                }
-            }
-        }
-
-        // Return to the warehouse
-        List<Long> returnPath = dijkstraPath(graph, route.get(route.size() - 1), warehouseId);
-        returnPath.remove(0); // Avoid duplicating the current node
-        route.addAll(returnPath);
-
-        return route;
-    }
-
-    private List<Long> dijkstraPath(Map<Long, Map<Long, Double>> graph, Long start, Long target) {
-        Map<Long, Double> distances = new HashMap<>();
-        Map<Long, Long> previousNodes = new HashMap<>();
-        PriorityQueue<Long> pq = new PriorityQueue<>(Comparator.comparingDouble(distances::get));
-
-        for (Long node : graph.keySet()) {
-            distances.put(node, Double.MAX_VALUE);
-        }
-        distances.put(start, 0.0);
-        pq.add(start);
-
-        while (!pq.isEmpty()) {
-            Long current = pq.poll();
-
-            if (current.equals(target)) break;
-
-            Map<Long, Double> neighbors = graph.getOrDefault(current, Collections.emptyMap());
-            for (Map.Entry<Long, Double> entry : neighbors.entrySet()) {
-                Long neighbor = entry.getKey();
-                Double newDist = distances.get(current) + entry.getValue();
-
-                if (newDist < distances.getOrDefault(neighbor, Double.MAX_VALUE)) {
-                    distances.put(neighbor, newDist);
-                    previousNodes.put(neighbor, current);
-                    pq.add(neighbor);
-                }
-            }
-        }
-
-        // Backtrack to construct the path
-        List<Long> path = new ArrayList<>();
-        for (Long at = target; at != null; at = previousNodes.get(at)) {
-            path.add(0, at);
-        }
-
-        return path;
-    }
-
-    private double shortestDistance(Map<Long, Map<Long, Double>> graph, Long start, Long end) {
-        if (!graph.containsKey(start) || !graph.containsKey(end)) return Double.MAX_VALUE;
-
-        Map<Long, Double> distances = new HashMap<>();
-        PriorityQueue<Long> pq = new PriorityQueue<>(Comparator.comparingDouble(distances::get));
-        distances.put(start, 0.0);
-
-        pq.add(start);
-
-        while (!pq.isEmpty()) {
-            Long current = pq.poll();
-
-            if (current.equals(end)) break;
-
-            Map<Long, Double> neighbors = graph.getOrDefault(current, Collections.emptyMap());
-            for (Map.Entry<Long, Double> entry : neighbors.entrySet()) {
-                Long neighbor = entry.getKey();
-                Double newDist = distances.getOrDefault(current, Double.MAX_VALUE) + entry.getValue();
-
-                if (newDist < distances.getOrDefault(neighbor, Double.MAX_VALUE)) {
-                    distances.put(neighbor, newDist);
-                    pq.add(neighbor);
-                }
-            }
-        }
-
-        return distances.getOrDefault(end, Double.MAX_VALUE);
-    }
-
     /**
      * Parse the XML file
      *
@@ -0,0 +1,113 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import lombok.Value;
+
+/**
+ * Cheapest feasible insertion of the pickup and the delivery of a request in a route
+ */
+@Value
+class PairInsertion {
+
+    /**
+     * Position of the stop the pickup comes right after
+     */
+    int pickupAfter;
+
+    /**
+     * Position of the stop the delivery comes right after, right after the pickup when both are equal
+     */
+    int deliveryAfter;
+
+    /**
+     * Cost added to the route
+     */
+    double cost;
+
+    /**
+     * Cost of the leg between two stops
+     */
+    interface LegCosts {
+
+        double cost(int from, int to);
+    }
+
+    /**
+     * Find the cheapest insertion of a request of a {@link PickupDeliveryProblem}
+     *
+     * @param problem The problem
+     * @param route   The stops of the route, the warehouse first and last, without the stops of the request
+     * @param length  The number of stops of the route
+     * @param request The request to insert
+     * @return The cheapest insertion
+     */
+    static PairInsertion cheapest(PickupDeliveryProblem problem, int[] route, int length, int request) {
+        return cheapest(problem::cost, route, length, PickupDeliveryProblem.pickup(request),
+                PickupDeliveryProblem.delivery(request));
+    }
+
+    /**
+     * Find the cheapest insertion in linear time: scanning the route backwards, the cheapest place of the delivery
+     * after each position is known when the pickup is put there.
+     *
+     * @param costs    The costs of the legs
+     * @param route    The stops of the route, the warehouse first and last, without the pickup and delivery
+     * @param length   The number of stops of the route
+     * @param pickup   The pickup stop
+     * @param delivery The delivery stop
+     * @return The cheapest insertion
+     */
+    static PairInsertion cheapest(LegCosts costs, int[] route, int length, int pickup, int delivery) {
+        PairInsertion best = null;
+        double laterDelivery = Double.POSITIVE_INFINITY;
+        int laterDeliveryAfter = -1;
+        for (int after = length - 2; after >= 0; after--) {
+            int previous = route[after];
+            int next = route[after + 1];
+            double replaced = costs.cost(previous, next);
+
+            double both = costs.cost(previous, pickup) + costs.cost(pickup, delivery)
+                    + costs.cost(delivery, next) - replaced;
+            if (best == null || both < best.getCost()) {
+                best = new PairInsertion(after, after, both);
+            }
+            double pickupAlone = costs.cost(previous, pickup) + costs.cost(pickup, next) - replaced;
+            if (pickupAlone + laterDelivery < best.getCost()) {
+                best = new PairInsertion(after, laterDeliveryAfter, pickupAlone + laterDelivery);
+            }
+
+            // Delivering after this stop is possible for the pickups inserted before it
+            double deliveryAlone = costs.cost(previous, delivery) + costs.cost(delivery, next) - replaced;
+            if (deliveryAlone < laterDelivery) {
+                laterDelivery = deliveryAlone;
+                laterDeliveryAfter = after;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Insert the stops of a request of a {@link PickupDeliveryProblem} in the route, which must have room for them
+     *
+     * @param route   The stops of the route
+     * @param length  The number of stops of the route before the insertion
+     * @param request The request
+     */
+    void apply(int[] route, int length, int request) {
+        apply(route, length, PickupDeliveryProblem.pickup(request), PickupDeliveryProblem.delivery(request));
+    }
+
+    /**
+     * Insert a pickup and a delivery in the route, which must have room for them
+     *
+     * @param route    The stops of the route
+     * @param length   The number of stops of the route before the insertion
+     * @param pickup   The pickup stop
+     * @param delivery The delivery stop
+     */
+    void apply(int[] route, int length, int pickup, int delivery) {
+        System.arraycopy(route, deliveryAfter + 1, route, deliveryAfter + 3, length - deliveryAfter - 1);
+        System.arraycopy(route, pickupAfter + 1, route, pickupAfter + 2, deliveryAfter - pickupAfter);
+        route[pickupAfter + 1] = pickup;
+        route[deliveryAfter + 2] = delivery;
+    }
+}
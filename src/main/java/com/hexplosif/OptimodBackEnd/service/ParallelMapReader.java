@@ -0,0 +1,914 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a map file on several threads, giving the same nodes and segments, in the same order, as {@link MapReader}.
+ * <p>
+ * The file is mapped in memory and split into byte ranges. Each range starts at the first tag after its nominal
+ * start, and is parsed on its own by a small UTF-8 XML scanner into primitive arrays. In file order, each range is
+ * then checked to join exactly the previous one (starting where it stopped) and its tags to nest properly with the
+ * ranges before it, and its elements are handed to the {@link MapReader.Handler}. Only as many ranges as threads are
+ * parsed or held at once, so the elements are handed while the rest of the file is parsed, in bounded memory.
+ * <p>
+ * The scanner only understands what map files contain: elements, attributes with the predefined and numeric entities,
+ * comments and processing instructions. Whenever a range holds anything else or anything invalid (other encodings,
+ * DTD, CDATA, an unknown tag, a missing or invalid attribute, mismatched tags...), the handler is cleared of the chunks
+ * handed so far and the whole file is read again by {@link MapReader}, which accepts the same files as before and
+ * reports the same errors.
+ */
+public final class ParallelMapReader {
+
+    /**
+     * Smallest byte range given to a thread
+     */
+    private static final int MIN_RANGE_BYTES = 1 << 16;
+
+    /**
+     * Largest byte range given to a thread, copied in memory while it is parsed
+     */
+    private static final int MAX_RANGE_BYTES = 1 << 22;
+
+    /**
+     * Bytes copied after the end of a range, where its last tag may end
+     */
+    private static final int OVERHANG_BYTES = 1 << 16;
+
+    private static final Pattern CHARACTER_REFERENCE = Pattern.compile("#[0-9]{1,7}|#x[0-9a-fA-F]{1,6}");
+
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    private ParallelMapReader() {
+    }
+
+    /**
+     * Read a map file
+     *
+     * @param file      The XML file
+     * @param threads   The number of threads parsing the file
+     * @param chunkSize The largest number of nodes or segments handed at once
+     * @param handler   Receives the chunks, and is cleared if the file is read again by {@link MapReader}
+     * @return The numbers of nodes and segments read
+     * @throws IOException           If the file cannot be read
+     * @throws IllegalStateException If the file is not a valid map
+     * @see MapReader#read(Path, int, MapReader.Handler)
+     */
+    public static MapReader.Counts read(Path file, int threads, int chunkSize, MapReader.Handler handler)
+            throws IOException, IllegalStateException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                return MapReader.read(file, chunkSize, handler);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        Merger merger = new Merger(chunkSize, handler);
+        if (!parse(buffer, threads, merger)) {
+            if (merger.handed) {
+                handler.clear();
+            }
+            return MapReader.read(file, chunkSize, handler);
+        }
+        return merger.finish();
+    }
+
+    /**
+     * Parse the ranges of a mapped file in parallel, handing each one to the merger once it and the ranges before it
+     * are checked. At most {@code threads} ranges are parsed or waiting to be merged at once.
+     *
+     * @return Whether the whole file was parsed, false if it must be read by {@link MapReader}
+     */
+    static boolean parse(ByteBuffer buffer, int threads, Merger merger) {
+        int size = buffer.limit();
+        int start = prologEnd(buffer);
+        if (start < 0) {
+            return false;
+        }
+
+        int rangeCount = (int) Math.max(Math.max(1, Math.min(4L * threads, (size - start) / MIN_RANGE_BYTES)),
+                (size - start + (long) MAX_RANGE_BYTES - 1) / MAX_RANGE_BYTES);
+        int[] bounds = new int[rangeCount + 1];
+        for (int i = 0; i <= rangeCount; i++) {
+            bounds[i] = start + (int) ((long) (size - start) * i / rangeCount);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayDeque<ForkJoinTask<Range>> tasks = new ArrayDeque<>(threads);
+            int submitted = 0;
+
+            // The ranges must join, and their tags nest as in a single pass
+            List<String> openTags = new ArrayList<>();
+            int previousStop = -1;
+            for (int i = 0; i < rangeCount; i++) {
+                while (submitted < rangeCount && submitted < i + threads) {
+                    int index = submitted++;
+                    tasks.add(pool.submit(() -> new Scanner(buffer, bounds[index], bounds[index + 1], index == 0)
+                            .scan()));
+                }
+                Range range = tasks.remove().join();
+                if (range == null || (i > 0 && range.first != previousStop)) {
+                    return false;
+                }
+                if (range.lastClosesAtTopLevel >= 0 && openTags.size() - range.lastClosesAtTopLevel < 1) {
+                    // Content outside of the root element
+                    return false;
+                }
+                for (String tag : range.closes) {
+                    if (openTags.isEmpty() || !openTags.remove(openTags.size() - 1).equals(tag)) {
+                        return false;
+                    }
+                }
+                openTags.addAll(range.opens);
+                previousStop = range.stop;
+                merger.merge(range);
+            }
+            return openTags.isEmpty() && merger.nodeCount > 0 && merger.segmentCount > 0;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Hands the elements of the ranges, in file order, by chunks
+     */
+    static final class Merger {
+
+        private final int chunkSize;
+
+        private final MapReader.Handler handler;
+
+        private final List<Node> nodes;
+
+        private final List<Segment> segments;
+
+        long nodeCount;
+
+        long segmentCount;
+
+        /**
+         * Whether a chunk was handed
+         */
+        boolean handed;
+
+        Merger(int chunkSize, MapReader.Handler handler) {
+            this.chunkSize = chunkSize;
+            this.handler = handler;
+            this.nodes = new ArrayList<>(chunkSize);
+            this.segments = new ArrayList<>(chunkSize);
+        }
+
+        void merge(Range range) {
+            for (int i = 0; i < range.nodeCount; i++) {
+                Node node = new Node();
+                node.setId(range.nodeIds[i]);
+                node.setLatitude(range.latitudes[i]);
+                node.setLongitude(range.longitudes[i]);
+                nodes.add(node);
+                if (nodes.size() == chunkSize) {
+                    handed = true;
+                    handler.nodes(nodes);
+                    nodes.clear();
+                }
+            }
+            for (int i = 0; i < range.segmentCount; i++) {
+                Segment segment = new Segment();
+                segment.setIdOrigin(range.origins[i]);
+                segment.setIdDestination(range.destinations[i]);
+                segment.setLength(range.lengths[i]);
+                segment.setName(range.names[i]);
+                segments.add(segment);
+                if (segments.size() == chunkSize) {
+                    handed = true;
+                    handler.segments(segments);
+                    segments.clear();
+                }
+            }
+            nodeCount += range.nodeCount;
+            segmentCount += range.segmentCount;
+        }
+
+        MapReader.Counts finish() {
+            if (!nodes.isEmpty()) {
+                handler.nodes(nodes);
+            }
+            if (!segments.isEmpty()) {
+                handler.segments(segments);
+            }
+            return new MapReader.Counts(nodeCount, segmentCount);
+        }
+    }
+
+    /**
+     * Skip the byte order mark and the XML declaration, checking that the file is UTF-8
+     *
+     * @return The position after the declaration, or -1 if the encoding is not UTF-8
+     */
+    private static int prologEnd(ByteBuffer buffer) {
+        int position = 0;
+        int size = buffer.limit();
+        if (size >= 3 && (buffer.get(0) & 0xff) == 0xEF && (buffer.get(1) & 0xff) == 0xBB && (buffer.get(2) & 0xff) == 0xBF) {
+            position = 3;
+        }
+        if (size - position >= 2 && (buffer.get(position) == 0 || buffer.get(position + 1) == 0
+                || (buffer.get(position) & 0xff) >= 0xFE)) {
+            // UTF-16 or UTF-32
+            return -1;
+        }
+        if (startsWith(buffer, position, "<?xml") && position + 5 < size && isWhitespace(buffer.get(position + 5))) {
+            int end = indexOf(buffer, position, "?>");
+            if (end < 0) {
+                return -1;
+            }
+            byte[] bytes = new byte[end - position];
+            buffer.get(position, bytes);
+            Matcher encoding = ENCODING.matcher(new String(bytes, StandardCharsets.ISO_8859_1));
+            if (encoding.find() && !encoding.group(1).equalsIgnoreCase("UTF-8")
+                    && !encoding.group(1).equalsIgnoreCase("US-ASCII")) {
+                return -1;
+            }
+            position = end + 2;
+        }
+        return position;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int position, String prefix) {
+        if (position + prefix.length() > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(position + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, String pattern) {
+        for (int position = from; position + pattern.length() <= buffer.limit(); position++) {
+            if (startsWith(buffer, position, pattern)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Elements of a byte range, in primitive arrays
+     */
+    static final class Range {
+
+        /**
+         * Position of the first tag of the range
+         */
+        int first;
+
+        /**
+         * Position of the first tag of the next range, or the end of the file
+         */
+        int stop;
+
+        int nodeCount;
+
+        long[] nodeIds = new long[256];
+
+        double[] latitudes = new double[256];
+
+        double[] longitudes = new double[256];
+
+        int segmentCount;
+
+        long[] origins = new long[256];
+
+        long[] destinations = new long[256];
+
+        double[] lengths = new double[256];
+
+        String[] names = new String[256];
+
+        /**
+         * End tags of the elements opened before the range, in order
+         */
+        final List<String> closes = new ArrayList<>();
+
+        /**
+         * Elements still open at the end of the range, from the outermost
+         */
+        final List<String> opens = new ArrayList<>();
+
+        /**
+         * Number of {@link #closes} seen before the last element or text outside of any element opened in the range,
+         * -1 if there is none: the element opened before the range must still be open at that point
+         */
+        int lastClosesAtTopLevel = -1;
+
+        void addNode(long id, double latitude, double longitude) {
+            if (nodeCount == nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, 2 * nodeCount);
+                latitudes = Arrays.copyOf(latitudes, 2 * nodeCount);
+                longitudes = Arrays.copyOf(longitudes, 2 * nodeCount);
+            }
+            nodeIds[nodeCount] = id;
+            latitudes[nodeCount] = latitude;
+            longitudes[nodeCount] = longitude;
+            nodeCount++;
+        }
+
+        void addSegment(long origin, long destination, double length, String name) {
+            if (segmentCount == origins.length) {
+                origins = Arrays.copyOf(origins, 2 * segmentCount);
+                destinations = Arrays.copyOf(destinations, 2 * segmentCount);
+                lengths = Arrays.copyOf(lengths, 2 * segmentCount);
+                names = Arrays.copyOf(names, 2 * segmentCount);
+            }
+            origins[segmentCount] = origin;
+            destinations[segmentCount] = destination;
+            lengths[segmentCount] = length;
+            names[segmentCount] = name;
+            segmentCount++;
+        }
+    }
+
+    /**
+     * Thrown when a range cannot be parsed by the scanner
+     */
+    private static final class Unsupported extends Exception {
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Scanner of the tags of one byte range, working on a copy of the range
+     */
+    private static final class Scanner {
+
+        private static final String RESEAU = "reseau";
+
+        private static final String NOEUD = "noeud";
+
+        private static final String TRONCON = "troncon";
+
+        private static final byte[][] ELEMENTS = {bytes(RESEAU), bytes(NOEUD), bytes(TRONCON)};
+
+        private static final byte[][] NODE_ATTRIBUTES = {bytes("id"), bytes("latitude"), bytes("longitude")};
+
+        private static final byte[][] SEGMENT_ATTRIBUTES = {bytes("origine"), bytes("destination"), bytes("longueur"),
+                bytes("nomRue")};
+
+        private static final double[] POWERS_OF_TEN = new double[23];
+
+        static {
+            POWERS_OF_TEN[0] = 1.0;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+            }
+        }
+
+        /**
+         * The range and the bytes after it, up to {@link #OVERHANG_BYTES} or the end of the file
+         */
+        private final byte[] data;
+
+        /**
+         * Position in the file of the first byte of {@link #data}
+         */
+        private final int offset;
+
+        /**
+         * Position in {@link #data} of the end of the range
+         */
+        private final int end;
+
+        /**
+         * Whether {@link #data} goes up to the end of the file
+         */
+        private final boolean lastRange;
+
+        /**
+         * Whether the range is the first one, which holds the start of the root element
+         */
+        private final boolean first;
+
+        private final Range range = new Range();
+
+        /**
+         * Elements opened in the range and still open
+         */
+        private final List<String> stack = new ArrayList<>();
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        private final StringBuilder text = new StringBuilder();
+
+        /**
+         * Bounds in {@link #data} of the values of the known attributes of the current tag, -1 if missing
+         */
+        private final int[] valueStarts = new int[4];
+
+        private final int[] valueEnds = new int[4];
+
+        /**
+         * Bounds in {@link #data} of the names of all the attributes of the current tag
+         */
+        private int[] nameBounds = new int[16];
+
+        private int valueStart;
+
+        private boolean rootSeen;
+
+        private int position;
+
+        Scanner(ByteBuffer buffer, int start, int end, boolean first) {
+            int stop = (int) Math.min(buffer.limit(), (long) end + OVERHANG_BYTES);
+            this.data = new byte[stop - start];
+            buffer.get(start, data);
+            this.offset = start;
+            this.end = end - start;
+            this.lastRange = stop == buffer.limit();
+            this.first = first;
+        }
+
+        private static byte[] bytes(String name) {
+            return name.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * @return The elements of the range, or null if the range is not supported
+         */
+        Range scan() {
+            try {
+                position = 0;
+                if (!first) {
+                    while (position < data.length && data[position] != '<') {
+                        position++;
+                    }
+                }
+                range.first = offset + position;
+
+                while (true) {
+                    if (position >= data.length) {
+                        if (!lastRange) {
+                            // The last tag of the range ends after the copied bytes
+                            throw new Unsupported();
+                        }
+                        break;
+                    }
+                    if (data[position] != '<') {
+                        text();
+                        continue;
+                    }
+                    if (position >= end) {
+                        break;
+                    }
+                    byte next = byteAt(position + 1);
+                    if (next == '?') {
+                        processingInstruction();
+                    } else if (next == '!') {
+                        comment();
+                    } else if (next == '/') {
+                        endTag();
+                    } else {
+                        startTag();
+                    }
+                }
+                range.stop = offset + position;
+                range.opens.addAll(stack);
+                return range;
+            } catch (Unsupported | RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return The byte at a position of {@link #data}
+         * @throws Unsupported If the position is after the copied bytes
+         */
+        private byte byteAt(int at) throws Unsupported {
+            if (at >= data.length) {
+                throw new Unsupported();
+            }
+            return data[at];
+        }
+
+        /**
+         * Skip the text up to the next tag. Only whitespace is expected outside of the elements.
+         */
+        private void text() throws Unsupported {
+            boolean blank = true;
+            while (position < data.length && data[position] != '<') {
+                byte b = data[position++];
+                if (b == '&' || b == ']') {
+                    // Entities and CDATA ends are left to the StAX parser
+                    throw new Unsupported();
+                }
+                if (!isWhitespace(b)) {
+                    blank = false;
+                }
+            }
+            if (!blank) {
+                topLevelContent();
+            }
+        }
+
+        /**
+         * Record content found outside of the elements opened in the range
+         */
+        private void topLevelContent() throws Unsupported {
+            if (stack.isEmpty()) {
+                if (first) {
+                    // Before or after the root element of the file
+                    throw new Unsupported();
+                }
+                range.lastClosesAtTopLevel = range.closes.size();
+            }
+        }
+
+        private void processingInstruction() throws Unsupported {
+            position += 2;
+            int from = position;
+            while (!isWhitespace(byteAt(position)) && data[position] != '?') {
+                position++;
+            }
+            if (position - from == 3 && (data[from] | 0x20) == 'x' && (data[from + 1] | 0x20) == 'm'
+                    && (data[from + 2] | 0x20) == 'l') {
+                // XML declaration after the start of the file
+                throw new Unsupported();
+            }
+            position = skipTo(position, "?>");
+        }
+
+        private void comment() throws Unsupported {
+            if (byteAt(position + 2) != '-' || byteAt(position + 3) != '-') {
+                // DTD or CDATA section
+                throw new Unsupported();
+            }
+            position = skipTo(position + 4, "--");
+            if (byteAt(position) != '>') {
+                throw new Unsupported();
+            }
+            position++;
+        }
+
+        private int skipTo(int from, String terminator) throws Unsupported {
+            byte firstByte = (byte) terminator.charAt(0);
+            byte secondByte = (byte) terminator.charAt(1);
+            for (int at = from; at + 1 < data.length; at++) {
+                if (data[at] == firstByte && data[at + 1] == secondByte) {
+                    return at + 2;
+                }
+            }
+            throw new Unsupported();
+        }
+
+        private void endTag() throws Unsupported {
+            position += 2;
+            String name = element();
+            skipWhitespace();
+            if (byteAt(position) != '>') {
+                throw new Unsupported();
+            }
+            position++;
+            if (stack.isEmpty()) {
+                range.closes.add(name);
+            } else if (stack.remove(stack.size() - 1) != name) {
+                throw new Unsupported();
+            }
+        }
+
+        private void startTag() throws Unsupported {
+            position++;
+            String name = element();
+            if (first && !rootSeen) {
+                if (name != RESEAU) {
+                    throw new Unsupported();
+                }
+                rootSeen = true;
+            } else {
+                topLevelContent();
+            }
+
+            byte[][] known = name == NOEUD ? NODE_ATTRIBUTES : name == TRONCON ? SEGMENT_ATTRIBUTES : new byte[0][];
+            Arrays.fill(valueStarts, -1);
+            int attributeCount = 0;
+            boolean selfClosing;
+            while (true) {
+                boolean separated = skipWhitespace();
+                byte b = byteAt(position);
+                if (b == '>') {
+                    position++;
+                    selfClosing = false;
+                    break;
+                }
+                if (b == '/') {
+                    if (byteAt(position + 1) != '>') {
+                        throw new Unsupported();
+                    }
+                    position += 2;
+                    selfClosing = true;
+                    break;
+                }
+                if (!separated) {
+                    throw new Unsupported();
+                }
+                int nameStart = position;
+                int nameEnd = name();
+                for (int i = 0; i < attributeCount; i++) {
+                    if (Arrays.equals(data, nameStart, nameEnd, data, nameBounds[2 * i], nameBounds[2 * i + 1])) {
+                        throw new Unsupported();
+                    }
+                }
+                if (2 * attributeCount + 2 > nameBounds.length) {
+                    nameBounds = Arrays.copyOf(nameBounds, 2 * nameBounds.length);
+                }
+                nameBounds[2 * attributeCount] = nameStart;
+                nameBounds[2 * attributeCount + 1] = nameEnd;
+                attributeCount++;
+
+                skipWhitespace();
+                if (byteAt(position) != '=') {
+                    throw new Unsupported();
+                }
+                position++;
+                skipWhitespace();
+                int valueEnd = value();
+                for (int i = 0; i < known.length; i++) {
+                    if (Arrays.equals(data, nameStart, nameEnd, known[i], 0, known[i].length)) {
+                        valueStarts[i] = valueStart;
+                        valueEnds[i] = valueEnd;
+                    }
+                }
+            }
+
+            if (name == NOEUD) {
+                if (isEmpty(0) || isEmpty(1) || isEmpty(2)) {
+                    throw new Unsupported();
+                }
+                range.addNode(parseLong(0), parseDouble(1), parseDouble(2));
+            } else if (name == TRONCON) {
+                if (isEmpty(0) || isEmpty(1) || isEmpty(2)) {
+                    throw new Unsupported();
+                }
+                range.addSegment(parseLong(0), parseLong(1), parseDouble(2), valueStarts[3] >= 0 ? string(3) : "");
+            }
+            if (!selfClosing) {
+                stack.add(name);
+            }
+        }
+
+        /**
+         * Read the name of an element
+         *
+         * @return The name, as one of the constants of the class
+         */
+        private String element() throws Unsupported {
+            int from = position;
+            int to = name();
+            if (Arrays.equals(data, from, to, ELEMENTS[1], 0, ELEMENTS[1].length)) {
+                return NOEUD;
+            }
+            if (Arrays.equals(data, from, to, ELEMENTS[2], 0, ELEMENTS[2].length)) {
+                return TRONCON;
+            }
+            if (Arrays.equals(data, from, to, ELEMENTS[0], 0, ELEMENTS[0].length)) {
+                return RESEAU;
+            }
+            throw new Unsupported();
+        }
+
+        /**
+         * Read an ASCII name without prefix
+         *
+         * @return The position after the name
+         */
+        private int name() throws Unsupported {
+            int from = position;
+            while (position < data.length) {
+                byte b = data[position];
+                boolean letter = (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_';
+                boolean other = (b >= '0' && b <= '9') || b == '-' || b == '.';
+                if (!letter && (!other || position == from)) {
+                    break;
+                }
+                position++;
+            }
+            if (position == from) {
+                throw new Unsupported();
+            }
+            return position;
+        }
+
+        /**
+         * @return Whether whitespace was skipped
+         */
+        private boolean skipWhitespace() {
+            int from = position;
+            while (position < data.length && isWhitespace(data[position])) {
+                position++;
+            }
+            return position > from;
+        }
+
+        /**
+         * Skip a quoted attribute value, whose first character is then at {@link #valueStart}
+         *
+         * @return The position of the closing quote
+         */
+        private int value() throws Unsupported {
+            byte quote = byteAt(position);
+            if (quote != '"' && quote != '\'') {
+                throw new Unsupported();
+            }
+            valueStart = ++position;
+            while (byteAt(position) != quote) {
+                byte b = data[position];
+                if (b == '<' || (b >= 0 && b < ' ' && !isWhitespace(b))) {
+                    throw new Unsupported();
+                }
+                position++;
+            }
+            return position++;
+        }
+
+        private boolean isEmpty(int attribute) {
+            return valueStarts[attribute] < 0 || valueStarts[attribute] == valueEnds[attribute];
+        }
+
+        /**
+         * @return Whether the value is only made of ASCII characters without entities nor whitespace to normalize
+         */
+        private boolean isPlain(int attribute) {
+            for (int at = valueStarts[attribute]; at < valueEnds[attribute]; at++) {
+                byte b = data[at];
+                if (b == '&' || b < ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return The normalized value of an attribute
+         */
+        private String string(int attribute) throws Unsupported {
+            int from = valueStarts[attribute];
+            int length = valueEnds[attribute] - from;
+            if (isPlain(attribute)) {
+                return new String(data, from, length, StandardCharsets.US_ASCII);
+            }
+            try {
+                return normalize(decoder.decode(ByteBuffer.wrap(data, from, length)));
+            } catch (CharacterCodingException e) {
+                throw new Unsupported();
+            }
+        }
+
+        /**
+         * Parse an attribute as {@link Long#parseLong(String)} does
+         */
+        private long parseLong(int attribute) throws Unsupported {
+            int at = valueStarts[attribute];
+            int to = valueEnds[attribute];
+            boolean negative = data[at] == '-';
+            if (negative || data[at] == '+') {
+                at++;
+            }
+            if (at == to || to - at > 18) {
+                return Long.parseLong(string(attribute));
+            }
+            long value = 0;
+            for (; at < to; at++) {
+                int digit = data[at] - '0';
+                if (digit < 0 || digit > 9) {
+                    return Long.parseLong(string(attribute));
+                }
+                value = 10 * value + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parse an attribute as {@link Double#parseDouble(String)} does. Decimals of at most 15 digits are exactly
+         * their digits divided by a power of ten that are both exact doubles, which the division rounds correctly.
+         */
+        private double parseDouble(int attribute) throws Unsupported {
+            int at = valueStarts[attribute];
+            int to = valueEnds[attribute];
+            boolean negative = data[at] == '-';
+            if (negative || data[at] == '+') {
+                at++;
+            }
+            long digits = 0;
+            int digitCount = 0;
+            int fractionDigits = -1;
+            for (; at < to; at++) {
+                byte b = data[at];
+                if (b == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                    continue;
+                }
+                int digit = b - '0';
+                if (digit < 0 || digit > 9 || ++digitCount > 15) {
+                    return Double.parseDouble(string(attribute));
+                }
+                digits = 10 * digits + digit;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            }
+            if (digitCount == 0) {
+                return Double.parseDouble(string(attribute));
+            }
+            double value = fractionDigits > 0 ? digits / POWERS_OF_TEN[fractionDigits] : digits;
+            return negative ? -value : value;
+        }
+
+        /**
+         * Replace the entities and normalize the whitespace of an attribute value
+         */
+        private String normalize(CharSequence value) throws Unsupported {
+            text.setLength(0);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\r') {
+                    if (i + 1 < value.length() && value.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                    text.append(' ');
+                } else if (c == '\n' || c == '\t') {
+                    text.append(' ');
+                } else if (c == '&') {
+                    int semicolon = -1;
+                    for (int j = i + 1; j < value.length() && j < i + 12; j++) {
+                        if (value.charAt(j) == ';') {
+                            semicolon = j;
+                            break;
+                        }
+                    }
+                    if (semicolon < 0) {
+                        throw new Unsupported();
+                    }
+                    text.append(entity(value.subSequence(i + 1, semicolon).toString()));
+                    i = semicolon;
+                } else {
+                    text.append(c);
+                }
+            }
+            return text.toString();
+        }
+
+        private static String entity(String name) throws Unsupported {
+            switch (name) {
+                case "lt":
+                    return "<";
+                case "gt":
+                    return ">";
+                case "amp":
+                    return "&";
+                case "quot":
+                    return "\"";
+                case "apos":
+                    return "'";
+                default:
+                    if (!CHARACTER_REFERENCE.matcher(name).matches()) {
+                        throw new Unsupported();
+                    }
+                    int codePoint = name.startsWith("#x") ? Integer.parseInt(name.substring(2), 16)
+                            : Integer.parseInt(name.substring(1));
+                    boolean valid = codePoint == 0x9 || codePoint == 0xA || codePoint == 0xD
+                            || (codePoint >= 0x20 && codePoint <= 0xD7FF) || (codePoint >= 0xE000 && codePoint <= 0xFFFD)
+                            || (codePoint >= 0x10000 && codePoint <= 0x10FFFF);
+                    if (!valid) {
+                        throw new Unsupported();
+                    }
+                    return new String(Character.toChars(codePoint));
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
+
+import java.util.List;
+
+/**
+ * Pickup and delivery tour of one courier, over the leg costs of a {@link DistanceMatrix}.
+ * <p>
+ * Stop 0 is the warehouse, stop {@code 1 + 2 * i} the pickup of request {@code i} and stop {@code 2 + 2 * i} its
+ * delivery. A tour is the sequence of the {@code 2 * requestCount()} stops visited between leaving the warehouse and
+ * coming back to it; it is feasible if every pickup comes before the delivery of its request.
+ */
+public final class PickupDeliveryProblem {
+
+    private final int stopCount;
+
+    /**
+     * Index in the distance matrix of each stop
+     */
+    private final int[] matrixIndices;
+
+    private final double[] costs;
+
+    private PickupDeliveryProblem(int[] matrixIndices, double[] costs) {
+        this.stopCount = matrixIndices.length;
+        this.matrixIndices = matrixIndices;
+        this.costs = costs;
+    }
+
+    /**
+     * Build the problem of a courier
+     *
+     * @param matrix           The distance matrix between the warehouse, pickups and deliveries of the requests
+     * @param deliveryRequests The delivery requests of the courier, which must not be empty
+     * @return The problem
+     */
+    public static PickupDeliveryProblem of(DistanceMatrix matrix, List<DeliveryRequest> deliveryRequests) {
+        int[] matrixIndices = new int[1 + 2 * deliveryRequests.size()];
+        matrixIndices[0] = matrix.indexOf(deliveryRequests.get(0).getIdWarehouse());
+        for (int i = 0; i < deliveryRequests.size(); i++) {
+            matrixIndices[pickup(i)] = matrix.indexOf(deliveryRequests.get(i).getIdPickup());
+            matrixIndices[delivery(i)] = matrix.indexOf(deliveryRequests.get(i).getIdDelivery());
+        }
+
+        int stopCount = matrixIndices.length;
+        double[] costs = new double[stopCount * stopCount];
+        for (int from = 0; from < stopCount; from++) {
+            for (int to = 0; to < stopCount; to++) {
+                costs[from * stopCount + to] = matrix.distance(matrixIndices[from], matrixIndices[to]);
+            }
+        }
+        return new PickupDeliveryProblem(matrixIndices, costs);
+    }
+
+    /**
+     * Build a problem from its leg costs, stop 0 being the warehouse
+     *
+     * @param costs The cost of going from each stop to each stop
+     * @return The problem
+     */
+    public static PickupDeliveryProblem of(double[][] costs) {
+        int stopCount = costs.length;
+        int[] matrixIndices = new int[stopCount];
+        double[] flatCosts = new double[stopCount * stopCount];
+        for (int from = 0; from < stopCount; from++) {
+            matrixIndices[from] = from;
+            System.arraycopy(costs[from], 0, flatCosts, from * stopCount, stopCount);
+        }
+        return new PickupDeliveryProblem(matrixIndices, flatCosts);
+    }
+
+    /**
+     * @param request The index of the request
+     * @return The stop of the pickup of the request
+     */
+    public static int pickup(int request) {
+        return 1 + 2 * request;
+    }
+
+    /**
+     * @param request The index of the request
+     * @return The stop of the delivery of the request
+     */
+    public static int delivery(int request) {
+        return 2 + 2 * request;
+    }
+
+    /**
+     * @param stop A pickup or delivery stop
+     * @return The index of the request of the stop
+     */
+    public static int request(int stop) {
+        return (stop - 1) / 2;
+    }
+
+    /**
+     * @param stop A pickup or delivery stop
+     * @return true if the stop is a pickup
+     */
+    public static boolean isPickup(int stop) {
+        return stop % 2 == 1;
+    }
+
+    /**
+     * @return The number of delivery requests
+     */
+    public int requestCount() {
+        return (stopCount - 1) / 2;
+    }
+
+    /**
+     * @return The number of stops, including the warehouse
+     */
+    public int stopCount() {
+        return stopCount;
+    }
+
+    /**
+     * @param stop The stop
+     * @return The index of the stop in the distance matrix the problem was built from
+     */
+    public int matrixIndex(int stop) {
+        return matrixIndices[stop];
+    }
+
+    /**
+     * @param from The start stop
+     * @param to   The end stop
+     * @return The cost of the leg, Double.MAX_VALUE if there is no path
+     */
+    public double cost(int from, int to) {
+        return costs[from * stopCount + to];
+    }
+
+    /**
+     * @param tour The tour
+     * @return The total cost of the tour, from the warehouse back to it
+     */
+    public double tourCost(int[] tour) {
+        double cost = 0.0;
+        int previous = 0;
+        for (int stop : tour) {
+            cost += cost(previous, stop);
+            previous = stop;
+        }
+        return cost + cost(previous, 0);
+    }
+
+    /**
+     * @param tour The tour
+     * @return true if the tour visits every stop once, each pickup before its delivery
+     */
+    public boolean isFeasible(int[] tour) {
+        if (tour.length != stopCount - 1) {
+            return false;
+        }
+        boolean[] visited = new boolean[stopCount];
+        for (int stop : tour) {
+            if (stop <= 0 || stop >= stopCount || visited[stop]) {
+                return false;
+            }
+            if (!isPickup(stop) && !visited[pickup(request(stop))]) {
+                return false;
+            }
+            visited[stop] = true;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+/**
+ * Shortest path search between two nodes of a {@link RoadGraph}.
+ * <p>
+ * Implementations keep their working memory between searches and are not thread-safe.
+ */
+public interface PointToPointSearch {
+
+    /**
+     * Search the shortest path between two nodes
+     *
+     * @param source The index of the source node
+     * @param target The index of the target node
+     * @return The length of the shortest path, or Double.MAX_VALUE if there is none
+     */
+    double search(int source, int target);
+
+    /**
+     * @return The indices of the nodes of the path found by the last search, from source to target, empty if the
+     * target was not reached
+     */
+    int[] path();
+
+    /**
+     * @return The number of nodes settled by the last search
+     */
+    int settledCount();
+}
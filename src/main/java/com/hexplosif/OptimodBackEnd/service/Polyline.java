@@ -0,0 +1,87 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+/**
+ * Encoded polyline format: the coordinates rounded to 5 decimals, each stored as the difference with the previous one
+ * in chunks of 5 bits written as printable characters. A point of a city route takes a few characters instead of two
+ * full numbers.
+ */
+public final class Polyline {
+
+    private Polyline() {
+    }
+
+    /**
+     * Encode a line
+     *
+     * @param latitudes  The latitudes of the points
+     * @param longitudes The longitudes of the points, as many as the latitudes
+     * @return The encoded line
+     */
+    public static String encode(double[] latitudes, double[] longitudes) {
+        StringBuilder encoded = new StringBuilder();
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            long latitude = Math.round(latitudes[i] * 1e5);
+            long longitude = Math.round(longitudes[i] * 1e5);
+            encodeValue(latitude - previousLatitude, encoded);
+            encodeValue(longitude - previousLongitude, encoded);
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        return encoded.toString();
+    }
+
+    private static void encodeValue(long value, StringBuilder encoded) {
+        long shifted = value < 0 ? ~(value << 1) : value << 1;
+        while (shifted >= 0x20) {
+            encoded.append((char) ((0x20 | (shifted & 0x1f)) + 63));
+            shifted >>= 5;
+        }
+        encoded.append((char) (shifted + 63));
+    }
+
+    /**
+     * Decode a line
+     *
+     * @param encoded The encoded line
+     * @return The latitude and longitude of each point
+     */
+    public static double[][] decode(String encoded) {
+        int count = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            if (encoded.charAt(i) - 63 < 0x20) {
+                count++;
+            }
+        }
+        double[][] points = new double[count / 2][2];
+        int position = 0;
+        long latitude = 0;
+        long longitude = 0;
+        for (double[] point : points) {
+            long[] value = decodeValue(encoded, position);
+            latitude += value[0];
+            long[] next = decodeValue(encoded, (int) value[1]);
+            longitude += next[0];
+            position = (int) next[1];
+            point[0] = latitude / 1e5;
+            point[1] = longitude / 1e5;
+        }
+        return points;
+    }
+
+    /**
+     * @return The value and the position after it
+     */
+    private static long[] decodeValue(String encoded, int position) {
+        long result = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            chunk = encoded.charAt(position++) - 63;
+            result |= (long) (chunk & 0x1f) << shift;
+            shift += 5;
+        } while (chunk >= 0x20);
+        return new long[]{(result & 1) != 0 ? ~(result >> 1) : result >> 1, position};
+    }
+}
@@ -0,0 +1,454 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable road network stored in compressed sparse row (CSR) form.
+ * <p>
+ * Node ids are remapped to dense indices {@code 0..nodeCount()-1}. The outgoing edges of the node at index
+ * {@code i} are the edges {@code firstEdge(i)} (inclusive) to {@code lastEdge(i)} (exclusive), whose targets and
+ * weights are stored in primitive arrays. Segments are traversable in both directions. The incoming edges are stored
+ * the same way, for searches that run backwards from a target.
+ * <p>
+ * When the nodes are given, their coordinates are kept to compute geometric lower bounds of the distances.
+ */
+public final class RoadGraph {
+
+    /**
+     * Mean Earth radius in meters
+     */
+    private static final double EARTH_RADIUS = 6371000.0;
+
+    /**
+     * Sorted node ids, used both as the index -> id table and, through binary search, as the id -> index dictionary
+     */
+    private final long[] nodeIds;
+
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final double[] weights;
+
+    /**
+     * Incoming edges, the transpose of the outgoing ones
+     */
+    private final int[] reverseOffsets;
+
+    private final int[] sources;
+
+    private final double[] reverseWeights;
+
+    /**
+     * Coordinates of the nodes, NaN when unknown
+     */
+    private final double[] latitudes;
+
+    private final double[] longitudes;
+
+    /**
+     * Position of the nodes on the unit sphere, interleaved x, y, z
+     */
+    private final double[] positions;
+
+    /**
+     * Smallest ratio between the length of an edge and the straight-line distance between its ends, NaN if the
+     * coordinates of some nodes are unknown
+     */
+    private final double minLengthRatio;
+
+    /**
+     * Whether every edge has a reverse edge of the same length
+     */
+    private final boolean symmetric;
+
+    private RoadGraph(long[] nodeIds, int[] offsets, int[] targets, double[] weights, double[] latitudes,
+                      double[] longitudes, boolean symmetric) {
+        this.nodeIds = nodeIds;
+        this.symmetric = symmetric;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+
+        // Transpose the adjacency
+        this.reverseOffsets = new int[nodeIds.length + 1];
+        for (int edge = 0; edge < targets.length; edge++) {
+            reverseOffsets[targets[edge] + 1]++;
+        }
+        for (int node = 0; node < nodeIds.length; node++) {
+            reverseOffsets[node + 1] += reverseOffsets[node];
+        }
+        this.sources = new int[targets.length];
+        this.reverseWeights = new double[targets.length];
+        int[] next = Arrays.copyOf(reverseOffsets, nodeIds.length);
+        for (int node = 0; node < nodeIds.length; node++) {
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int reverseEdge = next[targets[edge]]++;
+                sources[reverseEdge] = node;
+                reverseWeights[reverseEdge] = weights[edge];
+            }
+        }
+
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.positions = new double[3 * nodeIds.length];
+        for (int node = 0; node < nodeIds.length; node++) {
+            double latitude = Math.toRadians(latitudes[node]);
+            double longitude = Math.toRadians(longitudes[node]);
+            positions[3 * node] = Math.cos(latitude) * Math.cos(longitude);
+            positions[3 * node + 1] = Math.cos(latitude) * Math.sin(longitude);
+            positions[3 * node + 2] = Math.sin(latitude);
+        }
+        this.minLengthRatio = computeMinLengthRatio();
+    }
+
+    /**
+     * Build the graph from the segments of the map, without coordinates
+     *
+     * @param segments The segments of the map
+     * @return The graph
+     */
+    public static RoadGraph fromSegments(Iterable<Segment> segments) {
+        return build(Collections.emptyList(), segments);
+    }
+
+    /**
+     * Build the graph from the nodes and segments of the map
+     *
+     * @param nodes    The nodes of the map, only used for their coordinates
+     * @param segments The segments of the map
+     * @return The graph
+     */
+    public static RoadGraph build(Iterable<Node> nodes, Iterable<Segment> segments) {
+        // Copy the segments into primitive arrays, skipping incomplete ones
+        int count = 0;
+        long[] origins = new long[64];
+        long[] destinations = new long[64];
+        double[] lengths = new double[64];
+        for (Segment segment : segments) {
+            if (segment.getIdOrigin() == null || segment.getIdDestination() == null || segment.getLength() == null) {
+                continue;
+            }
+            if (count == origins.length) {
+                origins = Arrays.copyOf(origins, count * 2);
+                destinations = Arrays.copyOf(destinations, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            origins[count] = segment.getIdOrigin();
+            destinations[count] = segment.getIdDestination();
+            lengths[count] = segment.getLength();
+            count++;
+        }
+
+        // Dense remapping of the node ids
+        long[] ids = new long[count * 2];
+        System.arraycopy(origins, 0, ids, 0, count);
+        System.arraycopy(destinations, 0, ids, count, count);
+        Arrays.sort(ids);
+        int nodeCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[nodeCount++] = ids[i];
+            }
+        }
+        long[] nodeIds = Arrays.copyOf(ids, nodeCount);
+
+        int[] from = new int[count];
+        int[] to = new int[count];
+        int[] offsets = new int[nodeCount + 1];
+        for (int i = 0; i < count; i++) {
+            from[i] = Arrays.binarySearch(nodeIds, origins[i]);
+            to[i] = Arrays.binarySearch(nodeIds, destinations[i]);
+            offsets[from[i] + 1]++;
+            offsets[to[i] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] targets = new int[count * 2];
+        double[] weights = new double[count * 2];
+        int[] next = Arrays.copyOf(offsets, nodeCount);
+        for (int i = 0; i < count; i++) {
+            int edge = next[from[i]]++;
+            targets[edge] = to[i];
+            weights[edge] = lengths[i];
+
+            edge = next[to[i]]++;
+            targets[edge] = from[i];
+            weights[edge] = lengths[i];
+        }
+
+        double[] latitudes = new double[nodeCount];
+        double[] longitudes = new double[nodeCount];
+        Arrays.fill(latitudes, Double.NaN);
+        Arrays.fill(longitudes, Double.NaN);
+        for (Node node : nodes) {
+            int index = node.getId() != null ? Arrays.binarySearch(nodeIds, node.getId()) : -1;
+            if (index >= 0 && node.getLatitude() != null && node.getLongitude() != null) {
+                latitudes[index] = node.getLatitude();
+                longitudes[index] = node.getLongitude();
+            }
+        }
+
+        // Every segment was stored in both directions
+        return new RoadGraph(nodeIds, offsets, targets, weights, latitudes, longitudes, true);
+    }
+
+    private double computeMinLengthRatio() {
+        double ratio = Double.POSITIVE_INFINITY;
+        for (int node = 0; node < nodeIds.length; node++) {
+            if (!hasCoordinates(node)) {
+                return Double.NaN;
+            }
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                double straight = straightLineDistance(node, targets[edge]);
+                if (straight > 0) {
+                    ratio = Math.min(ratio, weights[edge] / straight);
+                }
+            }
+        }
+        return ratio;
+    }
+
+    /**
+     * @return The number of nodes of the graph
+     */
+    public int nodeCount() {
+        return nodeIds.length;
+    }
+
+    /**
+     * @return Whether every edge has a reverse edge of the same length, so that the distance from a node to another
+     * is the distance back
+     */
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    /**
+     * @return The number of directed edges of the graph
+     */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Get the dense index of a node
+     *
+     * @param nodeId The id of the node
+     * @return The index of the node, or -1 if the node is not in the graph
+     */
+    public int indexOf(long nodeId) {
+        int index = Arrays.binarySearch(nodeIds, nodeId);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @param nodeId The id of the node
+     * @return true if at least one segment starts or ends at the node
+     */
+    public boolean contains(Long nodeId) {
+        return nodeId != null && indexOf(nodeId) >= 0;
+    }
+
+    /**
+     * @param index The index of the node
+     * @return The id of the node
+     */
+    public long nodeId(int index) {
+        return nodeIds[index];
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The first outgoing edge of the node
+     */
+    public int firstEdge(int node) {
+        return offsets[node];
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The end (exclusive) of the outgoing edges of the node
+     */
+    public int lastEdge(int node) {
+        return offsets[node + 1];
+    }
+
+    /**
+     * @param edge The edge
+     * @return The index of the node the edge leads to
+     */
+    public int edgeTarget(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * @param edge The edge
+     * @return The length of the edge
+     */
+    public double edgeWeight(int edge) {
+        return weights[edge];
+    }
+
+    /**
+     * Get the length of a path
+     *
+     * @param path The ids of the nodes of the path
+     * @return The sum of the lengths of the shortest edges between consecutive nodes, Double.MAX_VALUE if two of them
+     * are not linked
+     */
+    public double pathLength(List<Long> path) {
+        double length = 0.0;
+        for (int i = 1; i < path.size(); i++) {
+            int from = indexOf(path.get(i - 1));
+            int to = indexOf(path.get(i));
+            double edge = Double.MAX_VALUE;
+            if (from >= 0 && to >= 0) {
+                for (int e = firstEdge(from); e < lastEdge(from); e++) {
+                    if (edgeTarget(e) == to) {
+                        edge = Math.min(edge, edgeWeight(e));
+                    }
+                }
+            }
+            if (edge == Double.MAX_VALUE) {
+                return Double.MAX_VALUE;
+            }
+            length += edge;
+        }
+        return length;
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The first incoming edge of the node
+     */
+    public int firstIncomingEdge(int node) {
+        return reverseOffsets[node];
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The end (exclusive) of the incoming edges of the node
+     */
+    public int lastIncomingEdge(int node) {
+        return reverseOffsets[node + 1];
+    }
+
+    /**
+     * @param edge The incoming edge
+     * @return The index of the node the edge comes from
+     */
+    public int incomingEdgeSource(int edge) {
+        return sources[edge];
+    }
+
+    /**
+     * @param edge The incoming edge
+     * @return The length of the edge
+     */
+    public double incomingEdgeWeight(int edge) {
+        return reverseWeights[edge];
+    }
+
+    /**
+     * @param node The index of the node
+     * @return true if the coordinates of the node are known
+     */
+    public boolean hasCoordinates(int node) {
+        return !Double.isNaN(latitudes[node]) && !Double.isNaN(longitudes[node]);
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The latitude of the node, NaN if unknown
+     */
+    public double latitude(int node) {
+        return latitudes[node];
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The longitude of the node, NaN if unknown
+     */
+    public double longitude(int node) {
+        return longitudes[node];
+    }
+
+    /**
+     * @return The smallest ratio between the length of a segment and the straight-line distance between its ends,
+     * NaN if the coordinates of some nodes are unknown. Multiplying straight-line distances by this ratio (or any
+     * smaller value) gives lower bounds of the shortest path lengths in segment length units.
+     */
+    public double minLengthRatio() {
+        return minLengthRatio;
+    }
+
+    /**
+     * Straight-line (chord) distance through the Earth between two nodes. It is a lower bound of the great-circle
+     * distance, almost equal to it at city scale, and only needs a square root.
+     *
+     * @param from The index of the first node
+     * @param to   The index of the second node
+     * @return The straight-line distance in meters between the nodes
+     */
+    public double straightLineDistance(int from, int to) {
+        double dx = positions[3 * from] - positions[3 * to];
+        double dy = positions[3 * from + 1] - positions[3 * to + 1];
+        double dz = positions[3 * from + 2] - positions[3 * to + 2];
+        return EARTH_RADIUS * Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Haversine distance on a sphere of the mean Earth radius
+     *
+     * @return The great-circle distance in meters between two points
+     */
+    public static double greatCircleDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * @return A 64-bit hash of the node ids and edges of the graph, used to recognize the same map across runs
+     */
+    public long fingerprint() {
+        long hash = 1125899906842597L;
+        hash = mix(hash, nodeIds.length);
+        for (long nodeId : nodeIds) {
+            hash = mix(hash, nodeId);
+        }
+        for (int offset : offsets) {
+            hash = mix(hash, offset);
+        }
+        for (int edge = 0; edge < targets.length; edge++) {
+            hash = mix(hash, targets[edge]);
+            hash = mix(hash, Double.doubleToLongBits(weights[edge]));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    /**
+     * @return The size in bytes of the arrays backing the graph
+     */
+    public long memoryFootprint() {
+        return 8L * nodeIds.length + 4L * offsets.length + 4L * targets.length + 8L * weights.length
+                + 4L * reverseOffsets.length + 4L * sources.length + 8L * reverseWeights.length
+                + 8L * latitudes.length + 8L * longitudes.length + 8L * positions.length;
+    }
+}
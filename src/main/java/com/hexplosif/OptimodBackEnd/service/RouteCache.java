@@ -0,0 +1,213 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Routes already computed, so that the couriers whose requests did not change since the last computation are not
+ * planned again.
+ * <p>
+ * A route is found again under the version of the map it was computed on, its courier, the algorithm, solver and
+ * time budget used, and the set of the pickups, deliveries and warehouses of the requests of the courier, whatever
+ * their order. The time budget is part of the key, so that a route improved for a short time is never returned to a
+ * computation given more time.
+ * At most {@code optimod.routing.cache.max-entries} routes are kept, the least recently used being evicted first,
+ * and none for more than {@code optimod.routing.cache.max-age-seconds}. A new map version drops the routes of the
+ * previous ones.
+ */
+@Service
+public class RouteCache {
+
+    @Value("${optimod.routing.cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${optimod.routing.cache.max-age-seconds:600}")
+    private long maxAgeSeconds;
+
+    /**
+     * The routes, in access order
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long newestMapVersion;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Build the key of the route of a courier
+     *
+     * @param mapVersion       The version of the map
+     * @param courierId        The id of the courier
+     * @param algorithm        The shortest path algorithm of the legs
+     * @param solver           The method ordering the stops
+     * @param timeBudget       The time given to improve the route, in milliseconds
+     * @param deliveryRequests The delivery requests of the courier
+     * @return The key
+     */
+    public static Key key(long mapVersion, Long courierId, RoutingAlgorithm algorithm, RoutingSolver solver,
+                          long timeBudget, List<DeliveryRequest> deliveryRequests) {
+        long[][] stops = new long[deliveryRequests.size()][];
+        for (int i = 0; i < stops.length; i++) {
+            DeliveryRequest request = deliveryRequests.get(i);
+            stops[i] = new long[]{request.getIdPickup(), request.getIdDelivery(), request.getIdWarehouse()};
+        }
+        Arrays.sort(stops, Comparator.<long[]>comparingLong(s -> s[0]).thenComparingLong(s -> s[1])
+                .thenComparingLong(s -> s[2]));
+
+        long[] requests = new long[3 * stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            System.arraycopy(stops[i], 0, requests, 3 * i, 3);
+        }
+        return new Key(mapVersion, courierId, algorithm, solver, timeBudget, requests);
+    }
+
+    /**
+     * @param key The key of the route
+     * @return The route, null if it is not in the cache
+     */
+    public synchronized List<Long> get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry, System.nanoTime())) {
+            entries.remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.getRoute();
+    }
+
+    /**
+     * Add a route to the cache
+     *
+     * @param key   The key of the route
+     * @param route The ids of the nodes of the route
+     */
+    public synchronized void put(Key key, List<Long> route) {
+        if (maxEntries <= 0 || key.getMapVersion() < newestMapVersion) {
+            return;
+        }
+        if (key.getMapVersion() > newestMapVersion) {
+            newestMapVersion = key.getMapVersion();
+            evictIf(entry -> entry.getKey().getMapVersion() < newestMapVersion);
+        }
+
+        long now = System.nanoTime();
+        entries.put(key, new Entry(List.copyOf(route), now));
+        evictIf(entry -> isExpired(entry.getValue(), now));
+        Iterator<Key> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drop every route, after a modification of the map
+     */
+    public synchronized void clear() {
+        evictions += entries.size();
+        entries.clear();
+    }
+
+    /**
+     * @return The counters of the cache
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits, misses, evictions, entries.size());
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.getCreated() > maxAgeSeconds * 1_000_000_000;
+    }
+
+    private void evictIf(Predicate<Map.Entry<Key, Entry>> condition) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (condition.test(iterator.next())) {
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Key of the route of a courier
+     */
+    @lombok.Value
+    public static class Key {
+
+        long mapVersion;
+
+        Long courierId;
+
+        RoutingAlgorithm algorithm;
+
+        RoutingSolver solver;
+
+        /**
+         * The time given to improve the route, in milliseconds
+         */
+        long timeBudget;
+
+        /**
+         * The pickup, delivery and warehouse of each request, sorted
+         */
+        long[] requests;
+    }
+
+    @lombok.Value
+    private static class Entry {
+
+        List<Long> route;
+
+        /**
+         * The {@link System#nanoTime()} at which the route was added
+         */
+        long created;
+    }
+
+    /**
+     * Counters of the cache since the start of the application
+     */
+    @lombok.Value
+    public static class Statistics {
+
+        /**
+         * Number of routes found in the cache
+         */
+        long hits;
+
+        /**
+         * Number of routes looked up and not found
+         */
+        long misses;
+
+        /**
+         * Number of routes dropped because of their age, the size of the cache or a change of the map
+         */
+        long evictions;
+
+        /**
+         * Number of routes in the cache
+         */
+        int size;
+    }
+}
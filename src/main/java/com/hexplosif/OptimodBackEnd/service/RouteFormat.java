@@ -0,0 +1,16 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+/**
+ * Format of the routes returned by /calculateOptimalRoute
+ */
+public enum RouteFormat {
+    /**
+     * The ids of the nodes of each route
+     */
+    NODES,
+
+    /**
+     * A {@link CompactRoute} per courier: stops, leg lengths and encoded polyline
+     */
+    COMPACT
+}
@@ -0,0 +1,213 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Route computation run in the background by {@link RouteJobService}, whose progress is updated as the routes of the
+ * couriers are found. The routes can also be forwarded to a {@link Listener} as they are found.
+ */
+public class RouteJob implements RouteListener {
+
+    /**
+     * Step of the life of a job
+     */
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED,
+        CANCELLED
+    }
+
+    private final String id;
+
+    private final Listener listener;
+
+    private State state = State.QUEUED;
+
+    /**
+     * Read by the threads planning the couriers, without taking the lock of the job
+     */
+    private volatile boolean cancelled;
+
+    private int courierCount;
+
+    /**
+     * Length of the best route found so far for each courier
+     */
+    private final Map<Long, Double> routeLengths = new ConcurrentHashMap<>();
+
+    private final Set<Long> finishedCouriers = ConcurrentHashMap.newKeySet();
+
+    private Map<Long, List<Long>> result;
+
+    private String error;
+
+    private Future<?> future;
+
+    /**
+     * @param id       The id of the job
+     * @param listener Receives the routes and the end of the job
+     */
+    RouteJob(String id, Listener listener) {
+        this.id = id;
+        this.listener = listener;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * @return Whether the job may still change
+     */
+    public synchronized boolean isFinished() {
+        return state != State.QUEUED && state != State.RUNNING;
+    }
+
+    /**
+     * @return The routes of the couriers, null until the job is done
+     */
+    public synchronized Map<Long, List<Long>> getResult() {
+        return result;
+    }
+
+    /**
+     * @return The current state and progress of the job
+     */
+    public synchronized Status getStatus() {
+        Double bestCost = routeLengths.isEmpty() ? null
+                : routeLengths.values().stream().mapToDouble(Double::doubleValue).sum();
+        return new Status(id, state, courierCount, finishedCouriers.size(), bestCost, error);
+    }
+
+    /**
+     * Mark the job as running
+     *
+     * @return false if the job was cancelled before it started
+     */
+    synchronized boolean start() {
+        if (state != State.QUEUED) {
+            return false;
+        }
+        state = State.RUNNING;
+        return true;
+    }
+
+    void complete(Map<Long, List<Long>> result) {
+        synchronized (this) {
+            if (state != State.RUNNING) {
+                return;
+            }
+            this.result = result;
+            state = State.DONE;
+        }
+        listener.jobFinished(getStatus());
+    }
+
+    void fail(String error) {
+        synchronized (this) {
+            if (state != State.RUNNING) {
+                return;
+            }
+            this.error = error;
+            state = State.FAILED;
+        }
+        listener.jobFinished(getStatus());
+    }
+
+    /**
+     * Cancel the job: a queued job never runs, and a running one stops waiting for the couriers not started yet while
+     * the couriers being planned stop improving their routes
+     */
+    void cancel() {
+        synchronized (this) {
+            if (isFinished()) {
+                return;
+            }
+            state = State.CANCELLED;
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+        listener.jobFinished(getStatus());
+    }
+
+    @Override
+    public void started(List<Long> courierIds) {
+        synchronized (this) {
+            courierCount = courierIds.size();
+        }
+        listener.started(courierIds);
+    }
+
+    @Override
+    public void routeFound(Long courierId, List<Long> route, double length) {
+        routeLengths.put(courierId, length);
+        listener.routeFound(courierId, route, length);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void courierFinished(Long courierId) {
+        finishedCouriers.add(courierId);
+        listener.courierFinished(courierId);
+    }
+
+    /**
+     * Receives the routes of a job as they are found, and its end
+     */
+    public interface Listener extends RouteListener {
+
+        /**
+         * Called once when the job is done, failed or cancelled
+         *
+         * @param status The final status of the job
+         */
+        void jobFinished(Status status);
+    }
+
+    /**
+     * Progress of a job
+     */
+    @lombok.Value
+    public static class Status {
+
+        String id;
+
+        State state;
+
+        /**
+         * Number of couriers that get a route, 0 until the computation starts
+         */
+        int courierCount;
+
+        /**
+         * Number of couriers whose route is found
+         */
+        int couriersDone;
+
+        /**
+         * Total length of the routes found so far, null before the first one
+         */
+        Double bestCost;
+
+        /**
+         * Why the job failed
+         */
+        String error;
+    }
+}
@@ -0,0 +1,181 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs route computations in the background, so that the HTTP threads only submit them and poll their progress.
+ * <p>
+ * At most {@code optimod.routing.jobs.workers} computations run at the same time, and at most
+ * {@code optimod.routing.jobs.queue-capacity} wait for a worker; more submissions are refused. The couriers of a
+ * computation are still planned in parallel by {@link RoutePlanner}. The last {@code optimod.routing.jobs.max-finished}
+ * finished jobs are kept for their results.
+ */
+@Service
+public class RouteJobService {
+
+    @Autowired
+    private OptimodService optimodService;
+
+    @Value("${optimod.routing.jobs.workers:2}")
+    private int workers;
+
+    @Value("${optimod.routing.jobs.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Value("${optimod.routing.jobs.max-finished:100}")
+    private int maxFinished;
+
+    /**
+     * The jobs, in submission order
+     */
+    private final Map<String, RouteJob> jobs = new LinkedHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threads = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "route-job-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Start a route computation
+     *
+     * @param options The options of the computation
+     * @return The status of the new job
+     * @throws IllegalStateException If too many jobs are waiting
+     */
+    public RouteJob.Status submit(RoutingOptions options) throws IllegalStateException {
+        return submit(options, new RouteJob.Listener() {
+            @Override
+            public void routeFound(Long courierId, List<Long> route, double length) {
+            }
+
+            @Override
+            public void jobFinished(RouteJob.Status status) {
+            }
+        });
+    }
+
+    /**
+     * Start a route computation, forwarding its routes as they are found
+     *
+     * @param options  The options of the computation
+     * @param listener Receives the routes of the computation, from the threads computing them, and its end
+     * @return The status of the new job
+     * @throws IllegalStateException If too many jobs are waiting
+     */
+    public RouteJob.Status submit(RoutingOptions options, RouteJob.Listener listener) throws IllegalStateException {
+        RouteJob job = new RouteJob(UUID.randomUUID().toString(), listener);
+        synchronized (this) {
+            try {
+                job.setFuture(executor.submit(() -> run(job, options)));
+            } catch (RejectedExecutionException e) {
+                throw new IllegalStateException("Too many route computations in progress, please try again later.");
+            }
+            jobs.put(job.getId(), job);
+            evictFinished();
+        }
+        return job.getStatus();
+    }
+
+    private void run(RouteJob job, RoutingOptions options) {
+        if (!job.start()) {
+            return;
+        }
+        try {
+            job.complete(optimodService.calculateOptimalRoute(options, job));
+        } catch (CancellationException e) {
+            // The job is already marked as cancelled
+        } catch (RuntimeException e) {
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Get the progress of a job
+     *
+     * @param id The id of the job
+     * @return The status of the job
+     * @throws IllegalStateException If the job is not found
+     */
+    public RouteJob.Status getStatus(String id) throws IllegalStateException {
+        return find(id).getStatus();
+    }
+
+    /**
+     * Get the routes computed by a job
+     *
+     * @param id The id of the job
+     * @return The route of each courier
+     * @throws IllegalStateException If the job is not found or not done
+     */
+    public Map<Long, List<Long>> getResult(String id) throws IllegalStateException {
+        RouteJob job = find(id);
+        Map<Long, List<Long>> result = job.getResult();
+        if (result == null) {
+            throw new IllegalStateException("The route job is " + job.getStatus().getState() + ".");
+        }
+        return result;
+    }
+
+    /**
+     * Cancel a job that is not finished
+     *
+     * @param id The id of the job
+     * @return The status of the job
+     * @throws IllegalStateException If the job is not found
+     */
+    public RouteJob.Status cancel(String id) throws IllegalStateException {
+        RouteJob job = find(id);
+        job.cancel();
+        // A queued job leaves the queue right away
+        executor.purge();
+        return job.getStatus();
+    }
+
+    private synchronized RouteJob find(String id) {
+        RouteJob job = jobs.get(id);
+        if (job == null) {
+            throw new IllegalStateException("Route job not found");
+        }
+        return job;
+    }
+
+    private void evictFinished() {
+        long finished = jobs.values().stream().filter(RouteJob::isFinished).count();
+        Iterator<RouteJob> iterator = jobs.values().iterator();
+        while (finished > maxFinished && iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+}
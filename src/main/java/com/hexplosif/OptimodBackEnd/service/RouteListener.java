@@ -0,0 +1,49 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.List;
+
+/**
+ * Receives the routes of a computation as soon as they are known, before the computation returns them all
+ */
+public interface RouteListener {
+
+    /**
+     * Called once the couriers that get a route are known
+     *
+     * @param courierIds The ids of the couriers
+     */
+    default void started(List<Long> courierIds) {
+    }
+
+    /**
+     * Called with the first route of a courier, then with each better route found for it, possibly from another thread
+     *
+     * @param courierId The id of the courier
+     * @param route     The ids of the nodes of the route
+     * @param length    The length of the route
+     */
+    void routeFound(Long courierId, List<Long> route, double length);
+
+    /**
+     * @return Whether the routes found before the last one of each courier are told. When not, only the last one is
+     * built and told.
+     */
+    default boolean wantsImprovements() {
+        return true;
+    }
+
+    /**
+     * @return Whether the computation was cancelled, after which the routes being planned stop improving
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * Called once the route of a courier will no longer improve, possibly from another thread
+     *
+     * @param courierId The id of the courier
+     */
+    default void courierFinished(Long courierId) {
+    }
+}
@@ -0,0 +1,311 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Computes the routes of the couriers.
+ * <p>
+ * The route of each courier only depends on its own delivery requests and on the graph snapshot, which is never
+ * modified, so the couriers are planned in parallel on a dedicated pool whose size is set by
+ * {@code optimod.routing.parallelism} (0 for one thread per processor).
+ * <p>
+ * The tour of a courier with few requests is solved exactly within a time budget; larger ones use the nearest-next
+ * heuristic. Every tour is then improved by {@link LocalSearch} until the deadline of the computation, and then by
+ * {@link AlnsTourSolver} for the large couriers or when asked to.
+ */
+@Service
+public class RoutePlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoutePlanner.class);
+
+    @Value("${optimod.routing.parallelism:0}")
+    private int parallelism;
+
+    /**
+     * Largest number of requests of a courier solved exactly, at most {@link ExactTourSolver#MAX_REQUESTS}
+     */
+    @Value("${optimod.routing.exact.max-requests:8}")
+    private int exactMaxRequests;
+
+    /**
+     * Time after which the exact solver returns the best tour found so far
+     */
+    @Value("${optimod.routing.exact.time-budget-ms:50}")
+    private long exactTimeBudget;
+
+    /**
+     * Smallest number of requests of a courier improved by ALNS with the AUTO solver
+     */
+    @Value("${optimod.routing.alns.min-requests:100}")
+    private int alnsMinRequests;
+
+    /**
+     * Number of ALNS searches run in parallel for a courier, 0 for one per processor
+     */
+    @Value("${optimod.routing.alns.searches:0}")
+    private int alnsSearches;
+
+    @Value("${optimod.routing.alns.iterations:20000}")
+    private int alnsIterations;
+
+    @Value("${optimod.routing.alns.seed:0}")
+    private long alnsSeed;
+
+    /**
+     * Largest size of the shortest-path trees kept by the distance matrices of the couriers of a computation to unpack
+     * their legs
+     */
+    @Value("${optimod.routing.tree-arena-mb:64}")
+    private long treeArenaMegabytes;
+
+    private final TourSolver exactSolver = new ExactTourSolver();
+
+    private final TourSolver heuristicSolver = new GreedyTourSolver();
+
+    private final LocalSearch localSearch = new LocalSearch();
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    void start() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @return The number of couriers planned at the same time
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return The pool the couriers are planned on, shared with the other parallel routing work
+     */
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Plan the routes of several couriers in parallel
+     *
+     * @param snapshot          The snapshot of the map
+     * @param requestsByCourier The delivery requests of each courier, which must not be empty
+     * @param algorithm         The shortest path algorithm of the legs
+     * @param solver            The method ordering the stops
+     * @param deadline          The {@link System#nanoTime()} after which the routes are no longer improved
+     * @return The route of each courier, in the iteration order of the given map whatever the order of completion
+     */
+    public Map<Long, CourierRoute> planRoutes(GraphSnapshot snapshot, Map<Long, List<DeliveryRequest>> requestsByCourier,
+                                            RoutingAlgorithm algorithm, RoutingSolver solver, long deadline) {
+        return planRoutes(snapshot, requestsByCourier, algorithm, solver, deadline, (courierId, route) -> {
+        });
+    }
+
+    /**
+     * Plan the routes of several couriers in parallel, telling the route of each courier as soon as it is planned,
+     * then each better route found for it. An interruption of the calling thread cancels the couriers not started yet,
+     * and the couriers being planned stop improving their routes once the listener tells that the computation was
+     * cancelled. The couriers share one budget of shortest-path trees, taken in the order they start.
+     *
+     * @param listener Told about the routes of each courier, from the thread that plans it
+     * @throws CancellationException If the calling thread is interrupted
+     * @see #planRoutes(GraphSnapshot, Map, RoutingAlgorithm, RoutingSolver, long)
+     */
+    public Map<Long, CourierRoute> planRoutes(GraphSnapshot snapshot, Map<Long, List<DeliveryRequest>> requestsByCourier,
+                                            RoutingAlgorithm algorithm, RoutingSolver solver, long deadline,
+                                            Listener listener) {
+        AtomicLong arena = new AtomicLong(treeArenaMegabytes * 1024 * 1024);
+        Map<Long, ForkJoinTask<CourierRoute>> tasks = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<DeliveryRequest>> entry : requestsByCourier.entrySet()) {
+            Long courierId = entry.getKey();
+            tasks.put(courierId, pool.submit(() -> {
+                CourierRoute route = planRoute(snapshot, entry.getValue(), algorithm, solver, deadline, arena,
+                        listener::isCancelled,
+                        listener.wantsImprovements() ? improved -> listener.routeFound(courierId, improved) : null);
+                if (!listener.wantsImprovements()) {
+                    listener.routeFound(courierId, route);
+                }
+                listener.courierFinished(courierId);
+                return route;
+            }));
+        }
+
+        Map<Long, CourierRoute> routes = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Long, ForkJoinTask<CourierRoute>> entry : tasks.entrySet()) {
+                routes.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("The computation of the routes was cancelled");
+        } catch (ExecutionException e) {
+            // Rethrow the failure of the courier as join() would
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // Do not leave work behind if a courier failed
+            tasks.values().forEach(task -> task.cancel(false));
+        }
+        return routes;
+    }
+
+    /**
+     * Plan the route of a courier, improving it until no move shortens it
+     *
+     * @param snapshot         The snapshot of the map
+     * @param deliveryRequests The delivery requests of the courier, which must not be empty
+     * @param algorithm        The shortest path algorithm of the legs
+     * @return The ids of the nodes of the route, from the warehouse back to it
+     */
+    public List<Long> planRoute(GraphSnapshot snapshot, List<DeliveryRequest> deliveryRequests, RoutingAlgorithm algorithm) {
+        return planRoute(snapshot, deliveryRequests, algorithm, RoutingSolver.LOCAL_SEARCH, Long.MAX_VALUE)
+                .nodes(snapshot.getGraph());
+    }
+
+    /**
+     * Plan the route of a courier
+     *
+     * @param snapshot         The snapshot of the map
+     * @param deliveryRequests The delivery requests of the courier, which must not be empty
+     * @param algorithm        The shortest path algorithm of the legs
+     * @param solver           The method ordering the stops
+     * @param deadline         The {@link System#nanoTime()} after which the route is no longer improved
+     * @return The route
+     */
+    public CourierRoute planRoute(GraphSnapshot snapshot, List<DeliveryRequest> deliveryRequests, RoutingAlgorithm algorithm,
+                                  RoutingSolver solver, long deadline) {
+        return planRoute(snapshot, deliveryRequests, algorithm, solver, deadline,
+                new AtomicLong(treeArenaMegabytes * 1024 * 1024), () -> false, null);
+    }
+
+    /**
+     * Plan the route of a courier, telling the first route as soon as its tour is built, before it is improved, and
+     * then each better route found by local search and ALNS
+     *
+     * @param arena     The bytes left for the shortest-path trees of the computation, from which the trees of the
+     *                  courier are taken
+     * @param cancelled Whether the computation was cancelled, after which the route is no longer improved
+     * @param listener  Called with each route, the last one being the returned route, or null if only the returned
+     *                  route is needed: the routes of the intermediate tours are then not built, only the last tour is
+     * @see #planRoute(GraphSnapshot, List, RoutingAlgorithm, RoutingSolver, long)
+     */
+    public CourierRoute planRoute(GraphSnapshot snapshot, List<DeliveryRequest> deliveryRequests, RoutingAlgorithm algorithm,
+                                  RoutingSolver solver, long deadline, AtomicLong arena,
+                                  BooleanSupplier cancelled, Consumer<CourierRoute> listener) {
+        Long warehouseId = deliveryRequests.get(0).getIdWarehouse();
+
+        // The legs are computed once and then read from the matrix
+        List<Long> stops = new ArrayList<>();
+        stops.add(warehouseId);
+        for (DeliveryRequest request : deliveryRequests) {
+            stops.add(request.getIdPickup());
+            stops.add(request.getIdDelivery());
+        }
+        DistanceMatrix matrix = DistanceMatrix.build(snapshot, stops, algorithm, arena);
+        PickupDeliveryProblem problem = PickupDeliveryProblem.of(matrix, deliveryRequests);
+
+        int[] tour;
+        if (problem.requestCount() <= Math.min(exactMaxRequests, ExactTourSolver.MAX_REQUESTS)) {
+            long exactDeadline = System.nanoTime() + exactTimeBudget * 1_000_000;
+            tour = exactSolver.solve(problem, deadline - exactDeadline < 0 ? deadline : exactDeadline, cancelled);
+        } else {
+            tour = heuristicSolver.solve(problem, deadline, cancelled);
+        }
+
+        // Only the latest tour is kept, and its route is built only if it is told
+        Function<int[], CourierRoute> route = t -> new CourierRoute(snapshot.getMapVersion(), algorithm, solver,
+                deliveryRequests, problem, matrix, t);
+        int[][] best = {tour};
+        CourierRoute[] latest = new CourierRoute[1];
+        Consumer<int[]> improved = better -> {
+            best[0] = better;
+            if (listener != null) {
+                latest[0] = route.apply(better);
+                listener.accept(latest[0]);
+            }
+        };
+        improved.accept(tour);
+        localSearch.improve(problem, tour, deadline, cancelled, improved);
+        if (solver == RoutingSolver.ALNS
+                || (solver == RoutingSolver.AUTO && problem.requestCount() >= alnsMinRequests)) {
+            improveByAlns(problem, best[0], deadline, cancelled, improved);
+        }
+        return latest[0] != null ? latest[0] : route.apply(best[0]);
+    }
+
+    private void improveByAlns(PickupDeliveryProblem problem, int[] tour, long deadline, BooleanSupplier cancelled,
+                               Consumer<int[]> listener) {
+        int searches = alnsSearches > 0 ? alnsSearches : Runtime.getRuntime().availableProcessors();
+        AlnsTourSolver.Result result = new AlnsTourSolver(searches, alnsIterations, alnsSeed)
+                .improve(problem, tour, deadline, cancelled, listener);
+
+        List<AlnsTourSolver.Improvement> improvements = result.getImprovements();
+        AlnsTourSolver.Improvement last = improvements.get(improvements.size() - 1);
+        logger.info("ALNS on {} requests: cost {} -> {} after {} iterations of {} searches, last improvement at {} ms",
+                problem.requestCount(), Math.round(improvements.get(0).getCost()), Math.round(last.getCost()),
+                result.getIterations(), searches, last.getElapsedMillis());
+    }
+
+    /**
+     * Receives the routes of the couriers planned by {@link #planRoutes}
+     */
+    public interface Listener {
+
+        /**
+         * Called with the first route of a courier, then with each better one
+         *
+         * @param courierId The id of the courier
+         * @param route     The route
+         */
+        void routeFound(Long courierId, CourierRoute route);
+
+        /**
+         * @return Whether the routes found before the last one of each courier are told. When not, only the last one
+         * is built and told.
+         */
+        default boolean wantsImprovements() {
+            return true;
+        }
+
+        /**
+         * @return Whether the computation was cancelled, checked by the solvers along with the deadline
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+
+        /**
+         * Called once the route of a courier will no longer improve
+         *
+         * @param courierId The id of the courier
+         */
+        default void courierFinished(Long courierId) {
+        }
+    }
+}
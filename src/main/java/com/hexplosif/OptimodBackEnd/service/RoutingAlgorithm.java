@@ -0,0 +1,33 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+/**
+ * Shortest path algorithm used to compute the legs of the routes
+ */
+public enum RoutingAlgorithm {
+    /**
+     * One bounded one-to-many Dijkstra search per stop
+     */
+    DIJKSTRA,
+
+    /**
+     * One A* search per leg, guided by the straight-line distance to the end of the leg
+     */
+    ASTAR,
+
+    /**
+     * One A* search per leg, guided by the landmark distances (ALT), falls back to ASTAR if the landmarks of the map
+     * were not computed
+     */
+    ALT,
+
+    /**
+     * One bidirectional Dijkstra search per leg, from both ends of the leg
+     */
+    BIDIRECTIONAL,
+
+    /**
+     * One Contraction Hierarchies search per leg, falls back to bidirectional Dijkstra if the hierarchy of the map
+     * was not built
+     */
+    CH
+}
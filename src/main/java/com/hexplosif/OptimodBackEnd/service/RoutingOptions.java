@@ -0,0 +1,36 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import lombok.Data;
+
+/**
+ * Options of a route computation, bound from the query parameters of /calculateOptimalRoute.
+ * Options left null fall back to the configured defaults.
+ */
+@Data
+public class RoutingOptions {
+
+    /**
+     * Shortest path algorithm used for the legs
+     */
+    private RoutingAlgorithm algorithm;
+
+    /**
+     * Method used to order the stops of the routes
+     */
+    private RoutingSolver solver;
+
+    /**
+     * Time in milliseconds given to the optimization of the routes, after which the best routes found are returned
+     */
+    private Long deadlineMs;
+
+    /**
+     * Whether the routes kept up to date since the last computation are returned instead of planning them again
+     */
+    private Boolean incremental;
+
+    /**
+     * Format of the routes, the ids of their nodes when null
+     */
+    private RouteFormat format;
+}
@@ -0,0 +1,22 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+/**
+ * Method used to order the stops of the routes
+ */
+public enum RoutingSolver {
+    /**
+     * ALNS for the couriers with at least {@code optimod.routing.alns.min-requests} requests, LOCAL_SEARCH for the
+     * others
+     */
+    AUTO,
+
+    /**
+     * Exact solver for the small couriers and nearest-next heuristic for the others, then local search
+     */
+    LOCAL_SEARCH,
+
+    /**
+     * LOCAL_SEARCH followed by parallel adaptive large neighbourhood searches until the deadline
+     */
+    ALNS
+}
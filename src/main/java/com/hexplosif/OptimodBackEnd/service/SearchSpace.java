@@ -0,0 +1,78 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.Arrays;
+
+/**
+ * Reusable state of a shortest path search: tentative distances, predecessors and the heap.
+ * <p>
+ * Entries are tagged with the number of the search that wrote them, so that starting a new search does not need to
+ * clear arrays of the size of the graph.
+ */
+final class SearchSpace {
+
+    final IndexedHeap heap;
+
+    private final double[] distances;
+
+    private final int[] previousNodes;
+
+    private final int[] stamps;
+
+    private int stamp = 1;
+
+    SearchSpace(int capacity) {
+        heap = new IndexedHeap(capacity);
+        distances = new double[capacity];
+        previousNodes = new int[capacity];
+        stamps = new int[capacity];
+    }
+
+    /**
+     * Forget the previous search
+     */
+    void reset() {
+        heap.clear();
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * @return The tentative distance of the node, Double.MAX_VALUE if it was not reached
+     */
+    double distance(int node) {
+        return stamps[node] == stamp ? distances[node] : Double.MAX_VALUE;
+    }
+
+    /**
+     * @return The predecessor of the node, -1 if it was not reached or is the source
+     */
+    int previous(int node) {
+        return stamps[node] == stamp ? previousNodes[node] : -1;
+    }
+
+    /**
+     * Record a shorter distance to a node
+     */
+    void update(int node, double distance, int previous) {
+        stamps[node] = stamp;
+        distances[node] = distance;
+        previousNodes[node] = previous;
+    }
+
+    /**
+     * @return The nodes from the source to the node, following the predecessors
+     */
+    int[] pathTo(int node) {
+        int length = 0;
+        for (int at = node; at != -1; at = previous(at)) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int at = node; at != -1; at = previous(at)) {
+            path[--length] = at;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,390 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Road network of a map cut into Web Mercator tiles (256 pixels wide, as in slippy maps), precomputed for a range of
+ * zoom levels.
+ * <p>
+ * The segments are first joined into lines between the intersections and dead ends of the graph. At each zoom level,
+ * the lines are simplified with the Douglas-Peucker algorithm to within one pixel, and clipped to each tile with a
+ * small buffer so that lines do not show seams at the tile borders. A tile is a JSON array of
+ * {@link Polyline encoded polylines}, serialized once and served with a strong ETag computed from its bytes. The tiles
+ * of a zoom level are clipped and serialized in parallel.
+ */
+public final class SegmentTiles {
+
+    private static final int TILE_PIXELS = 256;
+
+    /**
+     * Part of the width of a tile added around it when clipping
+     */
+    private static final double BUFFER = 8.0 / TILE_PIXELS;
+
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private static final Tile EMPTY = Tile.of(List.of());
+
+    /**
+     * Serialized tile
+     */
+    @Value
+    public static class Tile {
+
+        /**
+         * The JSON array of the encoded lines of the tile
+         */
+        byte[] content;
+
+        /**
+         * Strong ETag of the content, with its quotes
+         */
+        String eTag;
+
+        static Tile of(List<String> lines) {
+            StringBuilder json = new StringBuilder("[");
+            for (String line : lines) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                // Encoded polylines only contain printable characters, the backslash being the only one to escape
+                json.append('"').append(line.replace("\\", "\\\\")).append('"');
+            }
+            byte[] content = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : content) {
+                hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            return new Tile(content, String.format("\"%016x\"", hash));
+        }
+    }
+
+    private final long mapVersion;
+
+    private final int minZoom;
+
+    private final int maxZoom;
+
+    /**
+     * The non-empty tiles of each zoom level, by {@link #key(int, int)}
+     */
+    private final List<Map<Long, Tile>> tiles;
+
+    private SegmentTiles(long mapVersion, int minZoom, int maxZoom, List<Map<Long, Tile>> tiles) {
+        this.mapVersion = mapVersion;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Compute the tiles of the segments of a map
+     *
+     * @param snapshot The snapshot of the map
+     * @param minZoom  The smallest zoom level
+     * @param maxZoom  The largest zoom level
+     * @param pool     The pool the tiles are built on
+     * @return The tiles
+     */
+    public static SegmentTiles build(GraphSnapshot snapshot, int minZoom, int maxZoom, ForkJoinPool pool) {
+        List<double[]> lines = lines(snapshot.getGraph());
+        List<Map<Long, Tile>> tiles = new ArrayList<>();
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            int level = zoom;
+            tiles.add(pool.submit(() -> buildLevel(lines, level)).join());
+        }
+        return new SegmentTiles(snapshot.getMapVersion(), minZoom, maxZoom, tiles);
+    }
+
+    /**
+     * @return The version of the map the tiles were built from
+     */
+    public long getMapVersion() {
+        return mapVersion;
+    }
+
+    /**
+     * @return The number of non-empty tiles of all zoom levels
+     */
+    public int tileCount() {
+        return tiles.stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Get a tile
+     *
+     * @param zoom The zoom level
+     * @param x    The column of the tile, from the west
+     * @param y    The row of the tile, from the north
+     * @return The tile, empty if no segment crosses it
+     * @throws IllegalStateException If the zoom level is not precomputed or the tile does not exist
+     */
+    public Tile tile(int zoom, int x, int y) throws IllegalStateException {
+        if (zoom < minZoom || zoom > maxZoom) {
+            throw new IllegalStateException("The zoom level must be between " + minZoom + " and " + maxZoom + ".");
+        }
+        if (x < 0 || y < 0 || x >= 1 << zoom || y >= 1 << zoom) {
+            throw new IllegalStateException("The tile is outside of the zoom level.");
+        }
+        return tiles.get(zoom - minZoom).getOrDefault(key(x, y), EMPTY);
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | y;
+    }
+
+    /**
+     * Join the edges of the graph between located nodes into lines that only stop at the nodes not linked to
+     * exactly two other nodes
+     *
+     * @return The lines, as interleaved x, y positions in the Web Mercator square [0, 1]
+     */
+    static List<double[]> lines(RoadGraph graph) {
+        int nodeCount = graph.nodeCount();
+        int[][] neighbours = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            neighbours[node] = graph.hasCoordinates(node) ? locatedNeighbours(graph, node) : new int[0];
+        }
+
+        List<double[]> lines = new ArrayList<>();
+        boolean[][] visited = new boolean[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            visited[node] = new boolean[neighbours[node].length];
+        }
+        // Lines from the ends first, then the loops left
+        for (int pass = 0; pass < 2; pass++) {
+            for (int node = 0; node < nodeCount; node++) {
+                if (pass == 0 && neighbours[node].length == 2) continue;
+                for (int i = 0; i < neighbours[node].length; i++) {
+                    if (!visited[node][i]) {
+                        lines.add(walk(graph, neighbours, visited, node, i));
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static int[] locatedNeighbours(RoadGraph graph, int node) {
+        return IntStream.range(graph.firstEdge(node), graph.lastEdge(node))
+                .map(graph::edgeTarget)
+                .filter(target -> target != node && graph.hasCoordinates(target))
+                .distinct().sorted().toArray();
+    }
+
+    private static double[] walk(RoadGraph graph, int[][] neighbours, boolean[][] visited, int start, int first) {
+        List<Integer> nodes = new ArrayList<>(List.of(start));
+        int previous = start;
+        int index = first;
+        while (true) {
+            int next = neighbours[previous][index];
+            visited[previous][index] = true;
+            visited[next][Arrays.binarySearch(neighbours[next], previous)] = true;
+            nodes.add(next);
+            if (neighbours[next].length != 2 || next == start) {
+                break;
+            }
+            index = neighbours[next][0] == previous ? 1 : 0;
+            if (visited[next][index]) {
+                break;
+            }
+            previous = next;
+        }
+
+        double[] line = new double[2 * nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            int node = nodes.get(i);
+            line[2 * i] = (graph.longitude(node) + 180.0) / 360.0;
+            double latitude = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, graph.latitude(node))));
+            line[2 * i + 1] = (1.0 - Math.log(Math.tan(latitude) + 1.0 / Math.cos(latitude)) / Math.PI) / 2.0;
+        }
+        return line;
+    }
+
+    private static Map<Long, Tile> buildLevel(List<double[]> lines, int zoom) {
+        int tileCount = 1 << zoom;
+        double pixel = 1.0 / ((double) tileCount * TILE_PIXELS);
+
+        List<double[]> simplified = lines.parallelStream()
+                .map(line -> simplify(line, pixel))
+                .filter(line -> line.length > 2)
+                .collect(Collectors.toList());
+
+        // Lines crossing the bounds of each tile, buffer included
+        Map<Long, List<double[]>> linesByTile = new HashMap<>();
+        for (double[] line : simplified) {
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < line.length; i += 2) {
+                minX = Math.min(minX, line[i]);
+                maxX = Math.max(maxX, line[i]);
+                minY = Math.min(minY, line[i + 1]);
+                maxY = Math.max(maxY, line[i + 1]);
+            }
+            int fromX = Math.max(0, (int) Math.floor(minX * tileCount - BUFFER));
+            int toX = Math.min(tileCount - 1, (int) Math.floor(maxX * tileCount + BUFFER));
+            int fromY = Math.max(0, (int) Math.floor(minY * tileCount - BUFFER));
+            int toY = Math.min(tileCount - 1, (int) Math.floor(maxY * tileCount + BUFFER));
+            for (int x = fromX; x <= toX; x++) {
+                for (int y = fromY; y <= toY; y++) {
+                    linesByTile.computeIfAbsent(key(x, y), key -> new ArrayList<>()).add(line);
+                }
+            }
+        }
+
+        Map<Long, Tile> tiles = new HashMap<>();
+        linesByTile.entrySet().parallelStream()
+                .map(entry -> Map.entry(entry.getKey(), clip(entry.getValue(), entry.getKey(), tileCount)))
+                .filter(entry -> !entry.getValue().isEmpty())
+                .collect(Collectors.toList())
+                .forEach(entry -> tiles.put(entry.getKey(), Tile.of(entry.getValue())));
+        return tiles;
+    }
+
+    /**
+     * Douglas-Peucker simplification of a line
+     *
+     * @param line      The interleaved positions of the line
+     * @param tolerance The largest distance between the line and its simplification
+     * @return The positions kept, only the ends if the line is shorter than the tolerance
+     */
+    static double[] simplify(double[] line, double tolerance) {
+        int count = line.length / 2;
+        boolean[] kept = new boolean[count];
+        kept[0] = true;
+        kept[count - 1] = true;
+        int[] stack = new int[2 * count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double largest = tolerance * tolerance;
+            for (int i = first + 1; i < last; i++) {
+                double distance = squaredDistanceToSegment(line, i, first, last);
+                if (distance > largest) {
+                    largest = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                kept[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        int keptCount = 0;
+        double[] simplified = new double[line.length];
+        for (int i = 0; i < count; i++) {
+            if (kept[i]) {
+                simplified[2 * keptCount] = line[2 * i];
+                simplified[2 * keptCount + 1] = line[2 * i + 1];
+                keptCount++;
+            }
+        }
+        if (keptCount == 2 && Math.hypot(simplified[2] - simplified[0], simplified[3] - simplified[1]) < tolerance) {
+            // Smaller than a pixel
+            return new double[2];
+        }
+        return Arrays.copyOf(simplified, 2 * keptCount);
+    }
+
+    private static double squaredDistanceToSegment(double[] line, int point, int first, int last) {
+        double x = line[2 * point], y = line[2 * point + 1];
+        double x1 = line[2 * first], y1 = line[2 * first + 1];
+        double dx = line[2 * last] - x1, dy = line[2 * last + 1] - y1;
+        double squaredLength = dx * dx + dy * dy;
+        double t = squaredLength > 0 ? Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / squaredLength)) : 0;
+        double ex = x1 + t * dx - x, ey = y1 + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Clip lines to the bounds of a tile and its buffer, with the Liang-Barsky algorithm on each segment
+     *
+     * @return The encoded pieces of the lines inside the tile
+     */
+    private static List<String> clip(List<double[]> lines, long key, int tileCount) {
+        int x = (int) (key >>> 32);
+        int y = (int) key;
+        double minX = (x - BUFFER) / tileCount, maxX = (x + 1 + BUFFER) / tileCount;
+        double minY = (y - BUFFER) / tileCount, maxY = (y + 1 + BUFFER) / tileCount;
+
+        List<String> pieces = new ArrayList<>();
+        for (double[] line : lines) {
+            double[] piece = new double[line.length + 2];
+            int length = 0;
+            for (int i = 0; i + 3 < line.length; i += 2) {
+                double x1 = line[i], y1 = line[i + 1];
+                double dx = line[i + 2] - x1, dy = line[i + 3] - y1;
+                double enter = 0.0, exit = 1.0;
+                double[] p = {-dx, dx, -dy, dy};
+                double[] q = {x1 - minX, maxX - x1, y1 - minY, maxY - y1};
+                boolean inside = true;
+                for (int side = 0; side < 4 && inside; side++) {
+                    if (p[side] == 0) {
+                        inside = q[side] >= 0;
+                    } else if (p[side] < 0) {
+                        enter = Math.max(enter, q[side] / p[side]);
+                    } else {
+                        exit = Math.min(exit, q[side] / p[side]);
+                    }
+                }
+                if (!inside || enter > exit) {
+                    length = flush(piece, length, pieces);
+                    continue;
+                }
+                if (enter > 0.0) {
+                    // The line comes back into the tile
+                    length = flush(piece, length, pieces);
+                }
+                if (length == 0) {
+                    piece[length++] = x1 + enter * dx;
+                    piece[length++] = y1 + enter * dy;
+                }
+                piece[length++] = x1 + exit * dx;
+                piece[length++] = y1 + exit * dy;
+                if (exit < 1.0) {
+                    length = flush(piece, length, pieces);
+                }
+            }
+            flush(piece, length, pieces);
+        }
+        return pieces;
+    }
+
+    /**
+     * Encode the piece of line being clipped, if any
+     *
+     * @return The length of the next piece
+     */
+    private static int flush(double[] piece, int length, List<String> pieces) {
+        if (length >= 4) {
+            int count = length / 2;
+            double[] latitudes = new double[count];
+            double[] longitudes = new double[count];
+            for (int i = 0; i < count; i++) {
+                longitudes[i] = piece[2 * i] * 360.0 - 180.0;
+                latitudes[i] = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1.0 - 2.0 * piece[2 * i + 1]))));
+            }
+            pieces.add(Polyline.encode(latitudes, longitudes));
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,271 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.Arrays;
+
+/**
+ * K-d tree over the nodes of a {@link RoadGraph} whose coordinates are known, to find the nodes nearest to a point.
+ * <p>
+ * The nodes are placed on the unit sphere, where the straight-line distance grows with the great-circle distance, so
+ * the nearest nodes are exact at any scale. The tree is implicit: the node at the middle of each range of the arrays
+ * splits the range along the axis of largest spread, and no node objects are allocated.
+ */
+public final class SpatialIndex {
+
+    /**
+     * The index in the graph of the nodes, in tree order
+     */
+    private final int[] nodes;
+
+    /**
+     * Position of the nodes on the unit sphere, interleaved x, y, z, in tree order
+     */
+    private final double[] points;
+
+    /**
+     * The axis along which the node at each position splits its range
+     */
+    private final byte[] axes;
+
+    private SpatialIndex(int[] nodes, double[] points, byte[] axes) {
+        this.nodes = nodes;
+        this.points = points;
+        this.axes = axes;
+    }
+
+    /**
+     * Build the index of the nodes of a graph, ignoring the nodes whose coordinates are unknown
+     *
+     * @param graph The graph
+     * @return The index
+     */
+    public static SpatialIndex build(RoadGraph graph) {
+        int count = 0;
+        int[] nodes = new int[graph.nodeCount()];
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            if (graph.hasCoordinates(node)) {
+                nodes[count++] = node;
+            }
+        }
+        nodes = Arrays.copyOf(nodes, count);
+        double[] points = new double[3 * count];
+        for (int i = 0; i < count; i++) {
+            toPoint(graph.latitude(nodes[i]), graph.longitude(nodes[i]), points, 3 * i);
+        }
+
+        SpatialIndex index = new SpatialIndex(nodes, points, new byte[count]);
+        index.split(0, count);
+        return index;
+    }
+
+    private static void toPoint(double latitude, double longitude, double[] points, int offset) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        points[offset] = Math.cos(phi) * Math.cos(lambda);
+        points[offset + 1] = Math.cos(phi) * Math.sin(lambda);
+        points[offset + 2] = Math.sin(phi);
+    }
+
+    /**
+     * Arrange the range [from, to) of the arrays into a subtree
+     */
+    private void split(int from, int to) {
+        if (to - from <= 1) {
+            return;
+        }
+        int axis = 0;
+        double largestSpread = -1.0;
+        for (int a = 0; a < 3; a++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, points[3 * i + a]);
+                max = Math.max(max, points[3 * i + a]);
+            }
+            if (max - min > largestSpread) {
+                largestSpread = max - min;
+                axis = a;
+            }
+        }
+
+        int middle = (from + to) >>> 1;
+        select(from, to - 1, middle, axis);
+        axes[middle] = (byte) axis;
+        split(from, middle);
+        split(middle + 1, to);
+    }
+
+    /**
+     * Move the k-th smallest point of the range [left, right] along the axis to position k, with smaller points
+     * before it and larger points after it
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (left < right) {
+            double pivot = points[3 * ((left + right) >>> 1) + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (points[3 * i + axis] < pivot) i++;
+                while (points[3 * j + axis] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int node = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = node;
+        for (int a = 0; a < 3; a++) {
+            double coordinate = points[3 * i + a];
+            points[3 * i + a] = points[3 * j + a];
+            points[3 * j + a] = coordinate;
+        }
+    }
+
+    /**
+     * @return The number of nodes of the index
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Find the node nearest to a point
+     *
+     * @param latitude  The latitude of the point
+     * @param longitude The longitude of the point
+     * @return The index in the graph of the nearest node, or -1 if the index is empty
+     */
+    public int nearest(double latitude, double longitude) {
+        int[] nearest = nearest(latitude, longitude, 1);
+        return nearest.length > 0 ? nearest[0] : -1;
+    }
+
+    /**
+     * Find the nodes nearest to a point
+     *
+     * @param latitude  The latitude of the point
+     * @param longitude The longitude of the point
+     * @param k         The number of nodes to find
+     * @return The indices in the graph of the k nearest nodes (or all the nodes if there are fewer), nearest first
+     */
+    public int[] nearest(double latitude, double longitude, int k) {
+        double[] query = new double[3];
+        toPoint(latitude, longitude, query, 0);
+        Candidates candidates = new Candidates(Math.min(k, nodes.length));
+        if (candidates.capacity > 0) {
+            search(0, nodes.length, query, candidates);
+        }
+        return candidates.sorted();
+    }
+
+    private void search(int from, int to, double[] query, Candidates candidates) {
+        if (from >= to) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        double dx = points[3 * middle] - query[0];
+        double dy = points[3 * middle + 1] - query[1];
+        double dz = points[3 * middle + 2] - query[2];
+        candidates.offer(nodes[middle], dx * dx + dy * dy + dz * dz);
+
+        int axis = axes[middle];
+        double difference = query[axis] - points[3 * middle + axis];
+        if (difference < 0) {
+            search(from, middle, query, candidates);
+            if (difference * difference < candidates.bound()) {
+                search(middle + 1, to, query, candidates);
+            }
+        } else {
+            search(middle + 1, to, query, candidates);
+            if (difference * difference < candidates.bound()) {
+                search(from, middle, query, candidates);
+            }
+        }
+    }
+
+    /**
+     * The nearest nodes found so far, in a max-heap on their squared distance to the query
+     */
+    private static final class Candidates {
+
+        private final int capacity;
+
+        private final int[] nodes;
+
+        private final double[] distances;
+
+        private int size;
+
+        Candidates(int capacity) {
+            this.capacity = capacity;
+            this.nodes = new int[capacity];
+            this.distances = new double[capacity];
+        }
+
+        /**
+         * @return The squared distance below which a node becomes a candidate
+         */
+        double bound() {
+            return size < capacity ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int node, double distance) {
+            if (size < capacity) {
+                int at = size++;
+                while (at > 0 && distances[(at - 1) / 2] < distance) {
+                    nodes[at] = nodes[(at - 1) / 2];
+                    distances[at] = distances[(at - 1) / 2];
+                    at = (at - 1) / 2;
+                }
+                nodes[at] = node;
+                distances[at] = distance;
+            } else if (distance < distances[0]) {
+                siftDown(node, distance, size);
+            }
+        }
+
+        /**
+         * Replace the root of the first {@code length} entries and restore the heap
+         */
+        private void siftDown(int node, double distance, int length) {
+            int at = 0;
+            while (2 * at + 1 < length) {
+                int child = 2 * at + 1;
+                if (child + 1 < length && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                nodes[at] = nodes[child];
+                distances[at] = distances[child];
+                at = child;
+            }
+            nodes[at] = node;
+            distances[at] = distance;
+        }
+
+        /**
+         * @return The candidates, nearest first. The heap is emptied.
+         */
+        int[] sorted() {
+            int[] sorted = new int[size];
+            for (int length = size; length > 0; length--) {
+                sorted[length - 1] = nodes[0];
+                siftDown(nodes[length - 1], distances[length - 1], length - 1);
+            }
+            size = 0;
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the {@link SegmentTiles tiles} of the loaded map. They are built after each map load, and built again on the
+ * first request for a tile after a modification of the map.
+ */
+@Service
+public class TileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TileService.class);
+
+    @Autowired
+    private GraphSnapshotService graphSnapshotService;
+
+    @Autowired
+    private RoutePlanner routePlanner;
+
+    @Value("${optimod.tiles.min-zoom:10}")
+    private int minZoom;
+
+    @Value("${optimod.tiles.max-zoom:16}")
+    private int maxZoom;
+
+    private volatile SegmentTiles tiles;
+
+    /**
+     * Build the tiles of a snapshot of the map
+     *
+     * @param snapshot The snapshot
+     * @return The tiles
+     */
+    public synchronized SegmentTiles build(GraphSnapshot snapshot) {
+        long start = System.nanoTime();
+        tiles = SegmentTiles.build(snapshot, minZoom, maxZoom, routePlanner.getPool());
+        logger.info("{} tiles of zoom levels {} to {} built in {} ms", tiles.tileCount(), minZoom, maxZoom,
+                (System.nanoTime() - start) / 1_000_000);
+        return tiles;
+    }
+
+    /**
+     * Get a tile of the current map
+     *
+     * @param zoom The zoom level
+     * @param x    The column of the tile, from the west
+     * @param y    The row of the tile, from the north
+     * @return The tile
+     * @throws IllegalStateException If the zoom level is not precomputed or the tile does not exist
+     */
+    public SegmentTiles.Tile getTile(int zoom, int x, int y) throws IllegalStateException {
+        GraphSnapshot snapshot = graphSnapshotService.getSnapshot();
+        SegmentTiles current = tiles;
+        if (current == null || current.getMapVersion() != snapshot.getMapVersion()) {
+            synchronized (this) {
+                current = tiles;
+                if (current == null || current.getMapVersion() != snapshot.getMapVersion()) {
+                    current = build(snapshot);
+                }
+            }
+        }
+        return current.tile(zoom, x, y);
+    }
+}
@@ -0,0 +1,28 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Builds the tour of a {@link PickupDeliveryProblem}
+ */
+public interface TourSolver {
+
+    /**
+     * Solve a problem
+     *
+     * @param problem  The problem
+     * @param deadline The {@link System#nanoTime()} after which the solver returns the best tour found so far
+     * @return A feasible tour
+     */
+    default int[] solve(PickupDeliveryProblem problem, long deadline) {
+        return solve(problem, deadline, () -> false);
+    }
+
+    /**
+     * Solve a problem, stopping early if the computation is cancelled
+     *
+     * @param cancelled Whether the computation was cancelled, checked along with the deadline
+     * @see #solve(PickupDeliveryProblem, long)
+     */
+    int[] solve(PickupDeliveryProblem problem, long deadline, BooleanSupplier cancelled);
+}
@@ -0,0 +1,29 @@
+package com.hexplosif.OptimodBackEnd.service;
+
+import lombok.Data;
+
+/**
+ * Bounding box of the map shown to the user and page of the items inside it, bound from the query parameters of
+ * /nodes/viewport and /segments/viewport
+ */
+@Data
+public class Viewport {
+
+    private Double minLatitude;
+
+    private Double maxLatitude;
+
+    private Double minLongitude;
+
+    private Double maxLongitude;
+
+    /**
+     * Index of the page, from 0
+     */
+    private Integer page;
+
+    /**
+     * Number of items per page, the configured default when null
+     */
+    private Integer size;
+}
@@ -0,0 +1,73 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.service.IndexedHeap;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertFalse;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+/**
+ * Test class for IndexedHeap.
+ */
+public class IndexedHeapTest {
+
+    /**
+     * Tests that nodes are polled by increasing key after random pushes and key decreases.
+     */
+    @Test
+    @Tag("Heap")
+    public void testPollOrder() {
+        int capacity = 1000;
+        IndexedHeap heap = new IndexedHeap(capacity);
+        double[] keys = new double[capacity];
+        Arrays.fill(keys, Double.MAX_VALUE);
+        Random random = new Random(3);
+
+        for (int i = 0; i < 5000; i++) {
+            int node = random.nextInt(capacity);
+            double key = random.nextDouble() * 100;
+            heap.push(node, key);
+            keys[node] = Math.min(keys[node], key);
+        }
+
+        double previous = -1;
+        int polled = 0;
+        while (!heap.isEmpty()) {
+            double key = heap.peekKey();
+            int node = heap.poll();
+            assertEquals("The key of the polled node is incorrect", keys[node], key);
+            assertTrue("The nodes should be polled by increasing key", key >= previous);
+            assertFalse("A polled node should not be queued", heap.contains(node));
+            previous = key;
+            polled++;
+        }
+        assertEquals("Each node should be queued once", (int) Arrays.stream(keys).filter(k -> k < Double.MAX_VALUE).count(), polled);
+    }
+
+    /**
+     * Tests that a greater key does not move a queued node, and that clear empties the heap.
+     */
+    @Test
+    @Tag("Heap")
+    public void testDecreaseKeyAndClear() {
+        IndexedHeap heap = new IndexedHeap(3);
+        heap.push(0, 5.0);
+        heap.push(1, 3.0);
+        heap.push(0, 7.0);
+        heap.push(2, 4.0);
+        heap.push(0, 1.0);
+
+        assertEquals("The heap size is incorrect", 3, heap.size());
+        assertEquals("The decreased node should be first", 0, heap.poll());
+        assertEquals("The node order is incorrect", 1, heap.poll());
+
+        heap.clear();
+        assertTrue("The heap should be empty", heap.isEmpty());
+        assertFalse("The node should not be queued", heap.contains(2));
+    }
+}
@@ -0,0 +1,98 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+import com.hexplosif.OptimodBackEnd.service.MapReader;
+import com.hexplosif.OptimodBackEnd.service.ParallelMapReader;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+/**
+ * Parsing time of a large map file by the sequential reader and by the parallel reader on 1, 4 and 16 threads.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("Benchmark")
+public class MapLoadBenchmarkTest {
+
+    private static final int GRID_SIZE = 500;
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final int RUNS = 5;
+
+    /**
+     * Compares the parsing time of the readers, without saving the elements.
+     */
+    @Test
+    public void compareMapReaders(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("grid.xml");
+        TestGraphs.writeMap(file, TestGraphs.gridNodes(GRID_SIZE), TestGraphs.gridSegments(GRID_SIZE, 42));
+        System.out.printf("Map file of %,d bytes, %d processors%n", Files.size(file), Runtime.getRuntime().availableProcessors());
+
+        // Warm up both readers before timing them
+        Counter counter = new Counter();
+        MapReader.Counts expected = MapReader.read(file, CHUNK_SIZE, counter);
+        long expectedChecksum = counter.checksum;
+        for (int run = 0; run < RUNS; run++) {
+            MapReader.read(file, CHUNK_SIZE, new Counter());
+            ParallelMapReader.read(file, 4, CHUNK_SIZE, new Counter());
+        }
+
+        long start = System.nanoTime();
+        for (int run = 0; run < RUNS; run++) {
+            MapReader.read(file, CHUNK_SIZE, new Counter());
+        }
+        report("Sequential StAX", expected, (System.nanoTime() - start) / RUNS);
+
+        for (int threads : new int[]{1, 4, 16}) {
+            start = System.nanoTime();
+            for (int run = 0; run < RUNS; run++) {
+                counter = new Counter();
+                MapReader.Counts counts = ParallelMapReader.read(file, threads, CHUNK_SIZE, counter);
+                assertEquals("The counts should not depend on the reader", expected, counts);
+                assertEquals("The elements should not depend on the reader", expectedChecksum, counter.checksum);
+            }
+            report("Parallel, " + threads + " threads", expected, (System.nanoTime() - start) / RUNS);
+        }
+    }
+
+    private static void report(String reader, MapReader.Counts counts, long time) {
+        long elements = counts.getNodeCount() + counts.getSegmentCount();
+        System.out.printf("%-20s : %,6.0f ms, %,.0f elements per second%n", reader, time / 1e6, elements / (time / 1e9));
+    }
+
+    /**
+     * Keeps an order-sensitive checksum of the elements handed by a reader
+     */
+    private static class Counter implements MapReader.Handler {
+
+        private long checksum;
+
+        @Override
+        public void nodes(List<Node> nodes) {
+            for (Node node : nodes) {
+                checksum = 31 * checksum + node.hashCode();
+            }
+        }
+
+        @Override
+        public void segments(List<Segment> segments) {
+            for (Segment segment : segments) {
+                checksum = 31 * checksum + segment.hashCode();
+            }
+        }
+
+        @Override
+        public void clear() {
+            checksum = 0;
+        }
+    }
+}
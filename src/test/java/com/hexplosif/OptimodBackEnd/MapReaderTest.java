@@ -0,0 +1,180 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+import com.hexplosif.OptimodBackEnd.service.MapReader;
+import com.hexplosif.OptimodBackEnd.service.ParallelMapReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+/**
+ * Test class for the sequential and parallel readers of map files.
+ */
+public class MapReaderTest {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * Tests that the parallel reader reads the same elements as the sequential one, whatever the number of threads.
+     */
+    @Test
+    @Tag("Load")
+    public void testParallelMapReader(@TempDir Path directory) throws Exception {
+        int size = 150;
+        List<Segment> segments = TestGraphs.gridSegments(size, 42);
+        segments.get(10).setName("Rue de l'Église & \"Co\" <1>");
+        segments.get(20_000).setName("Quai\tdu Rhône\r\n");
+        segments.get(30_000).setName("");
+        Path file = directory.resolve("grid.xml");
+        TestGraphs.writeMap(file, TestGraphs.gridNodes(size), segments);
+
+        for (Path map : List.of(Paths.get("src/test/java/data/petitPlan.xml"), file)) {
+            Collector expected = new Collector();
+            MapReader.Counts expectedCounts = MapReader.read(map, CHUNK_SIZE, expected);
+            for (int threads : new int[]{1, 4, 16}) {
+                Collector actual = new Collector();
+                MapReader.Counts counts = ParallelMapReader.read(map, threads, CHUNK_SIZE, actual);
+                assertEquals("The counts are incorrect with " + threads + " threads", expectedCounts, counts);
+                assertEquals("The nodes are incorrect with " + threads + " threads", expected.nodes, actual.nodes);
+                assertEquals("The segments are incorrect with " + threads + " threads", expected.segments, actual.segments);
+                assertEquals("The chunks are incorrect with " + threads + " threads", expected.chunks, actual.chunks);
+            }
+        }
+        assertEquals("The street names are incorrect", List.of("Rue de l'Église & \"Co\" <1>", "Quai du Rhône ", ""),
+                readSegmentNames(file, 10, 20_000, 30_000));
+    }
+
+    /**
+     * Tests that the parallel reader reports the same errors as the sequential one.
+     */
+    @Test
+    @Tag("Load")
+    public void testParallelMapReaderErrors(@TempDir Path directory) throws Exception {
+        int size = 100;
+        Path grid = directory.resolve("grid.xml");
+        TestGraphs.writeMap(grid, TestGraphs.gridNodes(size), TestGraphs.gridSegments(size, 42));
+        String content = Files.readString(grid);
+        int middle = content.indexOf("<troncon", content.length() / 2);
+
+        List<Path> maps = new ArrayList<>();
+        for (String name : List.of("wrongReseauTag", "wrongNoeudTag", "wrongTronconTag", "wrongIdNoeudAttribute",
+                "wrongLongueurTronconAttribute", "notXML")) {
+            maps.add(Paths.get("src/test/java/data/" + name + ".xml"));
+        }
+        maps.add(write(directory, "truncated.xml", content.substring(0, content.length() - 10)));
+        maps.add(write(directory, "badLength.xml", content.substring(0, middle)
+                + "<troncon destination=\"1\" longueur=\"long\" nomRue=\"\" origine=\"2\"/>" + content.substring(middle)));
+        maps.add(write(directory, "missingOrigin.xml", content.substring(0, middle)
+                + "<troncon destination=\"1\" longueur=\"1.0\" nomRue=\"\"/>" + content.substring(middle)));
+        maps.add(write(directory, "afterRoot.xml", content + "<noeud id=\"1\" latitude=\"0\" longitude=\"0\"/>"));
+
+        for (Path map : maps) {
+            Exception expected = Assertions.assertThrows(IllegalStateException.class,
+                    () -> MapReader.read(map, CHUNK_SIZE, new Collector()));
+            for (int threads : new int[]{1, 4, 16}) {
+                Exception exception = Assertions.assertThrows(IllegalStateException.class,
+                        () -> ParallelMapReader.read(map, threads, CHUNK_SIZE, new Collector()));
+                assertEquals("The exception message is incorrect for " + map.getFileName() + " with " + threads + " threads",
+                        expected.getMessage(), exception.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests that the parallel reader hands chunks before the end of the file is parsed, and that the handler is cleared
+     * when the end of the file must be read again by the sequential reader.
+     */
+    @Test
+    @Tag("Load")
+    public void testParallelMapReaderStreaming(@TempDir Path directory) throws Exception {
+        int size = 100;
+        Path grid = directory.resolve("grid.xml");
+        TestGraphs.writeMap(grid, TestGraphs.gridNodes(size), TestGraphs.gridSegments(size, 42));
+        String content = Files.readString(grid);
+        int last = content.lastIndexOf("<troncon");
+        Path cdata = write(directory, "cdata.xml", content.substring(0, last) + "<![CDATA[ ]]>" + content.substring(last));
+        Path truncated = write(directory, "truncated.xml", content.substring(0, content.length() - 10));
+
+        Collector expected = new Collector();
+        MapReader.Counts expectedCounts = MapReader.read(cdata, CHUNK_SIZE, expected);
+        Collector actual = new Collector();
+        MapReader.Counts counts = ParallelMapReader.read(cdata, 4, CHUNK_SIZE, actual);
+        assertEquals("The handler is not cleared once", 1, actual.clears);
+        assertEquals("The counts are incorrect", expectedCounts, counts);
+        assertEquals("The nodes are incorrect", expected.nodes, actual.nodes);
+        assertEquals("The segments are incorrect", expected.segments, actual.segments);
+        assertEquals("The chunks are incorrect", expected.chunks, actual.chunks);
+
+        Collector failed = new Collector();
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> ParallelMapReader.read(truncated, 4, CHUNK_SIZE, failed));
+        assertEquals("The handler is not cleared once", 1, failed.clears);
+
+        Collector valid = new Collector();
+        ParallelMapReader.read(grid, 4, CHUNK_SIZE, valid);
+        assertEquals("The handler is cleared", 0, valid.clears);
+    }
+
+    private static Path write(Path directory, String name, String content) throws IOException {
+        return Files.writeString(directory.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readSegmentNames(Path file, int... indices) throws IOException {
+        Collector collector = new Collector();
+        ParallelMapReader.read(file, 4, CHUNK_SIZE, collector);
+        List<String> names = new ArrayList<>();
+        for (int index : indices) {
+            names.add(collector.segments.get(index).getName());
+        }
+        return names;
+    }
+
+    /**
+     * Keeps a copy of the elements handed by a reader
+     */
+    private static class Collector implements MapReader.Handler {
+
+        private final List<Node> nodes = new ArrayList<>();
+
+        private final List<Segment> segments = new ArrayList<>();
+
+        /**
+         * The sizes of the chunks, negative for the chunks of segments
+         */
+        private final List<Integer> chunks = new ArrayList<>();
+
+        private int clears;
+
+        @Override
+        public void nodes(List<Node> nodes) {
+            this.nodes.addAll(nodes);
+            chunks.add(nodes.size());
+        }
+
+        @Override
+        public void segments(List<Segment> segments) {
+            this.segments.addAll(segments);
+            chunks.add(-segments.size());
+        }
+
+        @Override
+        public void clear() {
+            nodes.clear();
+            segments.clear();
+            chunks.clear();
+            clears++;
+        }
+    }
+}
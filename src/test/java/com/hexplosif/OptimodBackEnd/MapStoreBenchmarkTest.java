@@ -0,0 +1,78 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+import com.hexplosif.OptimodBackEnd.repository.NodeRepository;
+import com.hexplosif.OptimodBackEnd.repository.SegmentRepository;
+import com.hexplosif.OptimodBackEnd.service.MapReader;
+import com.hexplosif.OptimodBackEnd.service.OptimodService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+/**
+ * Rows saved per second when loading a map of a million segments with the bulk loader, and with the repositories it
+ * replaced on a sample of the map, then rows deleted per second when the map is deleted.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("Benchmark")
+@SpringBootTest
+public class MapStoreBenchmarkTest {
+
+    /**
+     * A grid of 708 x 708 nodes has 1,001,112 segments
+     */
+    private static final int GRID_SIZE = 708;
+
+    private static final int SAMPLE_SIZE = 20_000;
+
+    @Autowired
+    private OptimodService optimodService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private SegmentRepository segmentRepository;
+
+    /**
+     * Compares the rows saved per second by the bulk loader and by the repositories.
+     */
+    @Test
+    public void compareMapStores(@TempDir Path directory) throws Exception {
+        List<Node> nodes = TestGraphs.gridNodes(GRID_SIZE);
+        List<Segment> segments = TestGraphs.gridSegments(GRID_SIZE, 42);
+        Path file = directory.resolve("grid.xml");
+        TestGraphs.writeMap(file, nodes, segments);
+        System.out.printf("Map of %,d nodes and %,d segments, %,d bytes%n", nodes.size(), segments.size(), Files.size(file));
+
+        optimodService.deleteAllNodes();
+        optimodService.deleteAllSegments();
+        long start = System.nanoTime();
+        nodeRepository.saveAll(nodes.subList(0, SAMPLE_SIZE));
+        segmentRepository.saveAll(segments.subList(0, SAMPLE_SIZE));
+        report("Repositories", 2 * SAMPLE_SIZE, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        MapReader.Counts counts = optimodService.loadMap(file.toString());
+        report("Bulk loader", counts.getNodeCount() + counts.getSegmentCount(), System.nanoTime() - start);
+        assertEquals("Every segment should be saved", (long) segments.size(), segmentRepository.count());
+
+        start = System.nanoTime();
+        optimodService.deleteAllNodes();
+        optimodService.deleteAllSegments();
+        report("Bulk delete", counts.getNodeCount() + counts.getSegmentCount(), System.nanoTime() - start);
+    }
+
+    private static void report(String store, long rows, long time) {
+        System.out.printf("%-12s : %,9d rows in %,7.0f ms, %,.0f rows per second%n", store, rows, time / 1e6, rows / (time / 1e9));
+    }
+}
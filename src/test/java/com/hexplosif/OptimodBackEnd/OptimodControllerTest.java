@@ -25,6 +25,8 @@ import java.util.Map;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -1268,5 +1270,225 @@ public class OptimodControllerTest {
         );
     }
 
-}
 
+    /**
+     * Test GET the statistics of the route cache
+     * Expected: 200 (OK) with the counters
+     */
+    @Test
+    @Tag("RouteController")
+    public void testGetRouteCacheStatistics() throws Exception {
+        mockMvc.perform(get("/routeCacheStatistics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hits").isNumber())
+                .andExpect(jsonPath("$.misses").isNumber())
+                .andExpect(jsonPath("$.evictions").isNumber())
+                .andExpect(jsonPath("$.size").isNumber());
+    }
+
+    /**
+     * Test POST dispatch of the couriers without any courier
+     * Expected: 400 (Bad Request)
+     */
+    @Test
+    @Tag("RouteController")
+    public void testDispatchCouriersWithoutCourier() throws Exception {
+        DeliveryRequest deliveryRequest = setDeliveryRequest(1L, 2L, 3L, null);
+        mockMvc.perform(post("/delivery_request")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(deliveryRequest)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/dispatchCouriers").param("objective", "TOTAL_LENGTH"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("No couriers found."));
+    }
+
+    /**
+     * Test GET the status of an unknown route job
+     * Expected: 400 (Bad Request)
+     */
+    @Test
+    @Tag("RouteController")
+    public void testGetRouteJobNotFound() throws Exception {
+        mockMvc.perform(get("/routeJobs/unknown"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Route job not found"));
+    }
+
+    /**
+     * Test POST a route job without delivery requests
+     * Expected: 202 (Accepted), then the job fails
+     */
+    @Test
+    @Tag("RouteController")
+    public void testSubmitRouteJobWithoutDeliveryRequest() throws Exception {
+        MvcResult result = mockMvc.perform(post("/routeJobs"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id").isString())
+                .andReturn();
+        String id = objectMapper.readTree(result.getResponse().getContentAsString()).get("id").asText();
+
+        String state = "QUEUED";
+        for (int attempt = 0; attempt < 1000 && (state.equals("QUEUED") || state.equals("RUNNING")); attempt++) {
+            Thread.sleep(10);
+            String status = mockMvc.perform(get("/routeJobs/" + id)).andReturn().getResponse().getContentAsString();
+            state = objectMapper.readTree(status).get("state").asText();
+        }
+        assertEquals("The job should fail", "FAILED", state);
+        mockMvc.perform(get("/routeJobs/" + id))
+                .andExpect(jsonPath("$.error").value("No delivery requests found."));
+        mockMvc.perform(get("/routeJobs/" + id + "/result"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("The route job is FAILED."));
+    }
+
+    /**
+     * Helper method to create a map of three nodes in a triangle of segments of length 1, and a courier with a
+     * delivery request from the warehouse 1, picked up at 2 and delivered at 3
+     *
+     * @return the id of the courier
+     */
+    private Long createTriangleRoute() throws Exception {
+        mockMvc.perform(post("/nodes")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new Node[]{setNode(1L, 45.0, 4.0), setNode(2L, 45.1, 4.0),
+                        setNode(3L, 45.1, 4.1)})));
+        mockMvc.perform(post("/segments")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new Segment[]{setSegment(1L, 2L, 1.0, "segment1"),
+                        setSegment(2L, 3L, 1.0, "segment2"), setSegment(3L, 1L, 1.0, "segment3")})));
+        MvcResult courierResult = mockMvc.perform(post("/courier")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(setCourier("courier"))))
+                .andReturn();
+        Long courierId = objectMapper.readValue(courierResult.getResponse().getContentAsString(), Courier.class).getId();
+        mockMvc.perform(post("/delivery_request")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(setDeliveryRequest(2L, 3L, 1L, courierId))));
+        return courierId;
+    }
+
+    /**
+     * Test GET the optimal route in the compact format
+     * Expected: 200 (OK) with the stops, leg lengths, total length and polyline of the route
+     */
+    @Test
+    @Tag("RouteController")
+    public void testCalculateOptimalRouteCompact() throws Exception {
+        Long courierId = createTriangleRoute();
+
+        String route = "$." + courierId;
+        mockMvc.perform(get("/calculateOptimalRoute").param("format", "COMPACT"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath(route + ".stops.length()").value(4))
+                .andExpect(jsonPath(route + ".stops[1].type").value("PICKUP"))
+                .andExpect(jsonPath(route + ".stops[2].nodeId").value(3))
+                .andExpect(jsonPath(route + ".stops[2].distance").value(2.0))
+                .andExpect(jsonPath(route + ".legLengths.length()").value(3))
+                .andExpect(jsonPath(route + ".totalLength").value(3.0))
+                .andExpect(jsonPath(route + ".polyline").isString());
+    }
+
+    /**
+     * Test GET the stream of the routes of a courier with one delivery request
+     * Expected: 200 (OK) with the started, route, courierDone and done events in this order
+     */
+    @Test
+    @Tag("RouteController")
+    public void testStreamOptimalRoute() throws Exception {
+        createTriangleRoute();
+
+        MvcResult result = mockMvc.perform(get("/calculateOptimalRoute/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(10_000);
+        String events = result.getResponse().getContentAsString();
+
+        int started = events.indexOf("event:started");
+        int route = events.indexOf("event:route");
+        int courierDone = events.indexOf("event:courierDone");
+        int done = events.indexOf("event:done");
+        assertTrue("The events are missing or out of order", 0 <= started && started < route && route < courierDone && courierDone < done);
+        assertTrue("The route is incorrect", events.contains("\"route\":[1,2,3,1]"));
+        assertTrue("The job should be done", events.contains("\"state\":\"DONE\""));
+    }
+
+    /**
+     * Test GET the nodes nearest to a point and POST a batch of points to snap
+     * Expected: 200 (OK) with the nearest nodes, and 400 (Bad Request) for invalid coordinates
+     */
+    @Test
+    @Tag("NodeController")
+    public void testNearestNodes() throws Exception {
+        createTriangleRoute();
+
+        mockMvc.perform(get("/nodes/nearest").param("latitude", "45.09").param("longitude", "4.01").param("k", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].nodeId").value(2))
+                .andExpect(jsonPath("$[1].nodeId").value(3));
+        mockMvc.perform(post("/nodes/snap")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"latitude\":45.01,\"longitude\":4.0},{\"latitude\":45.11,\"longitude\":4.09}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].nodeId").value(1))
+                .andExpect(jsonPath("$[1].nodeId").value(3))
+                .andExpect(jsonPath("$[1].distance").isNumber());
+        mockMvc.perform(get("/nodes/nearest").param("latitude", "95.0").param("longitude", "4.0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Test GET the nodes and segments inside a viewport, one page at a time
+     * Expected: 200 (OK) with the nodes inside the box and the segments with an end inside it, 400 (Bad Request)
+     * without bounds
+     */
+    @Test
+    @Tag("NodeController")
+    public void testViewport() throws Exception {
+        createTriangleRoute();
+
+        mockMvc.perform(get("/nodes/viewport").param("minLatitude", "45.05").param("maxLatitude", "45.2")
+                        .param("minLongitude", "3.9").param("maxLongitude", "4.05"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(2));
+        mockMvc.perform(get("/segments/viewport").param("minLatitude", "45.05").param("maxLatitude", "45.2")
+                        .param("minLongitude", "3.9").param("maxLongitude", "4.05"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+        mockMvc.perform(get("/segments/viewport").param("minLatitude", "45.05").param("maxLatitude", "45.2")
+                        .param("minLongitude", "3.9").param("maxLongitude", "4.05").param("page", "1").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("segment2"));
+        mockMvc.perform(get("/nodes/viewport").param("minLatitude", "45.05"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Test GET a tile of the segments, then again with its ETag
+     * Expected: 200 (OK) with the two pieces of the triangle inside the tile and a strong ETag, then 304 (Not Modified), and 400 (Bad Request)
+     * for a zoom level that is not precomputed
+     */
+    @Test
+    @Tag("SegmentController")
+    public void testGetTile() throws Exception {
+        createTriangleRoute();
+
+        // Tile of zoom 10 containing the node 1 (45.0, 4.0), the nodes 2 and 3 being in the tile north of it
+        MvcResult result = mockMvc.perform(get("/tiles/10/523/368"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andReturn();
+        String eTag = result.getResponse().getHeader("ETag");
+        assertTrue("The ETag should be strong", eTag.startsWith("\""));
+
+        mockMvc.perform(get("/tiles/10/523/368").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/tiles/3/0/0"))
+                .andExpect(status().isBadRequest());
+    }
+}
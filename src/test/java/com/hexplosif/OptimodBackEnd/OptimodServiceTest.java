@@ -4,18 +4,36 @@ import com.hexplosif.OptimodBackEnd.model.Courier;
 import com.hexplosif.OptimodBackEnd.model.DeliveryRequest;
 import com.hexplosif.OptimodBackEnd.model.Node;
 import com.hexplosif.OptimodBackEnd.model.Segment;
+import com.hexplosif.OptimodBackEnd.service.CourierDispatcher;
+import com.hexplosif.OptimodBackEnd.service.DispatchObjective;
+import com.hexplosif.OptimodBackEnd.service.GraphSnapshot;
+import com.hexplosif.OptimodBackEnd.service.MapReader;
 import com.hexplosif.OptimodBackEnd.service.OptimodService;
+import com.hexplosif.OptimodBackEnd.service.RouteCache;
+import com.hexplosif.OptimodBackEnd.service.RouteJob;
+import com.hexplosif.OptimodBackEnd.service.RouteJobService;
+import com.hexplosif.OptimodBackEnd.service.RoutingAlgorithm;
+import com.hexplosif.OptimodBackEnd.service.RoutingOptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.springframework.test.util.AssertionErrors.assertEquals;
@@ -33,6 +51,9 @@ public class OptimodServiceTest {
     @Autowired
     private OptimodService optimodService;
 
+    @Autowired
+    private RouteJobService routeJobService;
+
     /**
      * Sets up the test environment by cleaning up the database before and after each test.
      */
@@ -77,6 +98,92 @@ public class OptimodServiceTest {
         assertEquals("The origine is incorrect", 25175791L, segment.get().getIdOrigin());
     }
 
+    /**
+     * Tests that the streaming loader reads the same nodes and segments as loadNode and loadSegment.
+     * @throws Exception if an error occurs during loading
+     */
+    @Test
+    @Tag("Load")
+    public void testLoadMap() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlan.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlan.xml");
+        List<Node> expectedNodes = (List<Node>) optimodService.findAllNodes();
+        Set<String> expectedSegments = segmentKeys();
+
+        MapReader.Counts counts = optimodService.loadMap("src/test/java/data/petitPlan.xml");
+        assertEquals("The number of nodes is incorrect", (long) expectedNodes.size(), counts.getNodeCount());
+        assertEquals("The nodes are incorrect", expectedNodes, optimodService.findAllNodes());
+        assertEquals("The segments are incorrect", expectedSegments, segmentKeys());
+
+        Exception exception = assertThrows(IllegalStateException.class, () -> optimodService.loadMap("src/test/java/data/wrongNoeudTag.xml"));
+        assertTrue("The exception message is incorrect", exception.getMessage().contains("Invalid tag found in the XML file"));
+        assertTrue("An invalid map should not be kept", !optimodService.findAllNodes().iterator().hasNext()
+                && !optimodService.findAllSegments().iterator().hasNext());
+    }
+
+    /**
+     * Tests that the streaming loader keeps the last coordinates of a repeated node, and leaves the map empty when a
+     * chunk cannot be saved.
+     * @throws Exception if an error occurs during loading
+     */
+    @Test
+    @Tag("Load")
+    public void testLoadMapSaveErrors(@TempDir Path directory) throws Exception {
+        String content = Files.readString(Path.of("src/test/java/data/petitPlan.xml"));
+        int firstNode = content.indexOf("<noeud");
+        Path repeated = Files.writeString(directory.resolve("repeated.xml"), content.substring(0, firstNode)
+                + "<noeud id=\"25175791\" latitude=\"1.0\" longitude=\"2.0\"/>\n"
+                + content.substring(firstNode).replaceFirst("<noeud id=\"25175791\" [^>]*/>",
+                "<noeud id=\"25175791\" latitude=\"45.0\" longitude=\"4.0\"/>"));
+        optimodService.loadMap(repeated.toString());
+        Node node = optimodService.findNodeById(25175791L).orElseThrow();
+        assertEquals("The last coordinates of the node should be kept", 45.0, node.getLatitude());
+        assertEquals("The last coordinates of the node should be kept", 4.0, node.getLongitude());
+
+        int lastSegment = content.lastIndexOf("<troncon");
+        Path tooLong = Files.writeString(directory.resolve("tooLong.xml"), content.substring(0, lastSegment)
+                + "<troncon destination=\"2129259178\" longueur=\"1.0\" nomRue=\"" + "x".repeat(1000)
+                + "\" origine=\"25175791\"/>\n" + content.substring(lastSegment));
+        assertThrows(DataAccessException.class, () -> optimodService.loadMap(tooLong.toString()));
+        assertTrue("A map that cannot be saved should not be kept", !optimodService.findAllNodes().iterator().hasNext()
+                && !optimodService.findAllSegments().iterator().hasNext());
+    }
+
+    /**
+     * Tests that loading a map again does not duplicate its nodes, and that the segments saved one by one and by the
+     * bulk loader get distinct ids.
+     * @throws Exception if an error occurs during loading
+     */
+    @Test
+    @Tag("Load")
+    public void testBulkLoadIds() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlan.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlan.xml");
+        List<Node> nodes = (List<Node>) optimodService.findAllNodes();
+        optimodService.loadNode("src/test/java/data/petitPlan.xml");
+        assertEquals("The nodes should not be duplicated", nodes, optimodService.findAllNodes());
+
+        Segment segment = new Segment();
+        segment.setIdOrigin(25175791L);
+        segment.setIdDestination(2129259178L);
+        segment.setLength(1.0);
+        segment.setName("");
+        optimodService.saveSegment(segment);
+        optimodService.loadSegment("src/test/java/data/petitPlan.xml");
+
+        List<Long> ids = new ArrayList<>();
+        optimodService.findAllSegments().forEach(saved -> ids.add(saved.getId()));
+        assertEquals("Every segment should have its own id", ids.size(), new HashSet<>(ids).size());
+    }
+
+    private Set<String> segmentKeys() {
+        Set<String> keys = new HashSet<>();
+        for (Segment segment : optimodService.findAllSegments()) {
+            keys.add(segment.getIdOrigin() + ">" + segment.getIdDestination() + ":" + segment.getLength() + ":" + segment.getName());
+        }
+        return keys;
+    }
+
     /**
      * Tests that delivery requests are loaded correctly from an XML file.
      * @throws Exception if an error occurs during loading
@@ -371,4 +478,296 @@ public class OptimodServiceTest {
         assertTrue("The route is incorrect", route.get(courier.getId()).get(3) == 2129259178L);
         assertTrue("The route is incorrect", route.get(courier.getId()).get(4) == 25175791L);
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that the routing graph is built once per map load and rebuilt after a modification of the map.
+     * @throws Exception if an error occurs during loading
+     */
+    @Test
+    @Tag("Graph")
+    public void testGraphSnapshotVersion() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlanTest.xml");
+        long version = optimodService.rebuildGraph();
+
+        GraphSnapshot snapshot = optimodService.getGraphSnapshotService().getSnapshot();
+        assertEquals("The map version is incorrect", version, snapshot.getMapVersion());
+        assertTrue("The snapshot should be reused", snapshot == optimodService.getGraphSnapshotService().getSnapshot());
+
+        Segment segment = optimodService.findAllSegments().iterator().next();
+        optimodService.deleteSegmentById(segment.getId());
+
+        GraphSnapshot rebuilt = optimodService.getGraphSnapshotService().getSnapshot();
+        assertTrue("The map version should increase", rebuilt.getMapVersion() > version);
+        assertEquals("The deleted segment should not be in the graph", 8, rebuilt.getGraph().edgeCount());
+    }
+
+    /**
+     * Tests that the A*, ALT and CH legs give the same route as the Dijkstra legs on a real map.
+     * @throws Exception if an error occurs during calculation
+     */
+    @Test
+    @Tag("TSP")
+    public void testCalculateOptimalRouteAStar() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlan.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlan.xml");
+        optimodService.loadDeliveryRequest("src/test/java/data/demandePetit1.xml");
+        DeliveryRequest deliveryRequest = optimodService.findAllDeliveryRequests().iterator().next();
+        optimodService.addCourier();
+        Courier courier = optimodService.findAllCouriers().iterator().next();
+        deliveryRequest.setIdCourier(courier.getId());
+        optimodService.saveDeliveryRequest(deliveryRequest);
+
+        RoutingOptions options = new RoutingOptions();
+        options.setAlgorithm(RoutingAlgorithm.DIJKSTRA);
+        List<Long> dijkstraRoute = optimodService.calculateOptimalRoute(options).get(courier.getId());
+        options.setAlgorithm(RoutingAlgorithm.ASTAR);
+        List<Long> aStarRoute = optimodService.calculateOptimalRoute(options).get(courier.getId());
+        options.setAlgorithm(RoutingAlgorithm.ALT);
+        List<Long> landmarkRoute = optimodService.calculateOptimalRoute(options).get(courier.getId());
+        // Without preprocessing, Contraction Hierarchies fall back to bidirectional Dijkstra
+        options.setAlgorithm(RoutingAlgorithm.CH);
+        List<Long> hierarchyRoute = optimodService.calculateOptimalRoute(options).get(courier.getId());
+
+        assertTrue("The route should go through the map", dijkstraRoute.size() > 2);
+        assertEquals("The A* route is incorrect", dijkstraRoute, aStarRoute);
+        assertEquals("The ALT route is incorrect", dijkstraRoute, landmarkRoute);
+        assertEquals("The CH route is incorrect", dijkstraRoute, hierarchyRoute);
+    }
+
+    /**
+     * Tests that the couriers planned in parallel get the same routes as when planned one by one, in the order of
+     * the couriers.
+     * @throws Exception if an error occurs during calculation
+     */
+    @Test
+    @Tag("TSP")
+    public void testCalculateOptimalRouteSeveralCouriers() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlan.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlan.xml");
+        GraphSnapshot snapshot = optimodService.getGraphSnapshotService().getSnapshot();
+        for (int i = 0; i < 4; i++) {
+            optimodService.addCourier();
+        }
+        List<Courier> couriers = (List<Courier>) optimodService.findAllCouriers();
+
+        Random random = new Random(3);
+        for (int i = 0; i < 12; i++) {
+            DeliveryRequest deliveryRequest = new DeliveryRequest();
+            deliveryRequest.setIdWarehouse(snapshot.getGraph().nodeId(0));
+            deliveryRequest.setIdPickup(snapshot.getGraph().nodeId(random.nextInt(snapshot.getGraph().nodeCount())));
+            deliveryRequest.setIdDelivery(snapshot.getGraph().nodeId(random.nextInt(snapshot.getGraph().nodeCount())));
+            deliveryRequest.setIdCourier(couriers.get(couriers.size() - 1 - i % 4).getId());
+            optimodService.saveDeliveryRequest(deliveryRequest);
+        }
+
+        Map<Long, List<Long>> routes = optimodService.calculateOptimalRoute();
+
+        List<Long> expectedCouriers = couriers.stream().map(Courier::getId).filter(routes::containsKey).toList();
+        assertEquals("Every courier should have a route", 4, routes.size());
+        assertEquals("The routes should follow the order of the couriers", expectedCouriers, List.copyOf(routes.keySet()));
+        for (Long courierId : routes.keySet()) {
+            List<DeliveryRequest> deliveryRequests = ((List<DeliveryRequest>) optimodService.findAllDeliveryRequests()).stream()
+                    .filter(deliveryRequest -> courierId.equals(deliveryRequest.getIdCourier()))
+                    .toList();
+            List<Long> expected = optimodService.getRoutePlanner().planRoute(snapshot, deliveryRequests, RoutingAlgorithm.DIJKSTRA);
+            assertEquals("The route of courier " + courierId + " is incorrect", expected, routes.get(courierId));
+        }
+    }
+
+    /**
+     * Tests that a negative deadline is refused.
+     */
+    @Test
+    @Tag("TSP")
+    public void testCalculateOptimalRouteNegativeDeadline() {
+        RoutingOptions options = new RoutingOptions();
+        options.setDeadlineMs(-1L);
+        assertThrows(IllegalStateException.class, () -> optimodService.calculateOptimalRoute(options));
+    }
+
+    /**
+     * Tests that an unchanged courier gets its route from the cache, and that changing its requests or the map
+     * computes it again.
+     * @throws Exception if an error occurs during calculation
+     */
+    @Test
+    @Tag("TSP")
+    public void testRouteCache() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadDeliveryRequest("src/test/java/data/demandePetit1Test.xml");
+        DeliveryRequest deliveryRequest = optimodService.findAllDeliveryRequests().iterator().next();
+        optimodService.addCourier();
+        Courier courier = optimodService.findAllCouriers().iterator().next();
+        deliveryRequest.setIdCourier(courier.getId());
+        optimodService.saveDeliveryRequest(deliveryRequest);
+
+        RouteCache.Statistics before = optimodService.getRouteCacheStatistics();
+        List<Long> route = optimodService.calculateOptimalRoute().get(courier.getId());
+        List<Long> cachedRoute = optimodService.calculateOptimalRoute().get(courier.getId());
+        RouteCache.Statistics after = optimodService.getRouteCacheStatistics();
+
+        assertEquals("The cached route is incorrect", route, cachedRoute);
+        assertEquals("The first computation should miss", before.getMisses() + 1, after.getMisses());
+        assertEquals("The second computation should hit", before.getHits() + 1, after.getHits());
+
+        // A route improved for a shorter time is not returned to a computation given more time
+        RoutingOptions noBudget = new RoutingOptions();
+        noBudget.setDeadlineMs(0L);
+        optimodService.calculateOptimalRoute(noBudget);
+        optimodService.calculateOptimalRoute();
+        assertEquals("A different time budget should miss", after.getMisses() + 1,
+                optimodService.getRouteCacheStatistics().getMisses());
+        assertEquals("The same time budget should hit", after.getHits() + 1, optimodService.getRouteCacheStatistics().getHits());
+        after = optimodService.getRouteCacheStatistics();
+
+        deliveryRequest.setIdDelivery(479185301L);
+        optimodService.saveDeliveryRequest(deliveryRequest);
+        List<Long> changedRoute = optimodService.calculateOptimalRoute().get(courier.getId());
+        assertEquals("A changed courier should miss", after.getMisses() + 1, optimodService.getRouteCacheStatistics().getMisses());
+        assertTrue("The changed route should go to the new delivery", changedRoute.contains(479185301L));
+
+        Segment segment = optimodService.findAllSegments().iterator().next();
+        optimodService.deleteSegmentById(segment.getId());
+        assertEquals("A modification of the map should empty the cache", 0, optimodService.getRouteCacheStatistics().getSize());
+    }
+
+    /**
+     * Tests that a request assigned after a computation is inserted in the route of its courier, and removed from it
+     * when deleted.
+     * @throws Exception if an error occurs during loading
+     */
+    @Test
+    @Tag("Route")
+    public void testIncrementalRoute() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadDeliveryRequest("src/test/java/data/demandePetit1Test.xml");
+        DeliveryRequest deliveryRequest = optimodService.findAllDeliveryRequests().iterator().next();
+        optimodService.addCourier();
+        Courier courier = optimodService.findAllCouriers().iterator().next();
+        optimodService.assignCourier(courier.getId(), deliveryRequest.getId());
+        List<Long> route = optimodService.calculateOptimalRoute().get(courier.getId());
+
+        DeliveryRequest added = new DeliveryRequest();
+        added.setIdPickup(deliveryRequest.getIdDelivery());
+        added.setIdDelivery(479185301L);
+        added.setIdWarehouse(deliveryRequest.getIdWarehouse());
+        added = optimodService.saveDeliveryRequest(added);
+        optimodService.assignCourier(courier.getId(), added.getId());
+
+        RoutingOptions options = new RoutingOptions();
+        options.setIncremental(true);
+        List<Long> incrementalRoute = optimodService.calculateOptimalRoute(options).get(courier.getId());
+        assertEquals("The route should start at the warehouse", deliveryRequest.getIdWarehouse(), incrementalRoute.get(0));
+        assertEquals("The route should end at the warehouse", deliveryRequest.getIdWarehouse(),
+                incrementalRoute.get(incrementalRoute.size() - 1));
+        int pickup = incrementalRoute.indexOf(added.getIdPickup());
+        assertTrue("The added pickup should be in the route", pickup >= 0);
+        assertTrue("The added delivery should come after its pickup",
+                incrementalRoute.subList(pickup, incrementalRoute.size()).contains(added.getIdDelivery()));
+
+        // The last request takes the stops of a removed one
+        DeliveryRequest last = new DeliveryRequest();
+        last.setIdPickup(479185301L);
+        last.setIdDelivery(2129259176L);
+        last.setIdWarehouse(deliveryRequest.getIdWarehouse());
+        last = optimodService.saveDeliveryRequest(last);
+        optimodService.assignCourier(courier.getId(), last.getId());
+        optimodService.deleteDeliveryRequestById(added.getId());
+        incrementalRoute = optimodService.calculateOptimalRoute(options).get(courier.getId());
+        pickup = incrementalRoute.indexOf(last.getIdPickup());
+        assertTrue("The last pickup should stay in the route", pickup >= 0);
+        assertTrue("The last delivery should stay after its pickup",
+                incrementalRoute.subList(pickup, incrementalRoute.size()).contains(last.getIdDelivery()));
+
+        optimodService.deleteDeliveryRequestById(last.getId());
+        List<Long> removedRoute = optimodService.calculateOptimalRoute(options).get(courier.getId());
+        assertEquals("The route should be back to the first one", route, removedRoute);
+
+        // After a modification of the map, the routes are dropped without building the graph again
+        optimodService.getGraphSnapshotService().invalidate();
+        optimodService.deleteDeliveryRequestById(deliveryRequest.getId());
+        assertTrue("Updating the routes should not build the graph", optimodService.getGraphSnapshotService().peek() == null);
+    }
+
+    /**
+     * Tests that the dispatch assigns every request to a courier and saves the assignments.
+     * @throws Exception if an error occurs during loading
+     */
+    @Test
+    @Tag("Route")
+    public void testDispatchCouriers() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadDeliveryRequest("src/test/java/data/demandePetit1Test.xml");
+        DeliveryRequest deliveryRequest = optimodService.findAllDeliveryRequests().iterator().next();
+        DeliveryRequest other = new DeliveryRequest();
+        other.setIdPickup(deliveryRequest.getIdDelivery());
+        other.setIdDelivery(479185301L);
+        other.setIdWarehouse(deliveryRequest.getIdWarehouse());
+        optimodService.saveDeliveryRequest(other);
+        optimodService.addCourier();
+        optimodService.addCourier();
+
+        CourierDispatcher.Result result = optimodService.dispatchCouriers(DispatchObjective.MAX_LENGTH);
+        assertTrue("Every request should be reachable", result.getUnassigned().isEmpty());
+        assertEquals("Every request should be assigned", 2L,
+                result.getAssignments().values().stream().mapToLong(List::size).sum());
+        for (DeliveryRequest saved : optimodService.findAllDeliveryRequests()) {
+            assertTrue("The assignment should be saved", saved.getIdCourier() != null);
+        }
+        assertEquals("Every request should be in a route", result.getAssignments().keySet(),
+                optimodService.calculateOptimalRoute().keySet());
+
+        assertThrows(IllegalStateException.class, () -> optimodService.dispatchCouriers(null));
+
+        // A request of another warehouse goes to a courier without requests of the first one
+        DeliveryRequest elsewhere = new DeliveryRequest();
+        elsewhere.setIdPickup(479185301L);
+        elsewhere.setIdDelivery(2129259176L);
+        elsewhere.setIdWarehouse(26086130L);
+        optimodService.saveDeliveryRequest(elsewhere);
+        optimodService.addCourier();
+        result = optimodService.dispatchCouriers(DispatchObjective.TOTAL_LENGTH);
+        assertTrue("The request should be reachable", result.getUnassigned().isEmpty());
+        Map<Long, Set<Long>> warehousesByCourier = new HashMap<>();
+        for (DeliveryRequest saved : optimodService.findAllDeliveryRequests()) {
+            warehousesByCourier.computeIfAbsent(saved.getIdCourier(), id -> new HashSet<>()).add(saved.getIdWarehouse());
+        }
+        for (Set<Long> warehouses : warehousesByCourier.values()) {
+            assertEquals("A courier should serve a single warehouse", 1, warehouses.size());
+        }
+    }
+
+    /**
+     * Tests that a route job computes the same routes as the blocking computation.
+     * @throws Exception if an error occurs during loading
+     */
+    @Test
+    @Tag("Route")
+    public void testRouteJob() throws Exception {
+        optimodService.loadNode("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadSegment("src/test/java/data/petitPlanTest.xml");
+        optimodService.loadDeliveryRequest("src/test/java/data/demandePetit1Test.xml");
+        DeliveryRequest deliveryRequest = optimodService.findAllDeliveryRequests().iterator().next();
+        optimodService.addCourier();
+        Courier courier = optimodService.findAllCouriers().iterator().next();
+        optimodService.assignCourier(courier.getId(), deliveryRequest.getId());
+
+        RouteJob.Status status = routeJobService.submit(new RoutingOptions());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!status.getState().equals(RouteJob.State.DONE) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = routeJobService.getStatus(status.getId());
+        }
+        assertEquals("The job should be done", RouteJob.State.DONE, status.getState());
+        assertEquals("Every courier should be done", status.getCourierCount(), status.getCouriersDone());
+        assertTrue("The cost should be known", status.getBestCost() != null && status.getBestCost() > 0);
+        assertEquals("The routes are incorrect", optimodService.calculateOptimalRoute(), routeJobService.getResult(status.getId()));
+
+        assertEquals("A done job cannot be cancelled", RouteJob.State.DONE, routeJobService.cancel(status.getId()).getState());
+        assertThrows(IllegalStateException.class, () -> routeJobService.getStatus("unknown"));
+    }
+}
@@ -0,0 +1,291 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.model.Segment;
+import com.hexplosif.OptimodBackEnd.service.AStar;
+import com.hexplosif.OptimodBackEnd.service.Dijkstra;
+import com.hexplosif.OptimodBackEnd.service.BidirectionalDijkstra;
+import com.hexplosif.OptimodBackEnd.service.ContractionHierarchy;
+import com.hexplosif.OptimodBackEnd.service.ContractionHierarchySearch;
+import com.hexplosif.OptimodBackEnd.service.LandmarkSearch;
+import com.hexplosif.OptimodBackEnd.service.Landmarks;
+import com.hexplosif.OptimodBackEnd.service.PointToPointSearch;
+import com.hexplosif.OptimodBackEnd.service.RoadGraph;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+/**
+ * Memory and latency comparison between the compressed sparse row graph and the map-of-maps it replaced.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("Benchmark")
+public class RoadGraphBenchmarkTest {
+
+    private static final int GRID_SIZE = 300;
+
+    private static final int QUERIES = 50;
+
+    /**
+     * Compares the memory used by both representations and the latency of point-to-point searches.
+     */
+    @Test
+    public void compareWithMapOfMaps() {
+        List<Segment> segments = TestGraphs.gridSegments(GRID_SIZE, 42);
+
+        long before = usedMemory();
+        Map<Long, Map<Long, Double>> mapGraph = buildMapGraph(segments);
+        long mapMemory = usedMemory() - before;
+
+        before = usedMemory();
+        RoadGraph graph = RoadGraph.fromSegments(segments);
+        long csrMemory = usedMemory() - before;
+
+        Random random = new Random(7);
+        long[][] queries = new long[QUERIES][2];
+        for (long[] query : queries) {
+            query[0] = 1 + random.nextInt(GRID_SIZE * GRID_SIZE);
+            query[1] = 1 + random.nextInt(GRID_SIZE * GRID_SIZE);
+        }
+
+        // Warm up both implementations before timing them
+        for (int i = 0; i < 5; i++) {
+            mapDistance(mapGraph, queries[i][0], queries[i][1]);
+            Dijkstra.distance(graph, queries[i][0], queries[i][1]);
+        }
+
+        long start = System.nanoTime();
+        double[] mapDistances = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            mapDistances[i] = mapDistance(mapGraph, queries[i][0], queries[i][1]);
+        }
+        long mapTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double[] csrDistances = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            csrDistances[i] = Dijkstra.distance(graph, queries[i][0], queries[i][1]);
+        }
+        long csrTime = System.nanoTime() - start;
+
+        System.out.printf("Graph of %d nodes and %d edges%n", graph.nodeCount(), graph.edgeCount());
+        System.out.printf("Map of maps : %,d bytes, %.2f ms per query%n", mapMemory, mapTime / 1e6 / QUERIES);
+        System.out.printf("CSR         : %,d bytes (%,d bytes of arrays), %.2f ms per query%n",
+                csrMemory, graph.memoryFootprint(), csrTime / 1e6 / QUERIES);
+        assertEquals("Both graphs should answer every query", QUERIES,
+                (int) Arrays.stream(csrDistances).filter(distance -> distance < Double.MAX_VALUE).count());
+    }
+
+    /**
+     * Compares the settle rate of full searches with the indexed heap and with the PriorityQueue it replaced.
+     */
+    @Test
+    public void compareHeaps() {
+        RoadGraph graph = RoadGraph.fromSegments(TestGraphs.gridSegments(GRID_SIZE, 42));
+        double[] distances = new double[graph.nodeCount()];
+        int[] previousNodes = new int[graph.nodeCount()];
+        int[] targets = {graph.nodeCount() - 1};
+        Random random = new Random(7);
+        int[] sources = random.ints(QUERIES, 0, graph.nodeCount()).toArray();
+
+        for (int i = 0; i < 5; i++) {
+            priorityQueueSearch(graph, sources[i], targets[0], distances);
+            Dijkstra.oneToMany(graph, sources[i], targets, distances, previousNodes);
+        }
+
+        long settledBefore = 0;
+        long start = System.nanoTime();
+        for (int source : sources) {
+            settledBefore += priorityQueueSearch(graph, source, targets[0], distances);
+        }
+        long timeBefore = System.nanoTime() - start;
+
+        long settledAfter = 0;
+        start = System.nanoTime();
+        for (int source : sources) {
+            settledAfter += Dijkstra.oneToMany(graph, source, targets, distances, previousNodes);
+        }
+        long timeAfter = System.nanoTime() - start;
+
+        System.out.printf("PriorityQueue : %,d polls, %,.0f polls per second%n", settledBefore, settledBefore / (timeBefore / 1e9));
+        System.out.printf("Indexed heap  : %,d settled, %,.0f settled per second%n", settledAfter, settledAfter / (timeAfter / 1e9));
+    }
+
+    /**
+     * Compares the number of settled nodes per leg of the point-to-point searches and Dijkstra.
+     */
+    @Test
+    public void comparePointToPointSearches() {
+        RoadGraph graph = RoadGraph.build(TestGraphs.gridNodes(GRID_SIZE), TestGraphs.gridSegments(GRID_SIZE, 42));
+        double[] distances = new double[graph.nodeCount()];
+        int[] previousNodes = new int[graph.nodeCount()];
+        Map<String, PointToPointSearch> searches = new LinkedHashMap<>();
+        searches.put("A*", new AStar(graph));
+        searches.put("Bidirectional", new BidirectionalDijkstra(graph));
+        long start = System.nanoTime();
+        Landmarks landmarks = Landmarks.build(graph, 8);
+        System.out.printf("ALT preprocessing : %d landmarks in %.0f ms, %,d bytes%n", landmarks.count(),
+                (System.nanoTime() - start) / 1e6, landmarks.memoryFootprint());
+        searches.put("ALT", new LandmarkSearch(graph, landmarks));
+        Random random = new Random(7);
+        int[][] legs = new int[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            legs[i] = new int[]{random.nextInt(graph.nodeCount()), random.nextInt(graph.nodeCount())};
+        }
+
+        // Warm up every search before timing them
+        for (int i = 0; i < 5; i++) {
+            Dijkstra.oneToMany(graph, legs[i][0], new int[]{legs[i][1]}, distances, previousNodes);
+            for (PointToPointSearch search : searches.values()) {
+                search.search(legs[i][0], legs[i][1]);
+            }
+        }
+
+        long settled = 0;
+        start = System.nanoTime();
+        double[] expected = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            settled += Dijkstra.oneToMany(graph, legs[i][0], new int[]{legs[i][1]}, distances, previousNodes);
+            expected[i] = distances[legs[i][1]];
+        }
+        System.out.printf("%-13s : %,7d settled per leg, %.2f ms per leg%n", "Dijkstra", settled / QUERIES, (System.nanoTime() - start) / 1e6 / QUERIES);
+
+        for (Map.Entry<String, PointToPointSearch> entry : searches.entrySet()) {
+            PointToPointSearch search = entry.getValue();
+            settled = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                double distance = search.search(legs[i][0], legs[i][1]);
+                settled += search.settledCount();
+                Assertions.assertEquals(expected[i], distance, 1e-6, entry.getKey() + " should find the shortest distance");
+            }
+            System.out.printf("%-13s : %,7d settled per leg, %.2f ms per leg%n", entry.getKey(), settled / QUERIES, (System.nanoTime() - start) / 1e6 / QUERIES);
+        }
+    }
+
+    /**
+     * Preprocessing time and query latency of Contraction Hierarchies, on a smaller grid: a grid where all the roads
+     * are alike has no hierarchy to exploit, which makes it a worst case for the preprocessing.
+     */
+    @Test
+    public void compareContractionHierarchy() {
+        int size = 150;
+        RoadGraph graph = RoadGraph.build(TestGraphs.gridNodes(size), TestGraphs.gridSegments(size, 42));
+        long start = System.nanoTime();
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        System.out.printf("CH preprocessing : %,d nodes in %.0f ms, %,d shortcuts for %,d edges%n", graph.nodeCount(),
+                (System.nanoTime() - start) / 1e6, hierarchy.shortcutCount(), graph.edgeCount());
+
+        Map<String, PointToPointSearch> searches = new LinkedHashMap<>();
+        searches.put("Bidirectional", new BidirectionalDijkstra(graph));
+        searches.put("CH", new ContractionHierarchySearch(hierarchy));
+        Random random = new Random(7);
+        int[][] legs = new int[QUERIES * 4][];
+        for (int i = 0; i < legs.length; i++) {
+            legs[i] = new int[]{random.nextInt(graph.nodeCount()), random.nextInt(graph.nodeCount())};
+        }
+        for (int i = 0; i < 20; i++) {
+            for (PointToPointSearch search : searches.values()) {
+                search.search(legs[i][0], legs[i][1]);
+            }
+        }
+
+        double[] expected = new double[legs.length];
+        for (Map.Entry<String, PointToPointSearch> entry : searches.entrySet()) {
+            PointToPointSearch search = entry.getValue();
+            long settled = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < legs.length; i++) {
+                double distance = search.search(legs[i][0], legs[i][1]);
+                settled += search.settledCount();
+                if (entry.getKey().equals("Bidirectional")) {
+                    expected[i] = distance;
+                } else {
+                    Assertions.assertEquals(expected[i], distance, 1e-6, entry.getKey() + " should find the shortest distance");
+                }
+            }
+            System.out.printf("%-13s : %,7d settled per leg, %.3f ms per leg%n", entry.getKey(), settled / legs.length, (System.nanoTime() - start) / 1e6 / legs.length);
+        }
+    }
+
+    /**
+     * The search used before the indexed heap, counting the polls including stale duplicates
+     */
+    private static long priorityQueueSearch(RoadGraph graph, int source, int target, double[] distances) {
+        Arrays.fill(distances, Double.MAX_VALUE);
+        PriorityQueue<Integer> pq = new PriorityQueue<>(Comparator.comparingDouble(node -> distances[node]));
+        distances[source] = 0.0;
+        pq.add(source);
+
+        long polls = 0;
+        while (!pq.isEmpty()) {
+            int current = pq.poll();
+            polls++;
+            if (current == target) break;
+
+            for (int edge = graph.firstEdge(current); edge < graph.lastEdge(current); edge++) {
+                int neighbor = graph.edgeTarget(edge);
+                double newDist = distances[current] + graph.edgeWeight(edge);
+                if (newDist < distances[neighbor]) {
+                    distances[neighbor] = newDist;
+                    pq.add(neighbor);
+                }
+            }
+        }
+        return polls;
+    }
+
+    /**
+     * The graph representation used before RoadGraph
+     */
+    private static Map<Long, Map<Long, Double>> buildMapGraph(List<Segment> segments) {
+        Map<Long, Map<Long, Double>> graph = new HashMap<>();
+        for (Segment segment : segments) {
+            graph.putIfAbsent(segment.getIdOrigin(), new HashMap<>());
+            graph.get(segment.getIdOrigin()).put(segment.getIdDestination(), segment.getLength());
+
+            graph.putIfAbsent(segment.getIdDestination(), new HashMap<>());
+            graph.get(segment.getIdDestination()).put(segment.getIdOrigin(), segment.getLength());
+        }
+        return graph;
+    }
+
+    /**
+     * The shortest distance search used before RoadGraph
+     */
+    private static double mapDistance(Map<Long, Map<Long, Double>> graph, Long start, Long end) {
+        if (!graph.containsKey(start) || !graph.containsKey(end)) return Double.MAX_VALUE;
+
+        Map<Long, Double> distances = new HashMap<>();
+        PriorityQueue<Long> pq = new PriorityQueue<>(Comparator.comparingDouble(distances::get));
+        distances.put(start, 0.0);
+        pq.add(start);
+
+        while (!pq.isEmpty()) {
+            Long current = pq.poll();
+            if (current.equals(end)) break;
+
+            for (Map.Entry<Long, Double> entry : graph.getOrDefault(current, Collections.emptyMap()).entrySet()) {
+                Long neighbor = entry.getKey();
+                Double newDist = distances.getOrDefault(current, Double.MAX_VALUE) + entry.getValue();
+                if (newDist < distances.getOrDefault(neighbor, Double.MAX_VALUE)) {
+                    distances.put(neighbor, newDist);
+                    pq.add(neighbor);
+                }
+            }
+        }
+
+        return distances.getOrDefault(end, Double.MAX_VALUE);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
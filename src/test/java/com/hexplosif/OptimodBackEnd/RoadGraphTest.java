@@ -0,0 +1,426 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+import com.hexplosif.OptimodBackEnd.service.AStar;
+import com.hexplosif.OptimodBackEnd.service.BidirectionalDijkstra;
+import com.hexplosif.OptimodBackEnd.service.ContractionHierarchy;
+import com.hexplosif.OptimodBackEnd.service.ContractionHierarchySearch;
+import com.hexplosif.OptimodBackEnd.service.Dijkstra;
+import com.hexplosif.OptimodBackEnd.service.DistanceMatrix;
+import com.hexplosif.OptimodBackEnd.service.GraphSnapshot;
+import com.hexplosif.OptimodBackEnd.service.LandmarkSearch;
+import com.hexplosif.OptimodBackEnd.service.Landmarks;
+import com.hexplosif.OptimodBackEnd.service.Polyline;
+import com.hexplosif.OptimodBackEnd.service.RoadGraph;
+import com.hexplosif.OptimodBackEnd.service.RoutingAlgorithm;
+import com.hexplosif.OptimodBackEnd.service.SegmentTiles;
+import com.hexplosif.OptimodBackEnd.service.SpatialIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertFalse;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+/**
+ * Test class for RoadGraph and the shortest path searches running on it.
+ */
+public class RoadGraphTest {
+
+    /**
+     * Helper method to create a segment
+     */
+    private Segment setSegment(Long idOrigin, Long idDestination, Double length) {
+        Segment segment = new Segment();
+        segment.setIdOrigin(idOrigin);
+        segment.setIdDestination(idDestination);
+        segment.setLength(length);
+        return segment;
+    }
+
+    /**
+     * The graph of petitPlanTest.xml
+     */
+    private RoadGraph petitPlanTestGraph() {
+        return RoadGraph.fromSegments(List.of(
+                setSegment(25175791L, 2129259178L, 1.0),
+                setSegment(2129259178L, 26086130L, 1.0),
+                setSegment(25175791L, 2129259176L, 1.0),
+                setSegment(2129259176L, 479185301L, 2.0),
+                setSegment(479185301L, 26086130L, 1.0)));
+    }
+
+    /**
+     * Tests that the node ids are remapped to dense indices and back.
+     */
+    @Test
+    @Tag("Graph")
+    public void testIdDictionary() {
+        RoadGraph graph = petitPlanTestGraph();
+
+        assertEquals("The node count is incorrect", 5, graph.nodeCount());
+        assertEquals("The edge count is incorrect", 10, graph.edgeCount());
+        for (int i = 0; i < graph.nodeCount(); i++) {
+            assertEquals("The id dictionary is incorrect", i, graph.indexOf(graph.nodeId(i)));
+        }
+        assertTrue("The node should be in the graph", graph.contains(26086130L));
+        assertFalse("The node should not be in the graph", graph.contains(42L));
+        assertEquals("An unknown node should have no index", -1, graph.indexOf(42L));
+    }
+
+    /**
+     * Tests that segments can be travelled in both directions.
+     */
+    @Test
+    @Tag("Graph")
+    public void testAdjacency() {
+        RoadGraph graph = petitPlanTestGraph();
+
+        int node = graph.indexOf(2129259178L);
+        assertEquals("The degree is incorrect", 2, graph.lastEdge(node) - graph.firstEdge(node));
+        boolean backToOrigin = false;
+        for (int edge = graph.firstEdge(node); edge < graph.lastEdge(node); edge++) {
+            backToOrigin |= graph.nodeId(graph.edgeTarget(edge)) == 25175791L;
+        }
+        assertTrue("The segment should be travelled backwards", backToOrigin);
+    }
+
+    /**
+     * Tests the shortest path and distance on the graph.
+     */
+    @Test
+    @Tag("Graph")
+    public void testShortestPath() {
+        RoadGraph graph = petitPlanTestGraph();
+
+        assertEquals("The path is incorrect", List.of(25175791L, 2129259178L, 26086130L),
+                Dijkstra.path(graph, 25175791L, 26086130L));
+        assertEquals("The distance is incorrect", 2.0, Dijkstra.distance(graph, 25175791L, 26086130L));
+        assertEquals("The distance is incorrect", 3.0, Dijkstra.distance(graph, 2129259176L, 26086130L));
+        assertEquals("An unknown node should be unreachable", Double.MAX_VALUE, Dijkstra.distance(graph, 25175791L, 42L));
+    }
+
+    /**
+     * Tests the distances and paths of the matrix between the stops of a route.
+     */
+    @Test
+    @Tag("Graph")
+    public void testDistanceMatrix() {
+        RoadGraph graph = petitPlanTestGraph();
+        DistanceMatrix matrix = DistanceMatrix.build(graph, List.of(25175791L, 479185301L, 26086130L, 25175791L, 42L));
+
+        assertEquals("Duplicate stops should be merged", 4, matrix.size());
+        int warehouse = matrix.indexOf(25175791L);
+        int delivery = matrix.indexOf(26086130L);
+        int unknown = matrix.indexOf(42L);
+        assertEquals("The distance is incorrect", 2.0, matrix.distance(warehouse, delivery));
+        assertEquals("The distance is incorrect", 3.0, matrix.distance(warehouse, matrix.indexOf(479185301L)));
+        assertEquals("The path is incorrect", List.of(26086130L, 2129259178L, 25175791L), matrix.path(delivery, warehouse));
+        assertEquals("The path to itself is incorrect", List.of(26086130L), matrix.path(delivery, delivery));
+        assertEquals("An unknown stop should be unreachable", Double.MAX_VALUE, matrix.distance(warehouse, unknown));
+        assertEquals("The path to an unknown stop is incorrect", List.of(42L), matrix.path(warehouse, unknown));
+    }
+
+    /**
+     * Tests that the paths from the stops whose shortest-path tree did not fit in the arena, alone or shared with another
+     * matrix, are the same.
+     */
+    @Test
+    @Tag("Graph")
+    public void testDistanceMatrixWithSmallArena() {
+        RoadGraph graph = petitPlanTestGraph();
+        List<Long> stops = List.of(25175791L, 479185301L, 26086130L, 2129259176L);
+        DistanceMatrix matrix = DistanceMatrix.build(graph, stops);
+        DistanceMatrix small = DistanceMatrix.build(new GraphSnapshot(0, graph, null, null, null), stops,
+                RoutingAlgorithm.DIJKSTRA, (long) graph.nodeCount() * Integer.BYTES);
+
+        // Two matrices sharing the trees of a computation, which only has room for three of them
+        AtomicLong arena = new AtomicLong(3L * graph.nodeCount() * Integer.BYTES + 1);
+        DistanceMatrix first = DistanceMatrix.build(new GraphSnapshot(0, graph, null, null, null), stops,
+                RoutingAlgorithm.DIJKSTRA, arena);
+        DistanceMatrix second = DistanceMatrix.build(new GraphSnapshot(0, graph, null, null, null), stops,
+                RoutingAlgorithm.DIJKSTRA, arena);
+        assertEquals("The trees should be taken from the shared arena", 1L, arena.get());
+
+        for (int from = 0; from < matrix.size(); from++) {
+            for (int to = 0; to < matrix.size(); to++) {
+                assertEquals("The distance is incorrect", matrix.distance(from, to), small.distance(from, to));
+                assertEquals("The path is incorrect", matrix.path(from, to), small.path(from, to));
+                assertEquals("The path is incorrect", matrix.path(from, to), first.path(from, to));
+                assertEquals("The path is incorrect", matrix.path(from, to), second.path(from, to));
+            }
+        }
+    }
+
+    /**
+     * Tests that A* finds the same distances as Dijkstra while settling fewer nodes.
+     */
+    @Test
+    @Tag("Graph")
+    public void testAStar() {
+        int size = 40;
+        RoadGraph graph = RoadGraph.build(TestGraphs.gridNodes(size), TestGraphs.gridSegments(size, 1));
+        assertTrue("A* should be applicable on the grid", AStar.isApplicable(graph));
+        assertFalse("A* should not be applicable without coordinates", AStar.isApplicable(petitPlanTestGraph()));
+
+        double[] distances = new double[graph.nodeCount()];
+        int[] previousNodes = new int[graph.nodeCount()];
+        int source = graph.indexOf(TestGraphs.gridNodeId(size, 3, 5));
+        int target = graph.indexOf(TestGraphs.gridNodeId(size, 30, 33));
+
+        int settledDijkstra = Dijkstra.oneToMany(graph, source, new int[]{target}, distances, previousNodes);
+        AStar aStar = new AStar(graph);
+
+        assertEquals("The A* distance is incorrect", distances[target], aStar.search(source, target));
+        assertTrue("A* should settle fewer nodes", aStar.settledCount() < settledDijkstra);
+        assertEquals("The A* path should end at the target", target, aStar.path()[aStar.path().length - 1]);
+    }
+
+    /**
+     * Tests that the bidirectional search finds the same distances as Dijkstra, with paths following the edges.
+     */
+    @Test
+    @Tag("Graph")
+    public void testBidirectionalDijkstra() {
+        int size = 30;
+        RoadGraph graph = RoadGraph.build(TestGraphs.gridNodes(size), TestGraphs.gridSegments(size, 2));
+        BidirectionalDijkstra bidirectional = new BidirectionalDijkstra(graph);
+        double[] distances = new double[graph.nodeCount()];
+        int[] previousNodes = new int[graph.nodeCount()];
+        Random random = new Random(5);
+
+        for (int i = 0; i < 20; i++) {
+            int source = random.nextInt(graph.nodeCount());
+            int target = random.nextInt(graph.nodeCount());
+            Dijkstra.oneToMany(graph, source, new int[]{target}, distances, previousNodes);
+
+            double distance = bidirectional.search(source, target);
+            Assertions.assertEquals(distances[target], distance, 1e-6, "The bidirectional distance is incorrect");
+
+            int[] path = bidirectional.path();
+            assertEquals("The path should start at the source", source, path[0]);
+            assertEquals("The path should end at the target", target, path[path.length - 1]);
+            double length = 0;
+            for (int j = 0; j + 1 < path.length; j++) {
+                length += edgeLength(graph, path[j], path[j + 1]);
+            }
+            Assertions.assertEquals(distance, length, 1e-6, "The path length is incorrect");
+        }
+    }
+
+    @Test
+    @Tag("Graph")
+    public void testLandmarks() {
+        int size = 30;
+        RoadGraph graph = RoadGraph.build(TestGraphs.gridNodes(size), TestGraphs.gridSegments(size, 4));
+        Landmarks landmarks = Landmarks.build(graph, 8);
+        assertEquals("The number of landmarks is incorrect", 8, landmarks.count());
+        assertTrue("The grid should be symmetric", graph.isSymmetric());
+        assertEquals("The distances of a symmetric graph should be stored once",
+                4L * 8 + 8L * graph.nodeCount() * 8, landmarks.memoryFootprint());
+        assertTrue("The first landmarks should be far apart",
+                landmarks.node(0) != landmarks.node(1) && landmarks.lowerBound(landmarks.node(0), landmarks.node(1)) > 0);
+
+        LandmarkSearch search = new LandmarkSearch(graph, landmarks);
+        double[] distances = new double[graph.nodeCount()];
+        int[] previousNodes = new int[graph.nodeCount()];
+        Random random = new Random(13);
+        for (int i = 0; i < 20; i++) {
+            int source = random.nextInt(graph.nodeCount());
+            int target = random.nextInt(graph.nodeCount());
+            Dijkstra.oneToMany(graph, source, new int[]{target}, distances, previousNodes);
+
+            assertTrue("The landmark bound should not exceed the distance",
+                    landmarks.lowerBound(source, target) <= distances[target] + 1e-6);
+            double distance = search.search(source, target);
+            Assertions.assertEquals(distances[target], distance, 1e-6, "The ALT distance is incorrect");
+            assertEquals("The path should end at the target", target, search.path()[search.path().length - 1]);
+        }
+
+        // A graph with fewer nodes than landmarks uses every node
+        assertEquals("Every node should be a landmark", 5, Landmarks.build(petitPlanTestGraph(), 8).count());
+    }
+
+    @Test
+    @Tag("Graph")
+    public void testContractionHierarchy() {
+        int size = 30;
+        RoadGraph graph = RoadGraph.build(TestGraphs.gridNodes(size), TestGraphs.gridSegments(size, 3));
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        assertTrue("The hierarchy should match its graph", hierarchy.matches(graph));
+        ContractionHierarchySearch search = new ContractionHierarchySearch(hierarchy);
+        double[] distances = new double[graph.nodeCount()];
+        int[] previousNodes = new int[graph.nodeCount()];
+        Random random = new Random(11);
+
+        for (int i = 0; i < 50; i++) {
+            int source = random.nextInt(graph.nodeCount());
+            int target = random.nextInt(graph.nodeCount());
+            Dijkstra.oneToMany(graph, source, new int[]{target}, distances, previousNodes);
+
+            double distance = search.search(source, target);
+            Assertions.assertEquals(distances[target], distance, 1e-6, "The hierarchy distance is incorrect");
+
+            // The unpacked path only uses original edges
+            int[] path = search.path();
+            assertEquals("The path should start at the source", source, path[0]);
+            assertEquals("The path should end at the target", target, path[path.length - 1]);
+            double length = 0;
+            for (int j = 0; j + 1 < path.length; j++) {
+                length += edgeLength(graph, path[j], path[j + 1]);
+            }
+            Assertions.assertEquals(distance, length, 1e-6, "The path length is incorrect");
+        }
+    }
+
+    @Test
+    @Tag("Graph")
+    public void testContractionHierarchyPersistence(@TempDir Path directory) throws Exception {
+        RoadGraph graph = petitPlanTestGraph();
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        Path file = directory.resolve("hierarchy.bin");
+        hierarchy.writeTo(file);
+
+        ContractionHierarchy restored = ContractionHierarchy.readFrom(file);
+        assertTrue("The restored hierarchy should match the graph", restored.matches(graph));
+        assertEquals("The number of edges is incorrect", hierarchy.edgeCount(), restored.edgeCount());
+        assertFalse("The hierarchy should not match another graph", restored.matches(RoadGraph.fromSegments(List.of(
+                setSegment(1L, 2L, 1.0)))));
+
+        ContractionHierarchySearch search = new ContractionHierarchySearch(restored);
+        double distance = search.search(graph.indexOf(25175791L), graph.indexOf(479185301L));
+        Assertions.assertEquals(Dijkstra.distance(graph, 25175791L, 479185301L), distance, 1e-9, "The restored hierarchy distance is incorrect");
+    }
+
+    private static double edgeLength(RoadGraph graph, int from, int to) {
+        double length = Double.MAX_VALUE;
+        for (int edge = graph.firstEdge(from); edge < graph.lastEdge(from); edge++) {
+            if (graph.edgeTarget(edge) == to) {
+                length = Math.min(length, graph.edgeWeight(edge));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Tests that the spatial index finds the same nearest nodes as a scan of all the nodes.
+     */
+    @Test
+    @Tag("Graph")
+    public void testSpatialIndex() {
+        int size = 30;
+        RoadGraph graph = RoadGraph.build(TestGraphs.gridNodes(size), TestGraphs.gridSegments(size, 6));
+        SpatialIndex index = SpatialIndex.build(graph);
+        assertEquals("Every node should be indexed", graph.nodeCount(), index.size());
+        Random random = new Random(17);
+
+        for (int i = 0; i < 100; i++) {
+            double latitude = 45.69 + random.nextDouble() * 0.05;
+            double longitude = 4.79 + random.nextDouble() * 0.05;
+            double[] scanned = new double[graph.nodeCount()];
+            for (int node = 0; node < graph.nodeCount(); node++) {
+                scanned[node] = RoadGraph.greatCircleDistance(latitude, longitude, graph.latitude(node), graph.longitude(node));
+            }
+            Arrays.sort(scanned);
+
+            int[] nearest = index.nearest(latitude, longitude, 5);
+            assertEquals("The number of nodes is incorrect", 5, nearest.length);
+            for (int j = 0; j < nearest.length; j++) {
+                double distance = RoadGraph.greatCircleDistance(latitude, longitude, graph.latitude(nearest[j]), graph.longitude(nearest[j]));
+                Assertions.assertEquals(scanned[j], distance, 1e-6, "The nearest nodes are incorrect");
+            }
+            assertEquals("The nearest node is incorrect", nearest[0], index.nearest(latitude, longitude));
+        }
+
+        assertEquals("Asking for more nodes than indexed should return them all", graph.nodeCount(),
+                index.nearest(45.7, 4.8, graph.nodeCount() + 10).length);
+        SpatialIndex empty = SpatialIndex.build(petitPlanTestGraph());
+        assertEquals("Nodes without coordinates should not be indexed", 0, empty.size());
+        assertEquals("An empty index should find no node", -1, empty.nearest(45.7, 4.8));
+    }
+
+    /**
+     * Tests the encoding of a polyline against the example of the format.
+     */
+    @Test
+    @Tag("Graph")
+    public void testPolyline() {
+        double[] latitudes = {38.5, 40.7, 43.252};
+        double[] longitudes = {-120.2, -120.95, -126.453};
+        String encoded = Polyline.encode(latitudes, longitudes);
+        assertEquals("The encoded polyline is incorrect", "_p~iF~ps|U_ulLnnqC_mqNvxq`@", encoded);
+
+        double[][] decoded = Polyline.decode(encoded);
+        for (int i = 0; i < latitudes.length; i++) {
+            Assertions.assertArrayEquals(new double[]{latitudes[i], longitudes[i]}, decoded[i], 1e-9);
+        }
+    }
+
+    /**
+     * Tests that the tiles join the segments of a street, simplify it at low zoom levels and clip it to the tiles.
+     */
+    @Test
+    @Tag("Graph")
+    public void testSegmentTiles() {
+        // A straight street of 50 nodes with a small bend in the middle
+        List<Node> nodes = new ArrayList<>();
+        List<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Node node = new Node();
+            node.setId((long) i);
+            node.setLatitude(45.75 + (i == 25 ? 0.00001 : 0.0));
+            node.setLongitude(4.80 + i * 0.0005);
+            nodes.add(node);
+            if (i > 0) {
+                segments.add(setSegment((long) i - 1, (long) i, 40.0));
+            }
+        }
+        RoadGraph graph = RoadGraph.build(nodes, segments);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        SegmentTiles tiles = SegmentTiles.build(new GraphSnapshot(1, graph, null, null, null), 12, 17, pool);
+        pool.shutdown();
+
+        String[] lines = tileLines(tiles, 12, 45.75, 4.81);
+        assertEquals("The street should be a single line", 1, lines.length);
+        assertEquals("The bend should be simplified away", 2, Polyline.decode(lines[0]).length);
+        Assertions.assertArrayEquals(new double[]{45.75, 4.80}, Polyline.decode(lines[0])[0], 1e-5);
+
+        // At zoom 17 a tile is about 300 m wide: the street is clipped at its borders
+        int x = (int) Math.floor((4.81 + 180.0) / 360.0 * (1 << 17));
+        double west = x * 360.0 / (1 << 17) - 180.0;
+        double east = (x + 1) * 360.0 / (1 << 17) - 180.0;
+        double buffer = (east - west) * 8 / 256;
+        for (String line : tileLines(tiles, 17, 45.75, 4.81)) {
+            for (double[] point : Polyline.decode(line)) {
+                assertTrue("The line should be clipped to the tile", point[1] >= west - buffer - 1e-5 && point[1] <= east + buffer + 1e-5);
+            }
+        }
+        assertEquals("A tile without segments should be empty", "[]",
+                new String(tiles.tile(12, 0, 0).getContent(), StandardCharsets.UTF_8));
+        assertEquals("The same tile should have the same ETag", tiles.tile(12, 0, 0).getETag(), tiles.tile(12, 1, 0).getETag());
+        Assertions.assertThrows(IllegalStateException.class, () -> tiles.tile(18, 0, 0));
+    }
+
+    private static String[] tileLines(SegmentTiles tiles, int zoom, double latitude, double longitude) {
+        int x = (int) Math.floor((longitude + 180.0) / 360.0 * (1 << zoom));
+        double phi = Math.toRadians(latitude);
+        int y = (int) Math.floor((1.0 - Math.log(Math.tan(phi) + 1.0 / Math.cos(phi)) / Math.PI) / 2.0 * (1 << zoom));
+        String content = new String(tiles.tile(zoom, x, y).getContent(), StandardCharsets.UTF_8);
+        // Encoded polylines never contain quotes or commas
+        return Arrays.stream(content.substring(1, content.length() - 1).split(","))
+                .map(line -> line.substring(1, line.length() - 1).replace("\\\\", "\\"))
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,131 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.model.Node;
+import com.hexplosif.OptimodBackEnd.model.Segment;
+import com.hexplosif.OptimodBackEnd.service.RoadGraph;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic road networks shared by the graph tests and benchmarks.
+ * <p>
+ * The networks are square grids laid out around Lyon, with node ids {@code row * size + column + 1}. Adjacent nodes
+ * are linked by a segment whose length is the great-circle distance between them stretched by a random factor,
+ * like a real street network.
+ */
+public final class TestGraphs {
+
+    private static final double ORIGIN_LATITUDE = 45.70;
+
+    private static final double ORIGIN_LONGITUDE = 4.80;
+
+    /**
+     * About 100 m between adjacent nodes
+     */
+    private static final double STEP = 0.0009;
+
+    private TestGraphs() {
+    }
+
+    /**
+     * @param size The number of nodes per side of the grid
+     * @return The nodes of the grid
+     */
+    public static List<Node> gridNodes(int size) {
+        List<Node> nodes = new ArrayList<>(size * size);
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                Node node = new Node();
+                node.setId(gridNodeId(size, row, column));
+                node.setLatitude(ORIGIN_LATITUDE + row * STEP);
+                node.setLongitude(ORIGIN_LONGITUDE + column * STEP);
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * @param size The number of nodes per side of the grid
+     * @param seed The seed of the random stretch factors
+     * @return The segments of the grid
+     */
+    public static List<Segment> gridSegments(int size, long seed) {
+        Random random = new Random(seed);
+        List<Segment> segments = new ArrayList<>(2 * size * size);
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                if (column + 1 < size) {
+                    segments.add(segment(size, row, column, row, column + 1, random));
+                }
+                if (row + 1 < size) {
+                    segments.add(segment(size, row, column, row + 1, column, random));
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * @return The id of the node at the given grid position
+     */
+    public static long gridNodeId(int size, int row, int column) {
+        return (long) row * size + column + 1;
+    }
+
+    /**
+     * Write a map file in the format of the loaded maps, with their precision and a comment every hundred elements
+     *
+     * @param file     The file to write
+     * @param nodes    The nodes of the map
+     * @param segments The segments of the map
+     */
+    public static void writeMap(Path file, List<Node> nodes, List<Segment> segments) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n<reseau>\n");
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                if (i % 100 == 0) {
+                    writer.write("<!-- <noeud id=\"0\" latitude=\"0\" longitude=\"0\"/> -->\n");
+                }
+                writer.write("<noeud id=\"" + node.getId() + "\" latitude=\"" + decimal(node.getLatitude(), 7)
+                        + "\" longitude=\"" + decimal(node.getLongitude(), 7) + "\"/>\n");
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                if (i % 100 == 0) {
+                    writer.write("<!-- " + i + " segments -->\n");
+                }
+                writer.write("<troncon destination=\"" + segment.getIdDestination() + "\" longueur=\"" + decimal(segment.getLength(), 6)
+                        + "\" nomRue=\"" + segment.getName().replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;")
+                        + "\" origine=\"" + segment.getIdOrigin() + "\"/>\n");
+            }
+            writer.write("</reseau>\n");
+        }
+    }
+
+    private static String decimal(double value, int decimals) {
+        return BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+
+    private static Segment segment(int size, int row, int column, int toRow, int toColumn, Random random) {
+        double straight = RoadGraph.greatCircleDistance(ORIGIN_LATITUDE + row * STEP, ORIGIN_LONGITUDE + column * STEP,
+                ORIGIN_LATITUDE + toRow * STEP, ORIGIN_LONGITUDE + toColumn * STEP);
+
+        Segment segment = new Segment();
+        segment.setIdOrigin(gridNodeId(size, row, column));
+        segment.setIdDestination(gridNodeId(size, toRow, toColumn));
+        segment.setLength(straight * (1.0 + 0.3 * random.nextDouble()));
+        segment.setName("Rue " + row + "-" + column);
+        return segment;
+    }
+}
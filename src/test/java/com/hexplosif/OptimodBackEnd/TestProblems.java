@@ -0,0 +1,38 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.service.PickupDeliveryProblem;
+
+import java.util.Random;
+
+/**
+ * Synthetic pickup and delivery problems shared by the tour solver tests and benchmarks.
+ */
+public final class TestProblems {
+
+    private TestProblems() {
+    }
+
+    /**
+     * Random problem whose stops are points of a square, the legs being a bit longer than the straight lines
+     *
+     * @param random     The source of the points and of the stretch of the legs
+     * @param nbRequests The number of requests
+     * @return The problem
+     */
+    public static PickupDeliveryProblem randomProblem(Random random, int nbRequests) {
+        int stopCount = 1 + 2 * nbRequests;
+        double[] x = new double[stopCount];
+        double[] y = new double[stopCount];
+        for (int stop = 0; stop < stopCount; stop++) {
+            x[stop] = random.nextDouble() * 1000;
+            y[stop] = random.nextDouble() * 1000;
+        }
+        double[][] costs = new double[stopCount][stopCount];
+        for (int from = 0; from < stopCount; from++) {
+            for (int to = 0; to < stopCount; to++) {
+                costs[from][to] = Math.hypot(x[from] - x[to], y[from] - y[to]) * (from == to ? 1.0 : 1.0 + random.nextDouble() * 0.3);
+            }
+        }
+        return PickupDeliveryProblem.of(costs);
+    }
+}
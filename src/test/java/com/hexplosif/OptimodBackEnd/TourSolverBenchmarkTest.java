@@ -0,0 +1,50 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.service.ExactTourSolver;
+import com.hexplosif.OptimodBackEnd.service.PickupDeliveryProblem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.hexplosif.OptimodBackEnd.TestProblems.randomProblem;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+/**
+ * Solve times of the exact tour solver, by number of requests.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("Benchmark")
+public class TourSolverBenchmarkTest {
+
+    private static final int TRIALS = 20;
+
+    /**
+     * Measures the median and the slowest solve time of random problems of up to 12 requests.
+     */
+    @Test
+    public void measureExactSolver() {
+        ExactTourSolver exact = new ExactTourSolver();
+        Random random = new Random(23);
+
+        // Warm up the solver before timing it
+        for (int i = 0; i < 5; i++) {
+            exact.solve(randomProblem(random, 8), Long.MAX_VALUE);
+        }
+
+        for (int nbRequests = 4; nbRequests <= 12; nbRequests += 2) {
+            long[] times = new long[TRIALS];
+            for (int trial = 0; trial < TRIALS; trial++) {
+                PickupDeliveryProblem problem = randomProblem(random, nbRequests);
+                long start = System.nanoTime();
+                int[] tour = exact.solve(problem, Long.MAX_VALUE);
+                times[trial] = System.nanoTime() - start;
+                assertTrue("The exact tour should be feasible", problem.isFeasible(tour));
+            }
+            Arrays.sort(times);
+            System.out.printf("%2d requests : median %.1f ms, slowest %.1f ms%n", nbRequests,
+                    times[TRIALS / 2] / 1e6, times[TRIALS - 1] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.hexplosif.OptimodBackEnd;
+
+import com.hexplosif.OptimodBackEnd.service.AlnsTourSolver;
+import com.hexplosif.OptimodBackEnd.service.ExactTourSolver;
+import com.hexplosif.OptimodBackEnd.service.GreedyTourSolver;
+import com.hexplosif.OptimodBackEnd.service.LocalSearch;
+import com.hexplosif.OptimodBackEnd.service.PickupDeliveryProblem;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.hexplosif.OptimodBackEnd.TestProblems.randomProblem;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+
+/**
+ * Test class for the pickup and delivery tour solvers.
+ */
+public class TourSolverTest {
+
+    /**
+     * Cost of the best feasible tour, by trying all of them
+     */
+    private double bruteForce(PickupDeliveryProblem problem, int[] tour, int depth, boolean[] visited, double cost, int last) {
+        if (depth == tour.length) {
+            return cost + problem.cost(last, 0);
+        }
+        double best = Double.MAX_VALUE;
+        for (int stop = 1; stop < problem.stopCount(); stop++) {
+            if (visited[stop] || (!PickupDeliveryProblem.isPickup(stop) && !visited[stop - 1])) continue;
+            visited[stop] = true;
+            tour[depth] = stop;
+            best = Math.min(best, bruteForce(problem, tour, depth + 1, visited, cost + problem.cost(last, stop), stop));
+            visited[stop] = false;
+        }
+        return best;
+    }
+
+    /**
+     * Tests that the exact solver finds the best feasible tour, never worse than the heuristic.
+     */
+    @Test
+    @Tag("Tour")
+    public void testExactSolver() {
+        Random random = new Random(11);
+        ExactTourSolver exact = new ExactTourSolver();
+        GreedyTourSolver greedy = new GreedyTourSolver();
+
+        for (int nbRequests = 1; nbRequests <= 5; nbRequests++) {
+            for (int trial = 0; trial < 5; trial++) {
+                PickupDeliveryProblem problem = randomProblem(random, nbRequests);
+                int[] tour = exact.solve(problem, Long.MAX_VALUE);
+                int[] greedyTour = greedy.solve(problem, Long.MAX_VALUE);
+
+                assertTrue("The exact tour should be feasible", problem.isFeasible(tour));
+                assertTrue("The greedy tour should be feasible", problem.isFeasible(greedyTour));
+                double optimum = bruteForce(problem, new int[2 * nbRequests], 0, new boolean[problem.stopCount()], 0.0, 0);
+                Assertions.assertEquals(optimum, problem.tourCost(tour), 1e-6, "The exact tour should be optimal");
+                assertTrue("The greedy tour cannot beat the optimum", problem.tourCost(greedyTour) >= problem.tourCost(tour) - 1e-6);
+            }
+        }
+    }
+
+    /**
+     * Tests that the exact solver returns a feasible tour, no worse than the heuristic, when its deadline has passed.
+     */
+    @Test
+    @Tag("Tour")
+    public void testExactSolverDeadline() {
+        PickupDeliveryProblem problem = randomProblem(new Random(5), ExactTourSolver.MAX_REQUESTS);
+
+        int[] tour = new ExactTourSolver().solve(problem, System.nanoTime());
+        int[] greedyTour = new GreedyTourSolver().solve(problem, Long.MAX_VALUE);
+
+        assertTrue("The tour should be feasible", problem.isFeasible(tour));
+        assertTrue("The tour should not be worse than the heuristic", problem.tourCost(tour) <= problem.tourCost(greedyTour));
+    }
+
+    /**
+     * Tests that the solvers return their best tour so far once the computation is cancelled, whatever the deadline.
+     */
+    @Test
+    @Tag("Tour")
+    public void testCancelledSolvers() {
+        PickupDeliveryProblem problem = randomProblem(new Random(5), ExactTourSolver.MAX_REQUESTS);
+        int[] greedyTour = new GreedyTourSolver().solve(problem, Long.MAX_VALUE);
+
+        int[] tour = new ExactTourSolver().solve(problem, Long.MAX_VALUE, () -> true);
+        assertTrue("The exact tour should be feasible", problem.isFeasible(tour));
+        assertTrue("The exact tour should not be worse than the heuristic", problem.tourCost(tour) <= problem.tourCost(greedyTour));
+
+        tour = new LocalSearch().improve(problem, greedyTour, Long.MAX_VALUE, () -> true, better -> {
+        });
+        Assertions.assertArrayEquals(greedyTour, tour, "The local search should not change the tour");
+
+        AlnsTourSolver.Result result = new AlnsTourSolver(2, 2000, 7).improve(problem, greedyTour, Long.MAX_VALUE,
+                () -> true, better -> {
+                });
+        assertEquals("No ALNS iteration should run", 0, result.getIterations());
+    }
+
+    /**
+     * Tests that the exact solver refuses problems too large for it.
+     */
+    @Test
+    @Tag("Tour")
+    public void testExactSolverTooLarge() {
+        PickupDeliveryProblem problem = randomProblem(new Random(5), ExactTourSolver.MAX_REQUESTS + 1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ExactTourSolver().solve(problem, Long.MAX_VALUE));
+    }
+
+    /**
+     * Tests that the local search keeps the tours feasible, tells each better tour, improves the heuristic tours and
+     * reaches the optimum of small problems most of the time.
+     */
+    @Test
+    @Tag("Tour")
+    public void testLocalSearch() {
+        Random random = new Random(13);
+        LocalSearch localSearch = new LocalSearch();
+        GreedyTourSolver greedy = new GreedyTourSolver();
+        double greedyTotal = 0.0;
+        double improvedTotal = 0.0;
+
+        for (int trial = 0; trial < 20; trial++) {
+            PickupDeliveryProblem problem = randomProblem(random, 30);
+            int[] greedyTour = greedy.solve(problem, Long.MAX_VALUE);
+            List<int[]> told = new ArrayList<>();
+            int[] tour = localSearch.improve(problem, greedyTour, Long.MAX_VALUE, () -> false, told::add);
+
+            assertTrue("The improved tour should be feasible", problem.isFeasible(tour));
+            assertTrue("The improved tours should be told", !told.isEmpty());
+            Assertions.assertArrayEquals(tour, told.get(told.size() - 1), "The last tour told should be returned");
+            for (int i = 1; i < told.size(); i++) {
+                assertTrue("The tours told should get shorter",
+                        problem.tourCost(told.get(i)) < problem.tourCost(told.get(i - 1)));
+            }
+            assertTrue("The improved tour should not be worse", problem.tourCost(tour) <= problem.tourCost(greedyTour));
+            greedyTotal += problem.tourCost(greedyTour);
+            improvedTotal += problem.tourCost(tour);
+        }
+        assertTrue("The local search should shorten the heuristic tours", improvedTotal < 0.95 * greedyTotal);
+
+        int optimal = 0;
+        ExactTourSolver exact = new ExactTourSolver();
+        for (int trial = 0; trial < 20; trial++) {
+            PickupDeliveryProblem problem = randomProblem(random, 6);
+            int[] tour = localSearch.improve(problem, greedy.solve(problem, Long.MAX_VALUE), Long.MAX_VALUE);
+            if (problem.tourCost(tour) <= problem.tourCost(exact.solve(problem, Long.MAX_VALUE)) + 1e-6) {
+                optimal++;
+            }
+        }
+        assertTrue("The local search should often reach the optimum of small problems, got " + optimal, optimal >= 10);
+    }
+
+    /**
+     * Tests that the local search returns the given tour when its deadline has passed.
+     */
+    @Test
+    @Tag("Tour")
+    public void testLocalSearchDeadline() {
+        PickupDeliveryProblem problem = randomProblem(new Random(5), 30);
+        int[] greedyTour = new GreedyTourSolver().solve(problem, Long.MAX_VALUE);
+
+        int[] tour = new LocalSearch().improve(problem, greedyTour, System.nanoTime() - 1);
+
+        Assertions.assertArrayEquals(greedyTour, tour, "The tour should not change after the deadline");
+    }
+
+    /**
+     * Tests that ALNS improves the local search tours, with the same result for the same seed and number of searches.
+     */
+    @Test
+    @Tag("Tour")
+    public void testAlns() {
+        PickupDeliveryProblem problem = randomProblem(new Random(17), 40);
+        int[] initial = new LocalSearch().improve(problem, new GreedyTourSolver().solve(problem, Long.MAX_VALUE), Long.MAX_VALUE);
+
+        AlnsTourSolver.Result result = new AlnsTourSolver(3, 2000, 7).improve(problem, initial, Long.MAX_VALUE);
+        AlnsTourSolver.Result again = new AlnsTourSolver(3, 2000, 7).improve(problem, initial, Long.MAX_VALUE);
+
+        assertTrue("The ALNS tour should be feasible", problem.isFeasible(result.getTour()));
+        assertTrue("ALNS should improve the tour", problem.tourCost(result.getTour()) < problem.tourCost(initial));
+        Assertions.assertArrayEquals(result.getTour(), again.getTour(), "The same seed should give the same tour");
+        assertEquals("Every iteration should run", 2000, result.getIterations());
+
+        List<AlnsTourSolver.Improvement> improvements = result.getImprovements();
+        assertEquals("The first cost should be the one of the given tour", problem.tourCost(initial), improvements.get(0).getCost());
+        assertEquals("The last cost should be the one of the tour", problem.tourCost(result.getTour()),
+                improvements.get(improvements.size() - 1).getCost());
+        for (int i = 1; i < improvements.size(); i++) {
+            assertTrue("The costs should decrease", improvements.get(i).getCost() < improvements.get(i - 1).getCost());
+        }
+    }
+}